@@ -0,0 +1,87 @@
+package com.github.wihoho.jama;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+   Dense kernels behind training: the blocked products and the
+   symmetric eigensolvers, at sizes around the number of training faces.
+*/
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class MatrixBenchmark {
+
+   @Param({"64", "256", "512"})
+   public int n;
+
+   private Matrix A, B, S, T;
+
+   @Setup
+   public void setUp () {
+      java.util.Random random = new java.util.Random(42);
+      A = random(n, random);
+      B = random(n, random);
+      S = A.transposeTimes(A);
+      T = B.transposeTimes(B).plus(Matrix.identity(n, n).times(n));
+   }
+
+   private static Matrix random (int n, java.util.Random random) {
+      Matrix X = new Matrix(n, n);
+      double[] x = X.getRowPackedArray();
+      for (int i = 0; i < x.length; i++) {
+         x[i] = random.nextGaussian();
+      }
+      return X;
+   }
+
+   @Benchmark
+   public Matrix times () {
+      return A.times(B);
+   }
+
+   @Benchmark
+   public Matrix transposeTimes () {
+      return A.transposeTimes(B);
+   }
+
+   @Benchmark
+   public Matrix gram () {
+      return A.transposeTimes(A);
+   }
+
+   @Benchmark
+   public Matrix timesTranspose () {
+      return A.timesTranspose(B);
+   }
+
+   @Benchmark
+   public EigenvalueDecomposition symmetricEig () {
+      return new EigenvalueDecomposition(S);
+   }
+
+   @Benchmark
+   public EigenvalueDecomposition nonsymmetricEig () {
+      return new EigenvalueDecomposition(A);
+   }
+
+   @Benchmark
+   public GeneralizedEigenvalueDecomposition generalizedEig () {
+      return new GeneralizedEigenvalueDecomposition(S, T);
+   }
+}
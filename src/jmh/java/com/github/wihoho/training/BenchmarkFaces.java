@@ -0,0 +1,59 @@
+package com.github.wihoho.training;
+
+import com.github.wihoho.jama.Matrix;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Inputs shared by the benchmarks: the ORL images of the test resources,
+ * or the directory named by -Dfaces.dir, and seeded random templates.
+ */
+final class BenchmarkFaces {
+	static final String DIRECTORY = System.getProperty("faces.dir", "src/test/resources/faces");
+
+	private BenchmarkFaces() {
+	}
+
+	static Path root() {
+		Path root = Paths.get(DIRECTORY);
+		if (!Files.isDirectory(root))
+			throw new IllegalStateException("no face images at " + root.toAbsolutePath()
+					+ ", run from the project directory or pass -jvmArgsAppend -Dfaces.dir=<dir>");
+		return root;
+	}
+
+	// the first perPerson images of every person
+	static void load(int perPerson, ArrayList<Matrix> faces, ArrayList<String> labels) throws IOException {
+		HashMap<String, Integer> counts = new HashMap<String, Integer>();
+		new FaceDatasetLoader().load(root(), (face, label) -> {
+			int count = counts.getOrDefault(label, 0);
+			if (count < perPerson) {
+				faces.add(face);
+				labels.add(label);
+			}
+			counts.put(label, count + 1);
+		});
+	}
+
+	// count templates of the given dimension, one label per labelSize entries
+	static Gallery randomGallery(int count, int dimension, int labelSize, long seed) {
+		Random random = new Random(seed);
+		Gallery gallery = new Gallery(dimension, count);
+		for (int i = 0; i < count; i++)
+			gallery.add(randomVector(dimension, random), "p" + (i / labelSize));
+		return gallery;
+	}
+
+	static float[] randomVector(int dimension, Random random) {
+		float[] vector = new float[dimension];
+		for (int j = 0; j < dimension; j++)
+			vector[j] = (float) random.nextGaussian();
+		return vector;
+	}
+}
@@ -0,0 +1,53 @@
+package com.github.wihoho.training;
+
+import com.github.wihoho.jama.Matrix;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * PGM decoding of one ORL image, and loading of the whole image directory
+ * through {@link FaceDatasetLoader}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class FileManagerBenchmark {
+	private String image;
+
+	@Setup
+	public void setUp() {
+		image = BenchmarkFaces.root().resolve("s1").resolve("1.pgm").toString();
+	}
+
+	@Benchmark
+	public Matrix decodeMatrix() throws IOException {
+		return FileManager.convertPGMtoMatrix(image);
+	}
+
+	@Benchmark
+	public Matrix decodeVector() throws IOException {
+		return FileManager.convertPGMtoVector(image);
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public FaceDatasetLoader.Report loadDirectory(Blackhole blackhole) throws IOException {
+		return new FaceDatasetLoader().load(BenchmarkFaces.root(), (face, label) -> blackhole.consume(face));
+	}
+}
@@ -0,0 +1,98 @@
+package com.github.wihoho.training;
+
+import com.github.wihoho.jama.Matrix;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Nearest neighbour search over galleries of random templates: the
+ * original Matrix based scan, the float gallery scanned serially and in
+ * partitions, the product-quantized scan and a batch of probes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class KnnBenchmark {
+	private static final int BATCH = 64;
+
+	@Param({ "1000", "10000", "100000" })
+	public int gallerySize;
+
+	@Param({ "64" })
+	public int dimension;
+
+	@Param({ "3" })
+	public int k;
+
+	private final EuclideanDistance metric = new EuclideanDistance();
+	private Gallery gallery;
+	private ProjectedTrainingMatrix[] trainingSet;
+	private QuantizedGallery quantized;
+	private float[] probe;
+	private Matrix probeMatrix;
+	private float[] probes;
+
+	@Setup
+	public void setUp() {
+		gallery = BenchmarkFaces.randomGallery(gallerySize, dimension, 10, 42);
+		trainingSet = new ProjectedTrainingMatrix[gallerySize];
+		for (int i = 0; i < gallerySize; i++) {
+			float[] template = gallery.get(i);
+			Matrix m = new Matrix(dimension, 1);
+			for (int j = 0; j < dimension; j++)
+				m.set(j, 0, template[j]);
+			trainingSet[i] = new ProjectedTrainingMatrix(m, gallery.getLabel(i));
+		}
+		quantized = new QuantizedGallery(ProductQuantizer.train(gallery, dimension / 4), gallery);
+
+		Random random = new Random(7);
+		probe = BenchmarkFaces.randomVector(dimension, random);
+		probeMatrix = new Matrix(dimension, 1);
+		for (int j = 0; j < dimension; j++)
+			probeMatrix.set(j, 0, probe[j]);
+		probes = BenchmarkFaces.randomVector(BATCH * dimension, random);
+	}
+
+	@Benchmark
+	public NeighborHeap matrices() {
+		return KNN.findKNN(trainingSet, probeMatrix, k, metric);
+	}
+
+	@Benchmark
+	public NeighborHeap gallery() {
+		return KNN.findKNN(gallery, probe, k, metric);
+	}
+
+	@Benchmark
+	public NeighborHeap galleryPartitioned() {
+		return KNN.findKNN(gallery, probe, k, metric, Runtime.getRuntime().availableProcessors(),
+				KNN.DEFAULT_MIN_PARTITION_SIZE);
+	}
+
+	@Benchmark
+	public NeighborHeap quantized() {
+		return KNN.findKNN(quantized, gallery, probe, k, metric, 10 * k);
+	}
+
+	// per batch of BATCH probes
+	@Benchmark
+	public String[] batch() {
+		return KNN.assignLabels(gallery, probes, BATCH, k, metric);
+	}
+}
@@ -0,0 +1,87 @@
+package com.github.wihoho.training;
+
+import com.github.wihoho.jama.Matrix;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One distance of every metric, on Matrix columns as in the original KNN,
+ * on float templates, and on float templates with precomputed norms.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MetricBenchmark {
+	@Param({ "euclidean", "l1", "cosine" })
+	public String metricName;
+
+	@Param({ "16", "64", "256" })
+	public int dimension;
+
+	private Metric metric;
+	private FloatMetric floatMetric;
+	private Matrix a, b;
+	private float[] x, y;
+	private double xNorm, yNorm;
+
+	@Setup
+	public void setUp() {
+		switch (metricName) {
+		case "euclidean":
+			metric = new EuclideanDistance();
+			break;
+		case "l1":
+			metric = new L1Distance();
+			break;
+		case "cosine":
+			metric = new CosineDissimilarity();
+			break;
+		default:
+			throw new IllegalArgumentException("unknown metric " + metricName);
+		}
+		floatMetric = (FloatMetric) metric;
+
+		Random random = new Random(42);
+		x = BenchmarkFaces.randomVector(dimension, random);
+		y = BenchmarkFaces.randomVector(dimension, random);
+		xNorm = Vectors.squaredNorm(x, 0, dimension);
+		yNorm = Vectors.squaredNorm(y, 0, dimension);
+		a = new Matrix(dimension, 1);
+		b = new Matrix(dimension, 1);
+		for (int j = 0; j < dimension; j++) {
+			a.set(j, 0, x[j]);
+			b.set(j, 0, y[j]);
+		}
+	}
+
+	@Benchmark
+	public double matrix() {
+		return metric.getDistance(a, b);
+	}
+
+	@Benchmark
+	public float floats() {
+		return floatMetric.getDistance(x, y, 0);
+	}
+
+	@Benchmark
+	public float floatsWithNorms() {
+		return floatMetric.getDistance(x, xNorm, y, 0, yNorm);
+	}
+}
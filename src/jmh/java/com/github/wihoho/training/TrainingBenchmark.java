@@ -0,0 +1,68 @@
+package com.github.wihoho.training;
+
+import com.github.wihoho.constant.EigenSolverType;
+import com.github.wihoho.jama.Matrix;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Training of each feature space on the first perPerson ORL images of
+ * every person, from decoded vectors to the projected training set.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class TrainingBenchmark {
+	@Param({ "5" })
+	public int perPerson;
+
+	@Param({ "39" })
+	public int components;
+
+	private ArrayList<Matrix> faces;
+	private ArrayList<String> labels;
+
+	@Setup
+	public void setUp() throws IOException {
+		faces = new ArrayList<Matrix>();
+		labels = new ArrayList<String>();
+		BenchmarkFaces.load(perPerson, faces, labels);
+	}
+
+	@Benchmark
+	public FeatureExtraction pca() throws Exception {
+		return new PCA(faces, labels, components);
+	}
+
+	@Benchmark
+	public FeatureExtraction pcaRandomized() throws Exception {
+		return new PCA(faces, labels, components, EigenSolverType.RANDOMIZED);
+	}
+
+	@Benchmark
+	public FeatureExtraction lda() throws Exception {
+		return new LDA(faces, labels, components);
+	}
+
+	@Benchmark
+	public FeatureExtraction lpp() throws Exception {
+		return new LPP(faces, labels, components);
+	}
+}
@@ -3,11 +3,10 @@ package com.example.business;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
-import java.util.Set;
-import java.util.TreeMap;
 import java.util.concurrent.locks.Lock;
 
 import org.slf4j.Logger;
@@ -16,8 +15,14 @@ import org.springframework.beans.factory.annotation.Autowired;
 
 import com.alibaba.fastjson.JSON;
 import com.example.commons.constants.ProductConstants;
-import com.example.core.LSH;
 import com.example.core.PHash;
+import com.example.core.SimHashFamily;
+import com.example.core.ann.AnnIndex;
+import com.example.core.ann.Distance;
+import com.example.core.ann.HnswIndex;
+import com.example.core.ann.IvfIndex;
+import com.example.core.ann.LshIndex;
+import com.example.core.ann.Neighbor;
 import com.example.core.ignite.IgniteCacheManager;
 import com.example.core.neuralNetwork.ImageEncodeAPI;
 import com.example.entity.ProductExt;
@@ -33,15 +38,27 @@ public class ImageSearchBusiness implements IImageSearchBusiness{
 	private static final Logger logger = LoggerFactory.getLogger(ImageSearchBusiness.class);
 	
 	private static final String IMAGE_SEARCH_INIT_LOCK_KEY = "imageSearchInitLock";
-	private static final String LSH_RANDOMNUMS_KEY = "lshRandomNums";
+	private static final String LSH_SEED_KEY = "lshSimHashSeed";
 	private static final int dimention = 100;
-	private static final int max = 200;
-	private static final int hashCount = 100; 
-	private static final int bitCount = 60;
+	// SimHash每位相同的概率为 1 - θ/π，余弦0.6时约0.70，0.8时约0.80；
+	// 多探针查询弥补表的数量，probeCount为所有表合计额外访问的桶数
+	private static final int hashCount = 16;
+	private static final int bitCount = 12;
+	private static final int probeCount = 200;
+	// IVF扫描的倒排表数量，倒排表数取商品数的平方根
+	private static final int ivfProbeCount = 8;
+	private static final int maxResults = 20;
+	private static final double minCosine = 0.6;
 	
 	@Autowired
 	private IgniteCacheManager igniteCacheManager;
-	private LSH lsh;
+	// 近似最近邻引擎：lsh（SimHash多探针）、hnsw（图索引）或 ivf（k-means倒排表）
+	private String annEngine = "lsh";
+	private AnnIndex annIndex;
+	
+	public void setAnnEngine(String annEngine) {
+		this.annEngine = annEngine;
+	}
 	
 	/**
 	 * 局部敏感hash数据初始化
@@ -51,31 +68,43 @@ public class ImageSearchBusiness implements IImageSearchBusiness{
 	@SuppressWarnings("unused")
 	private void init() throws IOException {
 		logger.info("ImageSearchBusiness init...");
-		List<Integer> lshRandomNums = null;
+		long lshSeed = 0;
 		Lock lock = igniteCacheManager.getLock().lock(IMAGE_SEARCH_INIT_LOCK_KEY);
 		lock.lock();
 		logger.info("ImageSearchBusiness init lock...");
 		try {
-			if (!igniteCacheManager.getProductCache().containsKey(LSH_RANDOMNUMS_KEY)) {
-				lshRandomNums = getLshRandomNums(hashCount, bitCount, dimention*max);
-				igniteCacheManager.getProductCache().put(LSH_RANDOMNUMS_KEY, JSON.toJSONString(lshRandomNums));
+			// 各节点共享同一组超平面，签名才能一致
+			if (!igniteCacheManager.getProductCache().containsKey(LSH_SEED_KEY)) {
+				lshSeed = new Random().nextLong();
+				igniteCacheManager.getProductCache().put(LSH_SEED_KEY, String.valueOf(lshSeed));
 			} else {
-				logger.info("get randomNums from cache");
-				lshRandomNums = JSON.parseArray(igniteCacheManager.getProductCache().get(LSH_RANDOMNUMS_KEY), Integer.class);
+				logger.info("get lsh seed from cache");
+				lshSeed = Long.parseLong(igniteCacheManager.getProductCache().get(LSH_SEED_KEY));
 			}
 		} catch (Exception e) {
-			logger.error("init lshRandomNums error",e);
+			logger.error("init lsh seed error",e);
 		}
 		lock.unlock();
 		logger.info("ImageSearchBusiness init unlock");
-		lsh = new LSH(dimention,max,hashCount,bitCount,lshRandomNums);
+		// ivf的中心需要在全部商品特征上训练，先收集再入库
+		boolean ivf = "ivf".equalsIgnoreCase(annEngine);
+		Map<String, float[]> pending = new LinkedHashMap<>();
+		annIndex = ivf ? null : createAnnIndex(lshSeed);
 		File[] files = new File(ProductConstants.productImageDirPath).listFiles();
 		for (File file:files) {
 			try {
 				float[] features = ImageEncodeAPI.encode(file);
 				ProductExt product = ImageSearchUtil.getProduct(file.getName());
 				product.setImgUrl("img/product/"+file.getName());
-				lsh.generateHashMap(String.valueOf(product.getId()), formatFeatures(features));
+				if (ivf) {
+					String id = String.valueOf(product.getId());
+					if (pending.containsKey(id)) {
+						throw new IllegalArgumentException("id " + id + " is already in the index");
+					}
+					pending.put(id, features);
+				} else {
+					annIndex.add(String.valueOf(product.getId()), features);
+				}
 				product.setFeatures(features);
 				if (!igniteCacheManager.getProductCache().containsKey(product.getId())) {
 					if (product.getPhash() == null) {
@@ -88,86 +117,50 @@ public class ImageSearchBusiness implements IImageSearchBusiness{
 				logger.error("init error file "+file.getName(),e);
 			}
 		}
-		logger.info("ImageSearchBusiness init end ");
-	}
-	
-	/**
-	 * 获取lsh随机投影点
-	 * 
-	 * @param hashCount
-	 * @param bitCount
-	 * @param size
-	 * @return
-	 */
-	private List<Integer> getLshRandomNums(int hashCount, int bitCount, int size) {
-		List<Integer> list = new ArrayList<>();
-		Random rd = new Random();
-		for (int i = 0; i < hashCount; i++) {
-			for (int j = 0; j < bitCount; j++) {
-				list.add(rd.nextInt(size));
+		if (ivf) {
+			if (pending.isEmpty()) {
+				annIndex = createAnnIndex(lshSeed);
+			} else {
+				int lists = (int) Math.max(1, Math.sqrt(pending.size()));
+				annIndex = IvfIndex.train(dimention, Distance.COSINE, new ArrayList<>(pending.values()), lists, ivfProbeCount);
+				for (Map.Entry<String, float[]> entry : pending.entrySet()) {
+					annIndex.add(entry.getKey(), entry.getValue());
+				}
 			}
 		}
-		return list;
+		logger.info("ImageSearchBusiness ann engine " + annIndex.getClass().getSimpleName());
+		logger.info("ImageSearchBusiness init end ");
 	}
 	
-	/**
-	 * 格式化特征值
-	 * 
-	 * @param features
-	 * @return
-	 */
-	private static int[] formatFeatures(float[] features) {
-		int[] intArray = new int[features.length];
-		for (int i=0;i<features.length;i++) {
-			intArray[i] = (int) (features[i] * 100) + 100;
-			if (intArray[i] > 200) {
-				intArray[i] = 200;
-			}
-			if (intArray[i] < 0) {
-				intArray[i] = 0;
-			}
+	private AnnIndex createAnnIndex(long lshSeed) {
+		if ("hnsw".equalsIgnoreCase(annEngine)) {
+			return new HnswIndex(dimention, Distance.COSINE);
 		}
-		return intArray;
+		if (!"lsh".equalsIgnoreCase(annEngine) && !"ivf".equalsIgnoreCase(annEngine)) {
+			logger.warn("unknown ann engine " + annEngine + ", using lsh");
+		}
+		return new LshIndex(new SimHashFamily(dimention,hashCount,bitCount,lshSeed), probeCount);
 	}
-
-	@SuppressWarnings({ "unchecked", "rawtypes" })
+	
 	@Override
 	public List<ProductExt> listProduct(File file) {
 		List<ProductExt> productList = new ArrayList<>();
 		try {
 			float[] features = ImageEncodeAPI.encode(file);
-			Set<String> productIds = lsh.query(formatFeatures(features));
-			if (productIds == null) {
-				return productList;
-			}
-			Map<Double,List<ProductExt>> treeMap = new TreeMap<>();
-			for (String id:productIds) {
-				ProductExt product = JSON.parseObject(igniteCacheManager.getProductCache().get(id), ProductExt.class);
-				//int d = ImageSearchUtil.hanmingDistance(PHash.phash(file.getAbsolutePath()),product.getPhash());
-				double d = ImageSearchUtil.cosDistance(features, product.getFeatures());
-				List<ProductExt> tempList = treeMap.get(d);
-				if (tempList == null) {
-					tempList = new ArrayList<>();
-					treeMap.put(d, tempList);
+			// 索引已按余弦距离排好序，只需读取前maxResults个商品
+			for (Neighbor neighbor : annIndex.search(features, maxResults)) {
+				if (1 - neighbor.getDistance() <= minCosine) {
+					break;
 				}
-				tempList.add(product);
-			}
-			treeMap = ((TreeMap)treeMap).descendingMap();
-			for (Map.Entry<Double,List<ProductExt>> entry: treeMap.entrySet()) {
-				//if (entry.getKey() <= 5) {
-				//	productList.addAll(entry.getValue());
-				//}
-				if (Math.abs(entry.getKey()) > 0.6) {
-					productList.addAll(entry.getValue());
+				ProductExt product = JSON.parseObject(igniteCacheManager.getProductCache().get(neighbor.getId()), ProductExt.class);
+				if (product != null) {
+					productList.add(product);
 				}
 			}
 		} catch (Exception e) {
 			logger.error("listProduct error", e);
 		}
 		System.out.println(productList.size());
-		if (productList.size() > 20) {
-			return productList.subList(0, 20);
-		}
 		return productList;
 	}
 	
@@ -0,0 +1,121 @@
+package com.example.core;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 海明空间的LSH哈希族：向量的每个元素（0到max）先按一元编码展开为max位的01串，
+ * 每个哈希函数随机采样其中一位。签名直接由采样点计算，不实际展开向量。
+ */
+public class HammingLSHFamily implements HashFamily<int[]> {
+	private int dimention; // 维度大小
+	private int max; // 所需向量中元素可能的上限
+	private int hashCount; // 哈希表的数量，用于更大程度地削减false positive
+	// LSH随机选取的采样位数，该值越小，则近似查找能力越大，但相应的false
+	// positive也越大；若该值等于size，则为由近似查找退化为精确匹配
+	private int bitCount;
+	private int size; // 转化为01字符串之后的位数，等于max乘以dimensions
+	private int[][] hashFamily; // LSH哈希族，保存了随机采样点的INDEX
+	// 采样点INDEX拆分后的原向量下标(idx/max)与阈值(idx%max)，一元编码的第idx位即 data[idx/max] > idx%max
+	private int[][] coordinates;
+	private int[][] thresholds;
+
+	public HammingLSHFamily(int dimention, int max, int hashCount, int bitCount) {
+		this(dimention, max, hashCount, bitCount, (List<Integer>) null);
+	}
+
+	// randomNums依次为每个哈希表的bitCount个采样点，为null时随机生成
+	public HammingLSHFamily(int dimention, int max, int hashCount, int bitCount, List<Integer> randomNums) {
+		this.dimention = dimention;
+		this.max = max;
+		this.hashCount = hashCount;
+		this.bitCount = bitCount;
+		this.size = this.dimention * this.max;
+		this.hashFamily = new int[hashCount][bitCount];
+		if (randomNums == null) {
+			generataHashFamily();
+		} else {
+			generataHashFamily(randomNums);
+		}
+		coordinates = new int[hashCount][bitCount];
+		thresholds = new int[hashCount][bitCount];
+		for (int i = 0; i < hashCount; i++) {
+			for (int j = 0; j < bitCount; j++) {
+				coordinates[i][j] = hashFamily[i][j] / max;
+				thresholds[i][j] = hashFamily[i][j] % max;
+			}
+		}
+	}
+
+	// 生成随机的投影点
+	private void generataHashFamily() {
+		Random rd = new Random();
+		for (int i = 0; i < hashCount; i++) {
+			for (int j = 0; j < bitCount; j++) {
+				hashFamily[i][j] = rd.nextInt(size);
+			}
+		}
+	}
+
+	// 生成随机的投影点
+	private void generataHashFamily(List<Integer> randomNums) {
+		int k = 0;
+		for (int i = 0; i < hashCount; i++) {
+			for (int j = 0; j < bitCount; j++) {
+				hashFamily[i][j] = randomNums.get(k);
+				k++;
+			}
+		}
+	}
+
+	// 将向量转化为二进制字符串，比如元素的最大范围255，则元素65就被转化为65个1以及190个0
+	public int[] hanmingEncode(int[] data) {
+		int unArayData[] = new int[size];
+		for (int i = 0; i < data.length; i++) {
+			for (int j = 0; j < data[i]; j++) {
+				unArayData[i * max + j] = 1;
+			}
+		}
+		return unArayData;
+	}
+
+	@Override
+	public int getHashCount() {
+		return hashCount;
+	}
+
+	@Override
+	public int getBitCount() {
+		return bitCount;
+	}
+
+	// 每64位打包为一个long，bitCount超过64时各long折叠为一个key（折叠碰撞只会增加候选，不会漏掉）
+	@Override
+	public long hash(int[] vector, int table) {
+		int[] coordinate = coordinates[table];
+		int[] threshold = thresholds[table];
+		long key = 0;
+		for (int from = 0; from < bitCount; from += 64) {
+			int to = Math.min(bitCount, from + 64);
+			long word = 0;
+			for (int i = from; i < to; i++) {
+				if (vector[coordinate[i]] > threshold[i]) {
+					word |= 1L << (i - from);
+				}
+			}
+			key = from == 0 ? word : key * 0x9E3779B97F4A7C15L + word;
+		}
+		return key;
+	}
+
+	// 元素需要变化多少才会越过阈值：该位为1时为 v - t，为0时为 t + 1 - v
+	@Override
+	public void margins(int[] vector, int table, double[] margins) {
+		int[] coordinate = coordinates[table];
+		int[] threshold = thresholds[table];
+		for (int i = 0; i < bitCount; i++) {
+			int v = vector[coordinate[i]];
+			margins[i] = v > threshold[i] ? v - threshold[i] : threshold[i] + 1 - v;
+		}
+	}
+}
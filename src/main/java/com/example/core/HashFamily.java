@@ -0,0 +1,23 @@
+package com.example.core;
+
+/**
+ * LSH哈希族：hashCount个哈希表，每个表把向量映射为bitCount位的签名。
+ * 相近的向量（按该族对应的距离）在同一个表中得到相同签名的概率更大。
+ *
+ * @param <T> 向量类型
+ */
+public interface HashFamily<T> {
+	// 哈希表的数量
+	int getHashCount();
+
+	// 每个签名的位数
+	int getBitCount();
+
+	// 向量在第table个哈希表中的签名，第i位为第i个哈希函数的结果；
+	// bitCount超过64时各long折叠为一个key
+	long hash(T vector, int table);
+
+	// 向量在第table个哈希表中每一位离翻转的距离，写入margins的前bitCount个元素；
+	// 距离越小，近邻在这一位上与向量不同的可能越大，多探针查询据此排序
+	void margins(T vector, int table, double[] margins);
+}
@@ -1,124 +1,309 @@
 package com.example.core;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.Random;
 import java.util.Set;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class LSH {
+/**
+ * 局部敏感哈希索引：由哈希族（{@link HashFamily}）决定向量类型与近似的距离，
+ * 每个哈希表按签名分桶保存id，查询时返回各表中同桶的id。
+ *
+ * 多探针查询（Multi-probe LSH, Lv et al. 2007）另外访问海明空间中相邻的桶：
+ * 按各位离翻转的距离排序，从所有表中按翻转代价（翻转位距离的平方和）由小到大
+ * 依次生成待翻转的位集合，直到用完探针数。少量的表加探针即可达到大量表的召回率。
+ *
+ * @param <T> 向量类型，如海明族的int[]、SimHash族的float[]
+ */
+public class LSH<T> {
 	private static final Logger logger = LoggerFactory.getLogger(LSH.class);
-	private int dimention; // 维度大小
-	private int max; // 所需向量中元素可能的上限
-	private int hashCount; // 哈希表的数量，用于更大程度地削减false positive
-	// LSH随机选取的采样位数，该值越小，则近似查找能力越大，但相应的false
-	// positive也越大；若该值等于size，则为由近似查找退化为精确匹配
-	private int bitCount;
-	private int size; // 转化为01字符串之后的位数，等于max乘以dimensions
-	private int[][] hashFamily; // LSH哈希族，保存了随机采样点的INDEX
-	private Map<String, ArrayList<String>> map;
-
-	public LSH(int dimention, int max, int hashCount, int bitCount) {
-		this.dimention = dimention;
-		this.max = max;
-		this.hashCount = hashCount;
-		this.bitCount = bitCount;
-		this.size = this.dimention * this.max;
-		this.hashFamily = new int[hashCount][bitCount];
-		map = new HashMap<>();
-		generataHashFamily();
+	private final HashFamily<T> family;
+	private LongBucketMap[] tables; // 每个哈希表一个，按签名分桶保存ids中的编号
+	private ArrayList<String> ids = new ArrayList<String>();
+
+	public LSH(HashFamily<T> family) {
+		this.family = family;
+		this.tables = new LongBucketMap[family.getHashCount()];
+		for (int i = 0; i < tables.length; i++) {
+			tables[i] = new LongBucketMap();
+		}
+	}
+
+	// 海明空间的LSH，向量元素取值0到max
+	public static LSH<int[]> hamming(int dimention, int max, int hashCount, int bitCount) {
+		return new LSH<int[]>(new HammingLSHFamily(dimention, max, hashCount, bitCount));
 	}
-	
-	public LSH(int dimention, int max, int hashCount, int bitCount, List<Integer> randomNums) {
-		this.dimention = dimention;
-		this.max = max;
-		this.hashCount = hashCount;
-		this.bitCount = bitCount;
-		this.size = this.dimention * this.max;
-		this.hashFamily = new int[hashCount][bitCount];
-		map = new HashMap<>();
-		generataHashFamily(randomNums);
+
+	public static LSH<int[]> hamming(int dimention, int max, int hashCount, int bitCount, List<Integer> randomNums) {
+		return new LSH<int[]>(new HammingLSHFamily(dimention, max, hashCount, bitCount, randomNums));
+	}
+
+	public HashFamily<T> getFamily() {
+		return family;
 	}
 
-	// 生成随机的投影点
-	private void generataHashFamily() {
-		Random rd = new Random();
-		for (int i = 0; i < hashCount; i++) {
-			for (int j = 0; j < bitCount; j++) {
-				hashFamily[i][j] = rd.nextInt(size);
+	// 将向量映射为LSH中的key，并保存至map中
+	public void generateHashMap(String id, T vercotr) {
+		int index = ids.size();
+		ids.add(id);
+		for (int j = 0; j < tables.length; j++) {
+			long key = family.hash(vercotr, j);
+			tables[j].add(key, index);
+			if (logger.isDebugEnabled()) {
+				logger.debug(id + "-lsh:" + Long.toHexString(key));
 			}
 		}
 	}
-	
-	// 生成随机的投影点
-	private void generataHashFamily(List<Integer> randomNums) {
-		int k = 0;
-		for (int i = 0; i < hashCount; i++) {
-			for (int j = 0; j < bitCount; j++) {
-				hashFamily[i][j] = randomNums.get(k);
-				k++;
+
+	// 查询与输入向量最接近的向量
+	public Set<String> query(T data) {
+		return query(data, 0);
+	}
+
+	/**
+	 * 多探针查询：除每个表中向量所在的桶之外，再按翻转代价访问probes个相邻的桶（所有表合计）。
+	 * bitCount超过64时签名经过折叠，无法翻转单个位，只查询所在的桶。
+	 */
+	public Set<String> query(T data, int probes) {
+		Set<String> result = new HashSet<String>();
+		query(data, probes, newScratch(), result::add);
+		return result;
+	}
+
+	/**
+	 * 同{@link #query(Object, int)}，候选id逐个交给visitor，每个id只访问一次。
+	 * 排序、探针堆与去重标记都放在scratch中重复使用，除scratch随索引增长扩容外不分配内存。
+	 * scratch由{@link #newScratch()}创建，同一时刻只能被一个线程使用。
+	 */
+	public void query(T data, int probes, Scratch scratch, Consumer<String> visitor) {
+		int count = probe(data, probes, scratch);
+		int epoch = scratch.nextEpoch(ids.size());
+		int[] seen = scratch.seen;
+		for (int p = 0; p < count; p++) {
+			LongBucketMap table = tables[scratch.probeTables[p]];
+			int bucket = table.bucket(scratch.probeKeys[p]);
+			if (bucket < 0) {
+				continue;
+			}
+			int[] bucketIds = table.ids(bucket);
+			for (int k = 0, n = table.bucketSize(bucket); k < n; k++) {
+				int index = bucketIds[k];
+				if (seen[index] != epoch) {
+					seen[index] = epoch;
+					visitor.accept(ids.get(index));
+				}
 			}
 		}
 	}
 
-	// 将向量转化为二进制字符串，比如元素的最大范围255，则元素65就被转化为65个1以及190个0
-	public int[] hanmingEncode(int[] data) {
-		int unArayData[] = new int[size];
-		for (int i = 0; i < data.length; i++) {
-			for (int j = 0; j < data[i]; j++) {
-				unArayData[i * max + j] = 1;
+	// 供query使用的可重复利用的缓冲区
+	public Scratch newScratch() {
+		return new Scratch(tables.length, family.getBitCount());
+	}
+
+	/**
+	 * 把要访问的桶依次写入scratch的probeTables、probeKeys与probeScores，返回桶数：
+	 * 先是每个表中向量所在的桶（代价为0），再是按代价升序的probes个相邻的桶。
+	 */
+	int probe(T data, int probes, Scratch scratch) {
+		if (scratch.keys.length != tables.length || scratch.margins.length != family.getBitCount()) {
+			throw new IllegalArgumentException("scratch was created for another LSH");
+		}
+		int bitCount = family.getBitCount();
+		boolean multiProbe = probes > 0 && bitCount > 0 && bitCount <= 64;
+		scratch.reset(tables.length + (multiProbe ? probes : 0));
+		long[] keys = scratch.keys;
+		for (int j = 0; j < tables.length; j++) {
+			keys[j] = family.hash(data, j);
+			scratch.addProbe(j, keys[j], 0);
+			if (logger.isDebugEnabled()) {
+				logger.debug("-lsh:" + Long.toHexString(keys[j]));
+			}
+		}
+		if (!multiProbe) {
+			return scratch.probeCount;
+		}
+
+		// 每个表的各位按离翻转的距离升序排列，cost为距离的平方
+		double[] margins = scratch.margins;
+		for (int j = 0; j < tables.length; j++) {
+			family.margins(data, j, margins);
+			int[] order = scratch.order[j];
+			double[] cost = scratch.cost[j];
+			sortByMargin(margins, bitCount, order);
+			for (int k = 0; k < bitCount; k++) {
+				double m = margins[order[k]];
+				cost[k] = m * m;
+			}
+			scratch.push(j, 1L, 0, cost[0]);
+		}
+
+		// 位集合用排序后的位置表示，last为其中最大的位置；
+		// shift把last换成last+1，expand加入last+1，可不重复地枚举所有集合
+		for (int n = 0; n < probes && scratch.heapSize > 0; n++) {
+			int j = scratch.heapTables[0];
+			long set = scratch.heapSets[0];
+			int last = scratch.heapLasts[0];
+			double score = scratch.heapScores[0];
+			scratch.pop();
+
+			int[] order = scratch.order[j];
+			double[] cost = scratch.cost[j];
+			long flip = 0;
+			for (long rest = set; rest != 0; rest &= rest - 1) {
+				flip |= 1L << order[Long.numberOfTrailingZeros(rest)];
+			}
+			scratch.addProbe(j, keys[j] ^ flip, score);
+
+			int next = last + 1;
+			if (next < bitCount) {
+				scratch.push(j, set ^ (1L << last) | (1L << next), next, score - cost[last] + cost[next]);
+				scratch.push(j, set | (1L << next), next, score + cost[next]);
 			}
 		}
-		return unArayData;
+		return scratch.probeCount;
 	}
 
-	// 将向量映射为LSH中的key
-	private String generateHashKey(int[] vercotr, int hashNum) {
-		StringBuilder sb = new StringBuilder();
-		int[] tempData = hanmingEncode(vercotr);
-		int[] hashedData = new int[bitCount];
-		// 首先将向量转为二进制字符串
+	// 位下标按margins升序写入order（位数很少，插入排序）
+	private static void sortByMargin(double[] margins, int bitCount, int[] order) {
 		for (int i = 0; i < bitCount; i++) {
-			hashedData[i] = tempData[hashFamily[hashNum][i]];
-			sb.append(hashedData[i]);
-			// System.out.print(hashedData[i]);
+			int k = i;
+			while (k > 0 && margins[order[k - 1]] > margins[i]) {
+				order[k] = order[k - 1];
+				k--;
+			}
+			order[k] = i;
 		}
-		return sb.toString();
 	}
 
-	// 将向量映射为LSH中的key，并保存至map中
-	public void generateHashMap(String id, int[] vercotr) {
-		for (int j = 0; j < hashCount; j++) {
-			String key = generateHashKey(vercotr, j);
-			//System.out.println(key);
-			ArrayList<String> l = map.get(key);
-			if (map.containsKey(key)) {
-				l = map.get(key);
-			} else {
-				l = new ArrayList<String>();
-				map.put(key, l);
+	/**
+	 * 查询的缓冲区：各表的签名与按margin排序的位、待探测位集合的最小堆（按代价）、
+	 * 本次要访问的桶，以及按编号去重的标记。
+	 */
+	public static final class Scratch {
+		final long[] keys;
+		final double[] margins;
+		final int[][] order;
+		final double[][] cost;
+
+		// 待探测的位集合：第table个表中翻转set对应的位，按score的最小堆
+		int[] heapTables;
+		long[] heapSets;
+		int[] heapLasts;
+		double[] heapScores;
+		int heapSize;
+
+		// 本次查询要访问的桶
+		int[] probeTables;
+		long[] probeKeys;
+		double[] probeScores;
+		int probeCount;
+
+		// seen[i] == epoch表示编号i已经访问过
+		int[] seen = new int[0];
+		int epoch;
+
+		Scratch(int tables, int bitCount) {
+			keys = new long[tables];
+			margins = new double[bitCount];
+			order = new int[tables][bitCount];
+			cost = new double[tables][bitCount];
+			heapTables = new int[tables];
+			heapSets = new long[tables];
+			heapLasts = new int[tables];
+			heapScores = new double[tables];
+			probeTables = new int[tables];
+			probeKeys = new long[tables];
+			probeScores = new double[tables];
+		}
+
+		// 准备最多容纳probes个桶；每次出堆至多入堆两个，堆不会超过probes加表数
+		void reset(int probes) {
+			heapSize = 0;
+			probeCount = 0;
+			if (probeTables.length < probes) {
+				probeTables = Arrays.copyOf(probeTables, probes);
+				probeKeys = Arrays.copyOf(probeKeys, probes);
+				probeScores = Arrays.copyOf(probeScores, probes);
+			}
+			int heap = probes + keys.length;
+			if (heapTables.length < heap) {
+				heapTables = Arrays.copyOf(heapTables, heap);
+				heapSets = Arrays.copyOf(heapSets, heap);
+				heapLasts = Arrays.copyOf(heapLasts, heap);
+				heapScores = Arrays.copyOf(heapScores, heap);
 			}
-			l.add(id);
-			logger.info(id+"-lsh:"+key);
 		}
-	}
 
-	// 查询与输入向量最接近（海明空间）的向量
-	public Set<String> query(int[] data) {
-		Set<String> result = new HashSet<String>();
-		for (int j = 0; j < hashCount; j++) {
-			String key = generateHashKey(data, j);
-			if (map.containsKey(key)) {
-				result.addAll(map.get(key));
+		void addProbe(int table, long key, double score) {
+			probeTables[probeCount] = table;
+			probeKeys[probeCount] = key;
+			probeScores[probeCount] = score;
+			probeCount++;
+		}
+
+		void push(int table, long set, int last, double score) {
+			int i = heapSize++;
+			while (i > 0) {
+				int parent = (i - 1) >>> 1;
+				if (heapScores[parent] <= score) {
+					break;
+				}
+				move(parent, i);
+				i = parent;
 			}
-			logger.info("-lsh:"+key);
+			heapTables[i] = table;
+			heapSets[i] = set;
+			heapLasts[i] = last;
+			heapScores[i] = score;
+		}
+
+		// 移除堆顶
+		void pop() {
+			int n = --heapSize;
+			if (n == 0) {
+				return;
+			}
+			double score = heapScores[n];
+			int i = 0;
+			int half = n >>> 1;
+			while (i < half) {
+				int child = 2 * i + 1;
+				if (child + 1 < n && heapScores[child + 1] < heapScores[child]) {
+					child++;
+				}
+				if (score <= heapScores[child]) {
+					break;
+				}
+				move(child, i);
+				i = child;
+			}
+			move(n, i);
+		}
+
+		private void move(int from, int to) {
+			heapTables[to] = heapTables[from];
+			heapSets[to] = heapSets[from];
+			heapLasts[to] = heapLasts[from];
+			heapScores[to] = heapScores[from];
+		}
+
+		// 开始一次去重，编号不超过size
+		int nextEpoch(int size) {
+			if (seen.length < size) {
+				seen = Arrays.copyOf(seen, Math.max(size, seen.length + (seen.length >> 1)));
+			}
+			if (++epoch == 0) {
+				Arrays.fill(seen, 0);
+				epoch = 1;
+			}
+			return epoch;
 		}
-		return result;
 	}
-	
+
 }
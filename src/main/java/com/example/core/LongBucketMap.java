@@ -0,0 +1,119 @@
+package com.example.core;
+
+import java.util.Arrays;
+
+/**
+ * LSH桶表：以long签名为key的开放寻址哈希表（线性探测），每个桶保存一组int编号。
+ * key与编号均为基本类型，查询不产生任何对象；桶内数组按倍数扩容。
+ */
+final class LongBucketMap {
+	private static final int[] EMPTY = new int[0];
+
+	private long[] keys; // 槽位中的签名
+	private int[] slots; // 槽位对应的桶下标加1，0表示空槽
+	private int[][] buckets; // 每个桶的编号，前sizes[i]个有效
+	private int[] sizes;
+	private int bucketCount;
+
+	LongBucketMap() {
+		this(16);
+	}
+
+	LongBucketMap(int expectedBuckets) {
+		int capacity = Integer.highestOneBit(Math.max(4, expectedBuckets) * 2 - 1) << 1;
+		keys = new long[capacity];
+		slots = new int[capacity];
+		buckets = new int[Math.max(4, expectedBuckets)][];
+		sizes = new int[buckets.length];
+	}
+
+	// 桶的数量
+	int size() {
+		return bucketCount;
+	}
+
+	// 将编号id加入签名key所在的桶
+	void add(long key, int id) {
+		int bucket = bucket(key);
+		if (bucket < 0) {
+			bucket = insert(key);
+		}
+		int[] ids = buckets[bucket];
+		int n = sizes[bucket];
+		if (n == ids.length) {
+			ids = Arrays.copyOf(ids, Math.max(4, n * 2));
+			buckets[bucket] = ids;
+		}
+		ids[n] = id;
+		sizes[bucket] = n + 1;
+	}
+
+	// 签名key所在桶的下标，不存在时返回-1
+	int bucket(long key) {
+		int mask = slots.length - 1;
+		for (int i = mix(key) & mask;; i = (i + 1) & mask) {
+			int slot = slots[i];
+			if (slot == 0) {
+				return -1;
+			}
+			if (keys[i] == key) {
+				return slot - 1;
+			}
+		}
+	}
+
+	// 桶中的编号，只有前bucketSize(bucket)个有效
+	int[] ids(int bucket) {
+		return buckets[bucket];
+	}
+
+	int bucketSize(int bucket) {
+		return sizes[bucket];
+	}
+
+	private int insert(long key) {
+		if ((bucketCount + 1) * 2 > slots.length) {
+			rehash(slots.length * 2);
+		}
+		if (bucketCount == buckets.length) {
+			buckets = Arrays.copyOf(buckets, bucketCount * 2);
+			sizes = Arrays.copyOf(sizes, bucketCount * 2);
+		}
+		int bucket = bucketCount++;
+		buckets[bucket] = EMPTY;
+		place(key, bucket + 1);
+		return bucket;
+	}
+
+	private void place(long key, int slot) {
+		int mask = slots.length - 1;
+		int i = mix(key) & mask;
+		while (slots[i] != 0) {
+			i = (i + 1) & mask;
+		}
+		keys[i] = key;
+		slots[i] = slot;
+	}
+
+	private void rehash(int capacity) {
+		long[] oldKeys = keys;
+		int[] oldSlots = slots;
+		keys = new long[capacity];
+		slots = new int[capacity];
+		for (int i = 0; i < oldSlots.length; i++) {
+			if (oldSlots[i] != 0) {
+				place(oldKeys[i], oldSlots[i]);
+			}
+		}
+	}
+
+	// 签名的低位可能高度相关，探测前先打散（MurmurHash3 fmix64）
+	private static int mix(long key) {
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb9fe1a85ec53L;
+		key ^= key >>> 33;
+		return (int) key;
+	}
+}
@@ -0,0 +1,93 @@
+package com.example.core;
+
+import java.util.Random;
+
+/**
+ * 余弦距离的LSH哈希族（随机超平面，SimHash）：每个哈希函数是一个高斯随机向量r，
+ * 第i位为 dot(r, v) >= 0。两个向量夹角为θ时每一位相同的概率为 1 - θ/π，
+ * 因此直接作用于float[]特征，与按余弦相似度排序的检索一致，且与向量的模无关。
+ *
+ * 超平面由seed确定，相同seed的实例签名一致，可在多个节点间共享。
+ */
+public class SimHashFamily implements HashFamily<float[]> {
+	private final int dimention; // 向量维度
+	private final int hashCount; // 哈希表的数量
+	private final int bitCount; // 每个哈希表的超平面数量
+	private final long seed;
+	// 第table个表的第bit个超平面位于 ((table * bitCount) + bit) * dimention
+	private final float[] planes;
+	private final double[] planeNorms; // 每个超平面法向量的模
+
+	public SimHashFamily(int dimention, int hashCount, int bitCount, long seed) {
+		this.dimention = dimention;
+		this.hashCount = hashCount;
+		this.bitCount = bitCount;
+		this.seed = seed;
+		this.planes = new float[hashCount * bitCount * dimention];
+		this.planeNorms = new double[hashCount * bitCount];
+		Random rd = new Random(seed);
+		for (int i = 0; i < planes.length; i++) {
+			planes[i] = (float) rd.nextGaussian();
+		}
+		for (int i = 0; i < planeNorms.length; i++) {
+			double norm = 0;
+			for (int j = i * dimention; j < (i + 1) * dimention; j++) {
+				norm += planes[j] * planes[j];
+			}
+			planeNorms[i] = Math.sqrt(norm);
+		}
+	}
+
+	public int getDimention() {
+		return dimention;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	@Override
+	public int getHashCount() {
+		return hashCount;
+	}
+
+	@Override
+	public int getBitCount() {
+		return bitCount;
+	}
+
+	@Override
+	public long hash(float[] vector, int table) {
+		long key = 0;
+		int plane = table * bitCount * dimention;
+		for (int from = 0; from < bitCount; from += 64) {
+			int to = Math.min(bitCount, from + 64);
+			long word = 0;
+			for (int i = from; i < to; i++, plane += dimention) {
+				if (project(vector, plane) >= 0) {
+					word |= 1L << (i - from);
+				}
+			}
+			key = from == 0 ? word : key * 0x9E3779B97F4A7C15L + word;
+		}
+		return key;
+	}
+
+	// 向量到各超平面的距离 |dot(r, v)| / |r|
+	@Override
+	public void margins(float[] vector, int table, double[] margins) {
+		int first = table * bitCount;
+		for (int i = 0; i < bitCount; i++) {
+			margins[i] = Math.abs(project(vector, (first + i) * dimention)) / planeNorms[first + i];
+		}
+	}
+
+	// 向量在offset处超平面法向量上的投影
+	double project(float[] vector, int offset) {
+		double dot = 0;
+		for (int j = 0; j < dimention; j++) {
+			dot += planes[offset + j] * vector[j];
+		}
+		return dot;
+	}
+}
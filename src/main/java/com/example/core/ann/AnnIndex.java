@@ -0,0 +1,45 @@
+package com.example.core.ann;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * 近似最近邻（ANN）索引：按id保存float[]向量，查询与给定向量最接近的K个id。
+ * 不同的实现（{@link HnswIndex}、{@link LshIndex}、{@link IvfIndex}）在召回率、延迟与内存之间取舍不同，
+ * 业务层只依赖该接口，可按配置切换。
+ */
+public interface AnnIndex {
+	// 加入一个向量，实现需支持与查询并发调用；id已存在时抛出IllegalArgumentException，索引不变
+	void add(String id, float[] vector);
+
+	// 与query最接近的至多k个结果，按距离升序
+	List<Neighbor> search(float[] query, int k);
+
+	// 已加入的向量数量
+	int size();
+
+	// 向量距离的定义
+	Distance getDistance();
+
+	// 保存到文件，先写临时文件再原子替换
+	void save(Path path) throws IOException;
+
+	// 读取任一实现保存的索引，按文件头区分类型
+	static AnnIndex load(Path path) throws IOException {
+		try (DataInputStream in = IndexFiles.open(path)) {
+			int magic = in.readInt();
+			switch (magic) {
+			case HnswIndex.MAGIC:
+				return HnswIndex.read(in);
+			case LshIndex.MAGIC:
+				return LshIndex.read(in);
+			case IvfIndex.MAGIC:
+				return IvfIndex.read(in);
+			default:
+				throw new IOException("unknown index file: " + path);
+			}
+		}
+	}
+}
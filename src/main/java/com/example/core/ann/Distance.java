@@ -0,0 +1,71 @@
+package com.example.core.ann;
+
+/**
+ * 索引使用的向量距离。索引内部比较的是单调等价、计算更便宜的形式：
+ * 欧氏距离比较平方，余弦距离在入库前把向量归一化后比较 1 - dot。
+ */
+public enum Distance {
+	// 欧氏距离
+	EUCLIDEAN {
+		@Override
+		float[] prepare(float[] vector) {
+			return vector.clone();
+		}
+
+		@Override
+		float compare(float[] a, float[] b) {
+			float sum = 0;
+			for (int i = 0; i < a.length; i++) {
+				float d = a[i] - b[i];
+				sum += d * d;
+			}
+			return sum;
+		}
+
+		@Override
+		double report(float compared) {
+			return Math.sqrt(compared);
+		}
+	},
+	// 余弦距离 1 - cos，取值[0, 2]
+	COSINE {
+		@Override
+		float[] prepare(float[] vector) {
+			float[] v = vector.clone();
+			double norm = 0;
+			for (float x : v) {
+				norm += x * x;
+			}
+			if (norm > 0) {
+				float scale = (float) (1 / Math.sqrt(norm));
+				for (int i = 0; i < v.length; i++) {
+					v[i] *= scale;
+				}
+			}
+			return v;
+		}
+
+		@Override
+		float compare(float[] a, float[] b) {
+			float dot = 0;
+			for (int i = 0; i < a.length; i++) {
+				dot += a[i] * b[i];
+			}
+			return Math.max(0f, 1 - dot);
+		}
+
+		@Override
+		double report(float compared) {
+			return compared;
+		}
+	};
+
+	// 入库或查询前的向量副本
+	abstract float[] prepare(float[] vector);
+
+	// prepare之后两个向量的比较值，非负，越小越近
+	abstract float compare(float[] a, float[] b);
+
+	// 比较值换算为对外的距离
+	abstract double report(float compared);
+}
@@ -0,0 +1,462 @@
+package com.example.core.ann;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * HNSW（Hierarchical Navigable Small World, Malkov & Yashunin 2016）图索引。
+ *
+ * 每个节点随机分到0至L层（P(L >= l) = M^-l），每层是一张近邻图：高层稀疏，用于快速逼近，
+ * 第0层包含全部节点。查询从最高层的入口贪心下降，在第0层以宽度ef做最佳优先搜索，
+ * 访问的节点数随规模大致对数增长。插入时用同样的搜索找到候选，按启发式选出至多M个
+ * （第0层2M个）方向分散的邻居并双向连接。
+ *
+ * 插入与查询可并发：每个节点的邻接表由该节点的锁保护，新节点在连接完成前不被其它节点引用；
+ * 只有层数超过当前入口的插入会持有全局锁。
+ */
+public class HnswIndex implements AnnIndex {
+	static final int MAGIC = 0x484e5357; // "HNSW"
+	private static final int VERSION = 1;
+
+	public static final int DEFAULT_M = 16;
+	public static final int DEFAULT_EF_CONSTRUCTION = 200;
+	public static final int DEFAULT_EF = 64;
+
+	private final int dimension;
+	private final Distance distance;
+	private final int m; // 第1层及以上每个节点的邻居上限
+	private final int maxM0; // 第0层的邻居上限
+	private final int efConstruction; // 插入时的搜索宽度
+	private final double levelFactor; // 1 / ln(M)
+	private volatile int ef; // 查询时的默认搜索宽度
+
+	private final Object entryLock = new Object();
+	private volatile Node entry; // 最高层的入口节点
+	private volatile Node[] nodes = new Node[16];
+	private volatile int size;
+	private final HashMap<String, Integer> indexes = new HashMap<String, Integer>(); // 由allocate的锁保护
+
+	private final ThreadLocal<Visited> visited = ThreadLocal.withInitial(Visited::new);
+
+	static final class Node {
+		final int index;
+		final String id;
+		final float[] vector; // 已经过Distance.prepare
+		final int level;
+		final int[][] links; // 每层的邻居编号，由该节点的锁保护
+		final int[] counts;
+
+		Node(int index, String id, float[] vector, int level, int m, int maxM0) {
+			this.index = index;
+			this.id = id;
+			this.vector = vector;
+			this.level = level;
+			this.links = new int[level + 1][];
+			this.counts = new int[level + 1];
+			for (int l = 0; l <= level; l++) {
+				links[l] = new int[l == 0 ? maxM0 : m];
+			}
+		}
+	}
+
+	public HnswIndex(int dimension, Distance distance) {
+		this(dimension, distance, DEFAULT_M, DEFAULT_EF_CONSTRUCTION, DEFAULT_EF);
+	}
+
+	public HnswIndex(int dimension, Distance distance, int m, int efConstruction, int ef) {
+		if (m < 2) {
+			throw new IllegalArgumentException("m must be at least 2");
+		}
+		this.dimension = dimension;
+		this.distance = distance;
+		this.m = m;
+		this.maxM0 = 2 * m;
+		this.efConstruction = Math.max(efConstruction, m);
+		this.levelFactor = 1 / Math.log(m);
+		this.ef = Math.max(1, ef);
+	}
+
+	public int getDimension() {
+		return dimension;
+	}
+
+	public int getM() {
+		return m;
+	}
+
+	public int getEfConstruction() {
+		return efConstruction;
+	}
+
+	public int getEf() {
+		return ef;
+	}
+
+	// 查询的默认搜索宽度，越大召回率越高、延迟越大
+	public void setEf(int ef) {
+		this.ef = Math.max(1, ef);
+	}
+
+	@Override
+	public Distance getDistance() {
+		return distance;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public void add(String id, float[] vector) {
+		if (vector.length != dimension) {
+			throw new IllegalArgumentException("vector dimension " + vector.length + " != " + dimension);
+		}
+		int level = (int) (-Math.log(1 - ThreadLocalRandom.current().nextDouble()) * levelFactor);
+		Node node = allocate(id, distance.prepare(vector), level);
+
+		Node ep = entry;
+		if (ep == null || level > ep.level) {
+			synchronized (entryLock) {
+				ep = entry;
+				if (ep == null) {
+					entry = node;
+					return;
+				}
+				if (level > ep.level) {
+					connect(node, ep);
+					entry = node;
+					return;
+				}
+			}
+		}
+		connect(node, ep);
+	}
+
+	private synchronized Node allocate(String id, float[] vector, int level) {
+		if (indexes.containsKey(id)) {
+			throw new IllegalArgumentException("id " + id + " is already in the index");
+		}
+		Node[] array = nodes;
+		int index = size;
+		indexes.put(id, index);
+		if (index == array.length) {
+			array = Arrays.copyOf(array, index * 2);
+		}
+		Node node = new Node(index, id, vector, level, m, maxM0);
+		array[index] = node;
+		nodes = array;
+		size = index + 1;
+		return node;
+	}
+
+	// 把新节点接入图：在ep的各层向下逼近，在node所在的每一层选邻居并双向连接
+	private void connect(Node node, Node ep) {
+		float[] q = node.vector;
+		Node current = ep;
+		for (int l = ep.level; l > node.level; l--) {
+			current = greedy(q, current, l);
+		}
+		for (int l = Math.min(node.level, ep.level); l >= 0; l--) {
+			long[] found = searchLayer(q, current, efConstruction, l);
+			int[] selected = selectNeighbors(q, found, m);
+			synchronized (node) {
+				System.arraycopy(selected, 0, node.links[l], 0, selected.length);
+				node.counts[l] = selected.length;
+			}
+			int maxLinks = l == 0 ? maxM0 : m;
+			Node[] array = nodes;
+			for (int s : selected) {
+				link(array[s], node.index, l, maxLinks);
+			}
+			current = array[LongHeap.index(found[0])];
+		}
+	}
+
+	// 给n在第level层加一条指向index的边，邻居已满时按启发式重新挑选
+	private void link(Node n, int index, int level, int maxLinks) {
+		synchronized (n) {
+			int count = n.counts[level];
+			int[] links = n.links[level];
+			if (count < maxLinks) {
+				links[count] = index;
+				n.counts[level] = count + 1;
+				return;
+			}
+			Node[] array = nodes;
+			long[] candidates = new long[count + 1];
+			for (int i = 0; i < count; i++) {
+				candidates[i] = LongHeap.key(distance.compare(n.vector, array[links[i]].vector), links[i]);
+			}
+			candidates[count] = LongHeap.key(distance.compare(n.vector, array[index].vector), index);
+			Arrays.sort(candidates);
+			int[] kept = selectNeighbors(n.vector, candidates, maxLinks);
+			System.arraycopy(kept, 0, links, 0, kept.length);
+			n.counts[level] = kept.length;
+		}
+	}
+
+	/**
+	 * 启发式选邻居（论文算法4）：按距离升序考察候选，只保留比已选邻居都更接近q的候选，
+	 * 使边指向不同方向，图在聚簇数据上仍保持连通。candidates按距离升序。
+	 */
+	private int[] selectNeighbors(float[] q, long[] candidates, int max) {
+		Node[] array = nodes;
+		int[] selected = new int[Math.min(max, candidates.length)];
+		int count = 0;
+		for (int i = 0; i < candidates.length && count < selected.length; i++) {
+			int c = LongHeap.index(candidates[i]);
+			float dc = LongHeap.distance(candidates[i]);
+			float[] vc = array[c].vector;
+			boolean keep = true;
+			for (int j = 0; j < count; j++) {
+				if (distance.compare(vc, array[selected[j]].vector) < dc) {
+					keep = false;
+					break;
+				}
+			}
+			if (keep) {
+				selected[count++] = c;
+			}
+		}
+		return count == selected.length ? selected : Arrays.copyOf(selected, count);
+	}
+
+	// 在第level层从start贪心移动到离q最近的节点
+	private Node greedy(float[] q, Node start, int level) {
+		Node current = start;
+		float best = distance.compare(q, current.vector);
+		int[] buffer = new int[m];
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			int count;
+			synchronized (current) {
+				count = current.counts[level];
+				System.arraycopy(current.links[level], 0, buffer, 0, count);
+			}
+			Node[] array = nodes;
+			for (int i = 0; i < count; i++) {
+				Node n = array[buffer[i]];
+				float d = distance.compare(q, n.vector);
+				if (d < best) {
+					best = d;
+					current = n;
+					changed = true;
+				}
+			}
+		}
+		return current;
+	}
+
+	/**
+	 * 第level层从start出发、宽度为ef的最佳优先搜索，返回找到的至多ef个节点（距离与编号的key），按距离升序。
+	 */
+	private long[] searchLayer(float[] q, Node start, int ef, int level) {
+		Visited marks = visited.get();
+		marks.reset(size);
+		LongHeap candidates = new LongHeap(ef); // 最小堆：待扩展的节点
+		LongHeap results = new LongHeap(ef + 1); // 取反的最大堆：当前最好的ef个节点
+
+		long startKey = LongHeap.key(distance.compare(q, start.vector), start.index);
+		marks.mark(start.index);
+		candidates.add(startKey);
+		results.add(-startKey);
+
+		int[] buffer = new int[level == 0 ? maxM0 : m];
+		while (!candidates.isEmpty()) {
+			long c = candidates.poll();
+			if (LongHeap.distance(c) > LongHeap.distance(-results.peek()) && results.size() >= ef) {
+				break;
+			}
+			Node cn = nodes[LongHeap.index(c)];
+			int count;
+			synchronized (cn) {
+				count = cn.counts[level];
+				System.arraycopy(cn.links[level], 0, buffer, 0, count);
+			}
+			Node[] array = nodes;
+			for (int i = 0; i < count; i++) {
+				int n = buffer[i];
+				if (!marks.mark(n)) {
+					continue;
+				}
+				float d = distance.compare(q, array[n].vector);
+				if (results.size() < ef || d < LongHeap.distance(-results.peek())) {
+					long key = LongHeap.key(d, n);
+					candidates.add(key);
+					results.add(-key);
+					if (results.size() > ef) {
+						results.poll();
+					}
+				}
+			}
+		}
+
+		long[] found = new long[results.size()];
+		for (int i = found.length - 1; i >= 0; i--) {
+			found[i] = -results.poll();
+		}
+		return found;
+	}
+
+	@Override
+	public List<Neighbor> search(float[] query, int k) {
+		return search(query, k, ef);
+	}
+
+	// ef为本次查询的搜索宽度，小于k时按k
+	public List<Neighbor> search(float[] query, int k, int ef) {
+		if (query.length != dimension) {
+			throw new IllegalArgumentException("vector dimension " + query.length + " != " + dimension);
+		}
+		List<Neighbor> result = new ArrayList<Neighbor>();
+		Node ep = entry;
+		if (ep == null || k <= 0) {
+			return result;
+		}
+		float[] q = distance.prepare(query);
+		Node current = ep;
+		for (int l = ep.level; l > 0; l--) {
+			current = greedy(q, current, l);
+		}
+		long[] found = searchLayer(q, current, Math.max(ef, k), 0);
+		Node[] array = nodes;
+		for (int i = 0; i < found.length && i < k; i++) {
+			Node n = array[LongHeap.index(found[i])];
+			result.add(new Neighbor(n.id, distance.report(LongHeap.distance(found[i]))));
+		}
+		return result;
+	}
+
+	// 查询时已访问节点的标记，按线程复用：每次查询换一个tag，无需清空数组
+	private static final class Visited {
+		private int[] marks = new int[0];
+		private int tag;
+
+		void reset(int size) {
+			if (marks.length < size) {
+				marks = new int[Math.max(size, marks.length * 2)];
+				tag = 0;
+			}
+			if (++tag == 0) {
+				Arrays.fill(marks, 0);
+				tag = 1;
+			}
+		}
+
+		// 未访问过时标记并返回true；并发插入可能带来超出reset时规模的编号
+		boolean mark(int index) {
+			if (index >= marks.length) {
+				marks = Arrays.copyOf(marks, Math.max(index + 1, marks.length * 2));
+			}
+			if (marks[index] == tag) {
+				return false;
+			}
+			marks[index] = tag;
+			return true;
+		}
+	}
+
+	/**
+	 * 文件格式：MAGIC、版本、距离、维度、M、efConstruction、ef、节点数、入口编号，
+	 * 之后依次为每个节点的id、层数、向量与每层的邻居。与插入并发保存时，
+	 * 只保存开始时已有的节点，指向之后节点的边被略去。
+	 */
+	@Override
+	public void save(Path path) throws IOException {
+		IndexFiles.save(path, this::write);
+	}
+
+	private void write(DataOutputStream out) throws IOException {
+		Node ep = entry;
+		int count = size;
+		Node[] array = nodes;
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(distance.ordinal());
+		out.writeInt(dimension);
+		out.writeInt(m);
+		out.writeInt(efConstruction);
+		out.writeInt(ef);
+		out.writeInt(count);
+		out.writeInt(ep == null ? -1 : ep.index);
+		int[] buffer = new int[maxM0];
+		for (int i = 0; i < count; i++) {
+			Node n = array[i];
+			out.writeUTF(n.id);
+			out.writeInt(n.level);
+			IndexFiles.writeVector(out, n.vector);
+			for (int l = 0; l <= n.level; l++) {
+				int links = 0;
+				synchronized (n) {
+					for (int j = 0; j < n.counts[l]; j++) {
+						if (n.links[l][j] < count) {
+							buffer[links++] = n.links[l][j];
+						}
+					}
+				}
+				out.writeInt(links);
+				for (int j = 0; j < links; j++) {
+					out.writeInt(buffer[j]);
+				}
+			}
+		}
+	}
+
+	public static HnswIndex load(Path path) throws IOException {
+		AnnIndex index = AnnIndex.load(path);
+		if (!(index instanceof HnswIndex)) {
+			throw new IOException("not an HNSW index: " + path);
+		}
+		return (HnswIndex) index;
+	}
+
+	// MAGIC之后的部分
+	static HnswIndex read(DataInputStream in) throws IOException {
+		int version = in.readInt();
+		if (version != VERSION) {
+			throw new IOException("unsupported HNSW index version " + version);
+		}
+		Distance distance = Distance.values()[in.readInt()];
+		int dimension = in.readInt();
+		int m = in.readInt();
+		int efConstruction = in.readInt();
+		int ef = in.readInt();
+		int count = in.readInt();
+		int entryIndex = in.readInt();
+
+		HnswIndex index = new HnswIndex(dimension, distance, m, efConstruction, ef);
+		Node[] array = new Node[Math.max(16, count)];
+		for (int i = 0; i < count; i++) {
+			String id = in.readUTF();
+			if (index.indexes.put(id, i) != null) {
+				throw new IOException("corrupt HNSW index: duplicate id " + id);
+			}
+			int level = in.readInt();
+			Node n = new Node(i, id, IndexFiles.readVector(in, dimension), level, m, 2 * m);
+			for (int l = 0; l <= level; l++) {
+				int links = in.readInt();
+				if (links > n.links[l].length) {
+					throw new IOException("corrupt HNSW index: too many links");
+				}
+				for (int j = 0; j < links; j++) {
+					n.links[l][j] = in.readInt();
+				}
+				n.counts[l] = links;
+			}
+			array[i] = n;
+		}
+		index.nodes = array;
+		index.size = count;
+		index.entry = entryIndex < 0 ? null : array[entryIndex];
+		return index;
+	}
+}
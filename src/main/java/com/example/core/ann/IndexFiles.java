@@ -0,0 +1,54 @@
+package com.example.core.ann;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * 索引文件的读写：写入同目录的临时文件后原子替换，读取时不会看到写了一半的文件。
+ */
+final class IndexFiles {
+	interface Writer {
+		void write(DataOutputStream out) throws IOException;
+	}
+
+	private IndexFiles() {
+	}
+
+	static void save(Path path, Writer writer) throws IOException {
+		Path dir = path.toAbsolutePath().getParent();
+		Path temp = Files.createTempFile(dir, path.getFileName().toString(), ".tmp");
+		try {
+			try (DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+				writer.write(out);
+			}
+			Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	static DataInputStream open(Path path) throws IOException {
+		return new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16));
+	}
+
+	static void writeVector(DataOutputStream out, float[] vector) throws IOException {
+		for (float x : vector) {
+			out.writeFloat(x);
+		}
+	}
+
+	static float[] readVector(DataInputStream in, int dimension) throws IOException {
+		float[] vector = new float[dimension];
+		for (int i = 0; i < dimension; i++) {
+			vector[i] = in.readFloat();
+		}
+		return vector;
+	}
+}
@@ -0,0 +1,321 @@
+package com.example.core.ann;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import com.example.deeplearning.kmeans.VectorKMeansCluster;
+
+/**
+ * IVF（inverted file）索引：k-means训练的粗量化中心把向量空间分成若干单元，
+ * 每个向量按最近的中心放入该单元的倒排表。查询先找最近的nprobe个中心，
+ * 只精确扫描这些倒排表，nprobe越大召回率越高、扫描量越大。
+ *
+ * 内存为向量本身加上每个中心一个向量，与数据分布无关。每个倒排表同一时刻只有一个
+ * 线程追加，查询与追加可并发：条目由volatile的size发布，扩容后的数组也经volatile写替换，
+ * 先读size再读数组的查询总能看到size以内的全部条目。
+ */
+public class IvfIndex implements AnnIndex {
+	static final int MAGIC = 0x49564649; // "IVFI"
+	private static final int VERSION = 1;
+
+	public static final int DEFAULT_NPROBE = 8;
+	private static final int TRAIN_ITERATIONS = 25;
+	private static final long TRAIN_SEED = 42;
+
+	private final int dimension;
+	private final Distance distance;
+	private final float[][] centroids; // 已经过Distance.prepare
+	private final PostingList[] lists;
+	private final Set<String> ids = ConcurrentHashMap.newKeySet();
+	private final AtomicInteger size = new AtomicInteger();
+	private volatile int nprobe;
+
+	// 一个中心的倒排表：ids与按行存放的向量，读取时先读size
+	private static final class PostingList {
+		private volatile String[] ids = new String[4];
+		private volatile float[] vectors;
+		private volatile int size;
+
+		PostingList(int dimension) {
+			vectors = new float[4 * dimension];
+		}
+
+		synchronized void add(String id, float[] vector) {
+			int n = size;
+			int dimension = vector.length;
+			String[] ids = this.ids;
+			float[] vectors = this.vectors;
+			if (n == ids.length) {
+				ids = Arrays.copyOf(ids, n * 2);
+				vectors = Arrays.copyOf(vectors, n * 2 * dimension);
+				this.ids = ids;
+				this.vectors = vectors;
+			}
+			ids[n] = id;
+			System.arraycopy(vector, 0, vectors, n * dimension, dimension);
+			size = n + 1;
+		}
+	}
+
+	public IvfIndex(int dimension, Distance distance, float[][] centroids, int nprobe) {
+		if (centroids.length == 0) {
+			throw new IllegalArgumentException("at least one centroid is required");
+		}
+		this.dimension = dimension;
+		this.distance = distance;
+		this.centroids = new float[centroids.length][];
+		this.lists = new PostingList[centroids.length];
+		for (int i = 0; i < centroids.length; i++) {
+			if (centroids[i].length != dimension) {
+				throw new IllegalArgumentException("centroid dimension " + centroids[i].length + " != " + dimension);
+			}
+			this.centroids[i] = distance.prepare(centroids[i]);
+			this.lists[i] = new PostingList(dimension);
+		}
+		setNprobe(nprobe);
+	}
+
+	/**
+	 * 用k-means在样本上训练lists个中心，返回空的索引；余弦距离时为球面k-means。
+	 * 样本通常是待入库向量本身或其随机子集。
+	 */
+	public static IvfIndex train(int dimension, Distance distance, List<float[]> sample, int lists, int nprobe) {
+		VectorKMeansCluster.Metric metric = distance == Distance.COSINE
+				? VectorKMeansCluster.Metric.COSINE : VectorKMeansCluster.Metric.EUCLIDEAN;
+		VectorKMeansCluster cluster = new VectorKMeansCluster(lists, TRAIN_ITERATIONS, sample, metric, TRAIN_SEED);
+		cluster.runKmeans();
+		return new IvfIndex(dimension, distance, cluster.centers, nprobe);
+	}
+
+	public int getDimension() {
+		return dimension;
+	}
+
+	public int getLists() {
+		return lists.length;
+	}
+
+	public int getNprobe() {
+		return nprobe;
+	}
+
+	// 查询时扫描的倒排表数量
+	public void setNprobe(int nprobe) {
+		this.nprobe = Math.max(1, Math.min(nprobe, lists.length));
+	}
+
+	@Override
+	public Distance getDistance() {
+		return distance;
+	}
+
+	@Override
+	public int size() {
+		return size.get();
+	}
+
+	@Override
+	public void add(String id, float[] vector) {
+		if (vector.length != dimension) {
+			throw new IllegalArgumentException("vector dimension " + vector.length + " != " + dimension);
+		}
+		if (!ids.add(id)) {
+			throw new IllegalArgumentException("id " + id + " is already in the index");
+		}
+		float[] v = distance.prepare(vector);
+		int nearest = 0;
+		float best = Float.MAX_VALUE;
+		for (int c = 0; c < centroids.length; c++) {
+			float d = distance.compare(v, centroids[c]);
+			if (d < best) {
+				best = d;
+				nearest = c;
+			}
+		}
+		lists[nearest].add(id, v);
+		size.incrementAndGet();
+	}
+
+	@Override
+	public List<Neighbor> search(float[] query, int k) {
+		return search(query, k, nprobe);
+	}
+
+	public List<Neighbor> search(float[] query, int k, int nprobe) {
+		if (query.length != dimension) {
+			throw new IllegalArgumentException("vector dimension " + query.length + " != " + dimension);
+		}
+		List<Neighbor> result = new ArrayList<Neighbor>();
+		if (k <= 0) {
+			return result;
+		}
+		float[] q = distance.prepare(query);
+
+		// 最近的nprobe个中心
+		int probes = Math.max(1, Math.min(nprobe, centroids.length));
+		LongHeap nearest = new LongHeap(probes + 1); // 取反的最大堆
+		for (int c = 0; c < centroids.length; c++) {
+			nearest.add(-LongHeap.key(distance.compare(q, centroids[c]), c));
+			if (nearest.size() > probes) {
+				nearest.poll();
+			}
+		}
+
+		TopK top = new TopK(k);
+		while (!nearest.isEmpty()) {
+			PostingList list = lists[LongHeap.index(-nearest.poll())];
+			int n = list.size;
+			String[] ids = list.ids;
+			float[] vectors = list.vectors;
+			for (int i = 0, row = 0; i < n; i++, row += dimension) {
+				top.offer(compare(q, vectors, row), ids[i]);
+			}
+		}
+		return top.toNeighbors(distance);
+	}
+
+	// 一批查询并行执行，结果与queries一一对应
+	public List<List<Neighbor>> search(List<float[]> queries, int k) {
+		return queries.parallelStream().map(query -> search(query, k)).collect(Collectors.toList());
+	}
+
+	// q与vectors中从offset开始的一行的比较值，同Distance.compare
+	private float compare(float[] q, float[] vectors, int offset) {
+		float sum = 0;
+		if (distance == Distance.COSINE) {
+			for (int j = 0; j < dimension; j++) {
+				sum += q[j] * vectors[offset + j];
+			}
+			return Math.max(0f, 1 - sum);
+		}
+		for (int j = 0; j < dimension; j++) {
+			float d = q[j] - vectors[offset + j];
+			sum += d * d;
+		}
+		return sum;
+	}
+
+	// 距离最小的k个id，替换时线性查找最差的一个（k通常很小）
+	private static final class TopK {
+		private final float[] distances;
+		private final String[] ids;
+		private int size;
+		private int worst;
+
+		TopK(int k) {
+			distances = new float[k];
+			ids = new String[k];
+		}
+
+		void offer(float d, String id) {
+			if (size < distances.length) {
+				distances[size] = d;
+				ids[size] = id;
+				if (d > distances[worst] || size == 0) {
+					worst = size;
+				}
+				size++;
+			} else if (d < distances[worst]) {
+				distances[worst] = d;
+				ids[worst] = id;
+				for (int i = 0; i < size; i++) {
+					if (distances[i] > distances[worst]) {
+						worst = i;
+					}
+				}
+			}
+		}
+
+		List<Neighbor> toNeighbors(Distance distance) {
+			Integer[] order = new Integer[size];
+			for (int i = 0; i < size; i++) {
+				order[i] = i;
+			}
+			Arrays.sort(order, (a, b) -> Float.compare(distances[a], distances[b]));
+			List<Neighbor> result = new ArrayList<Neighbor>(size);
+			for (int i : order) {
+				result.add(new Neighbor(ids[i], distance.report(distances[i])));
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * 文件格式：MAGIC、版本、距离、维度、中心数、nprobe、各中心向量，
+	 * 之后为每个倒排表的条目数与各条目的id、向量。
+	 */
+	@Override
+	public void save(Path path) throws IOException {
+		IndexFiles.save(path, this::write);
+	}
+
+	private void write(DataOutputStream out) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(distance.ordinal());
+		out.writeInt(dimension);
+		out.writeInt(centroids.length);
+		out.writeInt(nprobe);
+		for (float[] centroid : centroids) {
+			IndexFiles.writeVector(out, centroid);
+		}
+		float[] vector = new float[dimension];
+		for (PostingList list : lists) {
+			int n = list.size;
+			String[] ids = list.ids;
+			float[] vectors = list.vectors;
+			out.writeInt(n);
+			for (int i = 0; i < n; i++) {
+				out.writeUTF(ids[i]);
+				System.arraycopy(vectors, i * dimension, vector, 0, dimension);
+				IndexFiles.writeVector(out, vector);
+			}
+		}
+	}
+
+	public static IvfIndex load(Path path) throws IOException {
+		AnnIndex index = AnnIndex.load(path);
+		if (!(index instanceof IvfIndex)) {
+			throw new IOException("not an IVF index: " + path);
+		}
+		return (IvfIndex) index;
+	}
+
+	// MAGIC之后的部分；向量已归一化，prepare不改变它们
+	static IvfIndex read(DataInputStream in) throws IOException {
+		int version = in.readInt();
+		if (version != VERSION) {
+			throw new IOException("unsupported IVF index version " + version);
+		}
+		Distance distance = Distance.values()[in.readInt()];
+		int dimension = in.readInt();
+		int count = in.readInt();
+		int nprobe = in.readInt();
+		float[][] centroids = new float[count][];
+		for (int c = 0; c < count; c++) {
+			centroids[c] = IndexFiles.readVector(in, dimension);
+		}
+		IvfIndex index = new IvfIndex(dimension, distance, centroids, nprobe);
+		for (int c = 0; c < count; c++) {
+			int n = in.readInt();
+			for (int i = 0; i < n; i++) {
+				String id = in.readUTF();
+				if (!index.ids.add(id)) {
+					throw new IOException("corrupt IVF index: duplicate id " + id);
+				}
+				index.lists[c].add(id, IndexFiles.readVector(in, dimension));
+			}
+			index.size.addAndGet(n);
+		}
+		return index;
+	}
+}
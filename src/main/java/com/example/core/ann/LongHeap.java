@@ -0,0 +1,82 @@
+package com.example.core.ann;
+
+import java.util.Arrays;
+
+/**
+ * long的最小堆。索引把非负float距离的位模式放在高32位、节点编号放在低32位，
+ * 这样一个long即可按距离排序；取反后入堆即为最大堆。
+ */
+final class LongHeap {
+	private long[] heap;
+	private int size;
+
+	LongHeap(int capacity) {
+		heap = new long[Math.max(4, capacity)];
+	}
+
+	static long key(float distance, int index) {
+		return ((long) Float.floatToRawIntBits(distance) << 32) | (index & 0xffffffffL);
+	}
+
+	static float distance(long key) {
+		return Float.intBitsToFloat((int) (key >>> 32));
+	}
+
+	static int index(long key) {
+		return (int) key;
+	}
+
+	int size() {
+		return size;
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	void clear() {
+		size = 0;
+	}
+
+	long peek() {
+		return heap[0];
+	}
+
+	void add(long value) {
+		if (size == heap.length) {
+			heap = Arrays.copyOf(heap, size * 2);
+		}
+		int i = size++;
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (heap[parent] <= value) {
+				break;
+			}
+			heap[i] = heap[parent];
+			i = parent;
+		}
+		heap[i] = value;
+	}
+
+	long poll() {
+		long top = heap[0];
+		long last = heap[--size];
+		int i = 0;
+		int half = size >>> 1;
+		while (i < half) {
+			int child = 2 * i + 1;
+			if (child + 1 < size && heap[child + 1] < heap[child]) {
+				child++;
+			}
+			if (last <= heap[child]) {
+				break;
+			}
+			heap[i] = heap[child];
+			i = child;
+		}
+		if (size > 0) {
+			heap[i] = last;
+		}
+		return top;
+	}
+}
@@ -0,0 +1,176 @@
+package com.example.core.ann;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.example.core.LSH;
+import com.example.core.SimHashFamily;
+
+/**
+ * 以{@link AnnIndex}接口使用的SimHash LSH：多探针查询得到候选，再按余弦距离精确排序取前K个。
+ * 向量归一化后保存在索引中，用于排序与持久化。
+ */
+public class LshIndex implements AnnIndex {
+	static final int MAGIC = 0x4c534849; // "LSHI"
+	private static final int VERSION = 1;
+
+	private final SimHashFamily family;
+	private final int probes;
+	private final LSH<float[]> lsh;
+	private final HashMap<String, Integer> indexes = new HashMap<String, Integer>();
+	private final ArrayList<String> ids = new ArrayList<String>();
+	private final ArrayList<float[]> vectors = new ArrayList<float[]>();
+	// LSH的桶不支持并发修改：查询共享读锁，插入独占写锁
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	// 每个查询线程重复使用的探针缓冲区
+	private final ThreadLocal<LSH.Scratch> scratch;
+
+	// probes为多探针查询在所有表中额外访问的桶数
+	public LshIndex(SimHashFamily family, int probes) {
+		this.family = family;
+		this.probes = probes;
+		this.lsh = new LSH<float[]>(family);
+		this.scratch = ThreadLocal.withInitial(lsh::newScratch);
+	}
+
+	public SimHashFamily getFamily() {
+		return family;
+	}
+
+	public int getProbes() {
+		return probes;
+	}
+
+	@Override
+	public Distance getDistance() {
+		return Distance.COSINE;
+	}
+
+	@Override
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return ids.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public void add(String id, float[] vector) {
+		if (vector.length != family.getDimention()) {
+			throw new IllegalArgumentException("vector dimension " + vector.length + " != " + family.getDimention());
+		}
+		float[] v = Distance.COSINE.prepare(vector);
+		lock.writeLock().lock();
+		try {
+			if (indexes.containsKey(id)) {
+				throw new IllegalArgumentException("id " + id + " is already in the index");
+			}
+			indexes.put(id, ids.size());
+			ids.add(id);
+			vectors.add(v);
+			lsh.generateHashMap(id, v);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public List<Neighbor> search(float[] query, int k) {
+		List<Neighbor> result = new ArrayList<Neighbor>();
+		if (k <= 0) {
+			return result;
+		}
+		float[] q = Distance.COSINE.prepare(query);
+		LongHeap top = new LongHeap(k + 1); // 取反的最大堆
+		lock.readLock().lock();
+		try {
+			lsh.query(q, probes, scratch.get(), id -> {
+				int index = indexes.get(id);
+				long key = LongHeap.key(Distance.COSINE.compare(q, vectors.get(index)), index);
+				top.add(-key);
+				if (top.size() > k) {
+					top.poll();
+				}
+			});
+			long[] found = new long[top.size()];
+			for (int i = found.length - 1; i >= 0; i--) {
+				found[i] = -top.poll();
+			}
+			for (long key : found) {
+				result.add(new Neighbor(ids.get(LongHeap.index(key)), LongHeap.distance(key)));
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		return result;
+	}
+
+	/**
+	 * 文件格式：MAGIC、版本、维度、表数、位数、超平面seed、探针数、向量数，
+	 * 之后为每个id及其归一化的向量；读取时由seed重建超平面并重新分桶。
+	 */
+	@Override
+	public void save(Path path) throws IOException {
+		IndexFiles.save(path, this::write);
+	}
+
+	private void write(DataOutputStream out) throws IOException {
+		lock.readLock().lock();
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(family.getDimention());
+			out.writeInt(family.getHashCount());
+			out.writeInt(family.getBitCount());
+			out.writeLong(family.getSeed());
+			out.writeInt(probes);
+			out.writeInt(ids.size());
+			for (int i = 0; i < ids.size(); i++) {
+				out.writeUTF(ids.get(i));
+				IndexFiles.writeVector(out, vectors.get(i));
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public static LshIndex load(Path path) throws IOException {
+		AnnIndex index = AnnIndex.load(path);
+		if (!(index instanceof LshIndex)) {
+			throw new IOException("not an LSH index: " + path);
+		}
+		return (LshIndex) index;
+	}
+
+	// MAGIC之后的部分
+	static LshIndex read(DataInputStream in) throws IOException {
+		int version = in.readInt();
+		if (version != VERSION) {
+			throw new IOException("unsupported LSH index version " + version);
+		}
+		int dimention = in.readInt();
+		int hashCount = in.readInt();
+		int bitCount = in.readInt();
+		long seed = in.readLong();
+		int probes = in.readInt();
+		int count = in.readInt();
+		LshIndex index = new LshIndex(new SimHashFamily(dimention, hashCount, bitCount, seed), probes);
+		for (int i = 0; i < count; i++) {
+			String id = in.readUTF();
+			if (index.indexes.containsKey(id)) {
+				throw new IOException("corrupt LSH index: duplicate id " + id);
+			}
+			index.add(id, IndexFiles.readVector(in, dimention));
+		}
+		return index;
+	}
+}
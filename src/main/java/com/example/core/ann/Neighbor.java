@@ -0,0 +1,27 @@
+package com.example.core.ann;
+
+/**
+ * ANN查询的一个结果：id与其到查询向量的距离（含义见{@link Distance}）。
+ */
+public final class Neighbor {
+	private final String id;
+	private final double distance;
+
+	public Neighbor(String id, double distance) {
+		this.id = id;
+		this.distance = distance;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public double getDistance() {
+		return distance;
+	}
+
+	@Override
+	public String toString() {
+		return id + ":" + distance;
+	}
+}
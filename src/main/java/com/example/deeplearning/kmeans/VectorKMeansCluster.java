@@ -0,0 +1,292 @@
+package com.example.deeplearning.kmeans;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/*
+ * n维float向量的k-means聚类，与KMeansCluster的流程相同（初始化中心、分配、调整中心），
+ * 距离可选欧式距离或余弦距离。
+ * 余弦距离时为球面k-means：点与中心都归一化为单位向量，最近即点积最大。
+ * 初始中心按kmeans++选取：每个新中心以到已有中心最近距离的平方为概率抽取。
+ */
+public class VectorKMeansCluster
+{
+    public enum Metric
+    {
+        EUCLIDEAN, COSINE
+    }
+
+    // 聚类中心数
+    public int k;
+
+    // 迭代最大次数
+    public int maxIter;
+
+    // 维度
+    public int dimension;
+
+    // 距离
+    public Metric metric;
+
+    // 点集，余弦距离时为归一化后的副本
+    public float[][] points;
+
+    // 中心点
+    public float[][] centers;
+
+    // 每个点所属簇，从0开始
+    public int[] clusterIDs;
+
+    private final Random random;
+
+    public VectorKMeansCluster(int k, int maxIter, List<float[]> points, Metric metric, long seed)
+    {
+        if (points.isEmpty())
+        {
+            throw new IllegalArgumentException("no points to cluster");
+        }
+        this.k = Math.min(k, points.size());
+        this.maxIter = maxIter;
+        this.metric = metric;
+        this.dimension = points.get(0).length;
+        this.points = new float[points.size()][];
+        for (int i = 0; i < this.points.length; i++)
+        {
+            float[] point = points.get(i);
+            if (point.length != dimension)
+            {
+                throw new IllegalArgumentException("point " + i + " has dimension " + point.length);
+            }
+            this.points[i] = metric == Metric.COSINE ? normalize(point.clone()) : point;
+        }
+        this.clusterIDs = new int[this.points.length];
+        this.random = new Random(seed);
+
+        //初始化中心点
+        initCenters();
+    }
+
+    /*
+     * 初始化聚类中心，kmeans++
+     */
+    public void initCenters()
+    {
+        centers = new float[k][];
+        centers[0] = points[random.nextInt(points.length)].clone();
+        double[] minDis = new double[points.length];
+        Arrays.fill(minDis, Double.MAX_VALUE);
+        for (int c = 1; c < k; c++)
+        {
+            float[] last = centers[c - 1];
+            double sum = 0;
+            for (int i = 0; i < points.length; i++)
+            {
+                double dis = distance(points[i], last);
+                minDis[i] = Math.min(minDis[i], dis * dis);
+                sum += minDis[i];
+            }
+            int chosen = 0;
+            if (sum > 0)
+            {
+                double r = random.nextDouble() * sum;
+                while (chosen < points.length - 1 && (r -= minDis[chosen]) > 0)
+                {
+                    chosen++;
+                }
+            }
+            else
+            {
+                chosen = random.nextInt(points.length);
+            }
+            centers[c] = points[chosen].clone();
+        }
+        Arrays.fill(clusterIDs, -1);
+    }
+
+    /*
+     * 停止条件是满足迭代次数或者没有点改变所属簇，返回迭代次数
+     */
+    public int runKmeans()
+    {
+        int count = 0;
+        while (count < maxIter)
+        {
+            count++;
+            // 遍历每个点，确定其所属簇
+            boolean changed = IntStream.range(0, points.length).parallel()
+                    .map(i -> assignPointToCluster(i) ? 1 : 0).sum() > 0;
+            if (!changed)
+            {
+                break;
+            }
+
+            //调整中心点
+            adjustCenters();
+        }
+        return count;
+    }
+
+    /*
+     * 调整聚类中心为簇内各点的均值，余弦距离时再归一化；
+     * 所有均值算完后，空簇改用离所属新中心最远的点，并从原簇中扣除该点
+     */
+    public void adjustCenters()
+    {
+        double[][] sum = new double[k][dimension];
+        int[] count = new int[k];
+        for (int i = 0; i < points.length; i++)
+        {
+            int clusterID = clusterIDs[i];
+            float[] point = points[i];
+            for (int j = 0; j < dimension; j++)
+            {
+                sum[clusterID][j] += point[j];
+            }
+            count[clusterID]++;
+        }
+
+        for (int c = 0; c < k; c++)
+        {
+            if (count[c] > 0)
+            {
+                setMean(c, sum[c], count[c]);
+            }
+        }
+
+        for (int c = 0; c < k; c++)
+        {
+            if (count[c] > 0)
+            {
+                continue;
+            }
+            int farthest = farthestPoint(count);
+            if (farthest < 0)
+            {
+                break;
+            }
+            int donor = clusterIDs[farthest];
+            float[] point = points[farthest];
+            for (int j = 0; j < dimension; j++)
+            {
+                sum[donor][j] -= point[j];
+                sum[c][j] = point[j];
+            }
+            count[donor]--;
+            count[c] = 1;
+            clusterIDs[farthest] = c;
+            setMean(donor, sum[donor], count[donor]);
+            centers[c] = point.clone();
+        }
+    }
+
+    private void setMean(int c, double[] sum, int count)
+    {
+        float[] center = centers[c];
+        for (int j = 0; j < dimension; j++)
+        {
+            center[j] = (float) (sum[j] / count);
+        }
+        if (metric == Metric.COSINE)
+        {
+            normalize(center);
+        }
+    }
+
+    /*
+     * 离所属中心最远、且所在簇不止一个点的点，没有时返回-1
+     */
+    private int farthestPoint(int[] count)
+    {
+        int farthest = -1;
+        double maxDis = -1;
+        for (int i = 0; i < points.length; i++)
+        {
+            if (count[clusterIDs[i]] < 2)
+            {
+                continue;
+            }
+            double dis = distance(points[i], centers[clusterIDs[i]]);
+            if (dis > maxDis)
+            {
+                maxDis = dis;
+                farthest = i;
+            }
+        }
+        return farthest;
+    }
+
+    /*
+     * 把第i个点划分到最近的簇中，所属簇改变时返回true
+     */
+    public boolean assignPointToCluster(int i)
+    {
+        int clusterID = nearestCenter(points[i]);
+        if (clusterID == clusterIDs[i])
+        {
+            return false;
+        }
+        clusterIDs[i] = clusterID;
+        return true;
+    }
+
+    /*
+     * 与向量最近的中心下标，余弦距离时vector需已归一化
+     */
+    public int nearestCenter(float[] vector)
+    {
+        double minDistance = Double.MAX_VALUE;
+        int clusterID = 0;
+        for (int c = 0; c < k; c++)
+        {
+            double dis = distance(vector, centers[c]);
+            if (dis < minDistance)
+            {
+                minDistance = dis;
+                clusterID = c;
+            }
+        }
+        return clusterID;
+    }
+
+    /*
+     * 欧式距离，或者单位向量间的余弦距离 1 - cos
+     */
+    public double distance(float[] a, float[] b)
+    {
+        double sum = 0;
+        if (metric == Metric.COSINE)
+        {
+            for (int j = 0; j < dimension; j++)
+            {
+                sum += a[j] * b[j];
+            }
+            return Math.max(0, 1 - sum);
+        }
+        for (int j = 0; j < dimension; j++)
+        {
+            double d = a[j] - b[j];
+            sum += d * d;
+        }
+        return Math.sqrt(sum);
+    }
+
+    public static float[] normalize(float[] vector)
+    {
+        double norm = 0;
+        for (float x : vector)
+        {
+            norm += x * x;
+        }
+        if (norm > 0)
+        {
+            float scale = (float) (1 / Math.sqrt(norm));
+            for (int j = 0; j < vector.length; j++)
+            {
+                vector[j] *= scale;
+            }
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,78 @@
+package com.github.wihoho;
+
+import com.github.wihoho.constant.FeatureType;
+import com.github.wihoho.jama.Matrix;
+import com.github.wihoho.training.FeatureExtraction;
+import com.github.wihoho.training.Gallery;
+import com.github.wihoho.training.ProjectedTrainingMatrix;
+import com.github.wihoho.training.QuantizedGallery;
+
+/**
+ * One published version of a {@link Trainer} model: the basis and mean it
+ * projects with and the gallery it matches against. A Trainer swaps whole
+ * versions atomically, so a recognize call reads one version and finishes
+ * on it even while a retrain publishes the next one.
+ *
+ * W and the mean are never modified after publication. The gallery is only
+ * ever appended to, by enrollments into the same basis, and readers see a
+ * consistent prefix of it.
+ */
+public final class TrainedModel {
+    private final long version;
+    private final FeatureType featureType;
+    private final FeatureExtraction featureExtraction;
+    private final Matrix W;
+    private final Matrix meanMatrix;
+    private final Gallery gallery;
+    // product-quantized gallery scanned instead of the templates, or null
+    private final QuantizedGallery quantizedGallery;
+    // for metrics without a float form, null otherwise
+    private final ProjectedTrainingMatrix[] trainingArray;
+
+    TrainedModel(long version, FeatureType featureType, FeatureExtraction featureExtraction, Gallery gallery,
+                 QuantizedGallery quantizedGallery, boolean keepTrainingArray) {
+        this.version = version;
+        this.featureType = featureType;
+        this.featureExtraction = featureExtraction;
+        this.W = featureExtraction.getW();
+        this.meanMatrix = featureExtraction.getMeanMatrix();
+        this.gallery = gallery;
+        this.quantizedGallery = quantizedGallery;
+        this.trainingArray = keepTrainingArray
+                ? featureExtraction.getProjectedTrainingSet().toArray(new ProjectedTrainingMatrix[0])
+                : null;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public FeatureType getFeatureType() {
+        return featureType;
+    }
+
+    // the extractor this version was built from; it may have moved on since
+    public FeatureExtraction getFeatureExtraction() {
+        return featureExtraction;
+    }
+
+    public Matrix getW() {
+        return W;
+    }
+
+    public Matrix getMeanMatrix() {
+        return meanMatrix;
+    }
+
+    public Gallery getGallery() {
+        return gallery;
+    }
+
+    public QuantizedGallery getQuantizedGallery() {
+        return quantizedGallery;
+    }
+
+    ProjectedTrainingMatrix[] getTrainingArray() {
+        return trainingArray;
+    }
+}
@@ -1,12 +1,20 @@
 package com.github.wihoho;
 
+import com.github.wihoho.constant.EigenSolverType;
 import com.github.wihoho.constant.FeatureType;
 import com.github.wihoho.jama.Matrix;
 import com.github.wihoho.training.*;
 import lombok.Builder;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 /**
  * 数据集的元素Matrix是一维的列向量
@@ -17,14 +25,19 @@ import java.util.Objects;
 public class Trainer {
     Metric metric;
     FeatureType featureType;
-    FeatureExtraction featureExtraction;
+    EigenSolverType eigenSolver; // PCA only, FULL when not set
     int numberOfComponents;
     int k; // k specifies the number of neighbour to consider
+    int parallelism; // gallery scan partitions, serial below 2
+    int minPartitionSize; // smallest partition worth a task, KNN default when 0
+    int pqSubspaces; // product-quantize the gallery scan to this many bytes per face, exact when 0
+    int pqRerank; // quantized candidates scored exactly, 10 * k when 0
 
     ArrayList<Matrix> trainingSet;
     ArrayList<String> trainingLabels;
 
-    ArrayList<ProjectedTrainingMatrix> model;
+    // the published model, replaced as a whole by train, load and enrollment
+    volatile TrainedModel trainedModel;
 
     public void add(Matrix matrix, String label) {
         if (Objects.isNull(trainingSet)) {
@@ -36,8 +49,32 @@ public class Trainer {
         trainingLabels.add(label);
     }
 
-    public void addFaceAfterTraining(Matrix matrix, String label) {
-        featureExtraction.addFace(matrix, label);
+    public synchronized void addFaceAfterTraining(Matrix matrix, String label) {
+        TrainedModel current = checkNotNull(trainedModel);
+        FeatureExtraction featureExtraction = current.getFeatureExtraction();
+        Gallery gallery = current.getGallery();
+
+        int index = featureExtraction.addFace(matrix, label);
+        ArrayList<ProjectedTrainingMatrix> projected = featureExtraction.getProjectedTrainingSet();
+        if (index != projected.size() - 1) {
+            throw new IllegalStateException(current.getFeatureType() + " cannot add faces after training, retrain instead");
+        }
+        QuantizedGallery quantized = current.getQuantizedGallery();
+        if (featureExtraction.getW() == current.getW() && index == gallery.size()) {
+            // same basis: the new face is encoded with the existing codebooks
+            gallery.add(projected.get(index));
+            if (quantized != null) {
+                quantized.add(gallery.getData(), index * gallery.getDimension());
+            }
+        } else {
+            // PCA rotates and re-signs the basis, so every template changes
+            // and codebooks trained on the old coordinates no longer fit
+            gallery = Gallery.of(projected);
+            if (quantized != null) {
+                quantized = quantize(gallery);
+            }
+        }
+        publish(current.getFeatureType(), featureExtraction, gallery, quantized);
     }
 
     public void train() throws Exception {
@@ -47,27 +84,175 @@ public class Trainer {
         checkNotNull(trainingSet);
         checkNotNull(trainingLabels);
 
-        switch (featureType) {
+        FeatureExtraction featureExtraction = extract(featureType, trainingSet, trainingLabels);
+        Gallery gallery = Gallery.of(featureExtraction.getProjectedTrainingSet());
+        publish(featureType, featureExtraction, gallery, quantize(gallery));
+    }
+
+    /**
+     * Trains on a copy of the current training set on the given executor and
+     * publishes the result as the next version. Recognition keeps using the
+     * current version until then and never waits on the retrain. Faces
+     * enrolled with addFaceAfterTraining in the meantime are not part of
+     * the new version.
+     */
+    public CompletableFuture<TrainedModel> trainAsync(Executor executor) {
+        checkNotNull(metric);
+        checkNotNull(featureType);
+        checkNotNull(trainingSet);
+        checkNotNull(trainingLabels);
+
+        FeatureType type = featureType;
+        ArrayList<Matrix> faces = new ArrayList<>(trainingSet);
+        ArrayList<String> labels = new ArrayList<>(trainingLabels);
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                FeatureExtraction featureExtraction = extract(type, faces, labels);
+                Gallery gallery = Gallery.of(featureExtraction.getProjectedTrainingSet());
+                return publish(type, featureExtraction, gallery, quantize(gallery));
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    private FeatureExtraction extract(FeatureType type, ArrayList<Matrix> faces, ArrayList<String> labels) throws Exception {
+        switch (type) {
             case PCA:
-                featureExtraction = new PCA(trainingSet, trainingLabels, numberOfComponents);
-                break;
+                return new PCA(faces, labels, numberOfComponents,
+                        eigenSolver == null ? EigenSolverType.FULL : eigenSolver);
             case LDA:
-                featureExtraction = new LDA(trainingSet, trainingLabels, numberOfComponents);
-                break;
+                return new LDA(faces, labels, numberOfComponents);
             case LPP:
-                featureExtraction = new LPP(trainingSet, trainingLabels, numberOfComponents);
-                break;
+                return new LPP(faces, labels, numberOfComponents);
+            default:
+                throw new IllegalArgumentException("unknown feature type " + type);
         }
+    }
+
+    // codebooks trained on gallery when pqSubspaces asks for them, null otherwise
+    private QuantizedGallery quantize(Gallery gallery) {
+        if (pqSubspaces > 0 && gallery.size() > 0
+                && metric instanceof FloatMetric && QuantizedGallery.supports((FloatMetric) metric)) {
+            return new QuantizedGallery(ProductQuantizer.train(gallery, pqSubspaces), gallery);
+        }
+        return null;
+    }
 
-        model = featureExtraction.getProjectedTrainingSet();
+    // quantized must cover gallery, or be null for an exact scan
+    private synchronized TrainedModel publish(FeatureType type, FeatureExtraction featureExtraction, Gallery gallery,
+                                              QuantizedGallery quantized) {
+        TrainedModel current = trainedModel;
+        TrainedModel next = new TrainedModel(current == null ? 1 : current.getVersion() + 1, type,
+                featureExtraction, gallery, quantized, !(metric instanceof FloatMetric));
+        trainedModel = next;
+        return next;
+    }
+
+    // the version recognize currently runs on, null before training
+    public TrainedModel getTrainedModel() {
+        return trainedModel;
+    }
+
+    /**
+     * Writes the trained basis, mean and gallery to a binary snapshot that
+     * {@link #load(Path)} restores without retraining.
+     */
+    public void save(Path path) throws IOException {
+        TrainedModel current = checkNotNull(trainedModel);
+        ModelSnapshot.write(path, current.getFeatureType(), current.getW(), current.getMeanMatrix(),
+                current.getGallery());
+    }
+
+    /**
+     * Replaces the model with one saved by {@link #save(Path)}. The metric
+     * and k are kept from this trainer. The restored basis is fixed:
+     * addFaceAfterTraining enrolls new faces without updating it.
+     */
+    public void load(Path path) throws IOException {
+        ModelSnapshot snapshot = ModelSnapshot.read(path);
+        QuantizedGallery quantized = quantize(snapshot.getGallery());
+        synchronized (this) {
+            featureType = snapshot.getFeatureType();
+            numberOfComponents = snapshot.getFeatureExtraction().getW().getColumnDimension();
+            publish(featureType, snapshot.getFeatureExtraction(), snapshot.getGallery(), quantized);
+        }
     }
 
     public String recognize(Matrix matrix) {
-        Matrix testCase = featureExtraction.getW().transpose().times(matrix.minus(featureExtraction.getMeanMatrix()));
-        String result = KNN.assignLabel(model.toArray(new ProjectedTrainingMatrix[0]), testCase, k, metric);
+        TrainedModel current = trainedModel;
+        Matrix testCase = current.getW().transposeTimes(matrix.minus(current.getMeanMatrix()));
+        if (metric instanceof FloatMetric) {
+            double[] values = testCase.getRowPackedArray();
+            float[] probe = new float[values.length];
+            for (int i = 0; i < values.length; i++) {
+                probe[i] = (float) values[i];
+            }
+            QuantizedGallery quantized = current.getQuantizedGallery();
+            if (quantized != null) {
+                return KNN.assignLabel(quantized, current.getGallery(), probe, k, (FloatMetric) metric, rerank());
+            }
+            return KNN.assignLabel(current.getGallery(), probe, k, (FloatMetric) metric, parallelism, minPartitionSize);
+        }
+        String result = KNN.assignLabel(current.getTrainingArray(), testCase, k, metric);
         return result;
     }
-    
+
+    /**
+     * Recognizes a batch of faces at once. All probes are centred into one
+     * matrix and projected with a single product, then scored against the
+     * gallery together, which is much cheaper than calling recognize per face.
+     * Each label is the one recognize returns, on the quantized gallery when
+     * there is one. The batch is split across probes on the common pool
+     * rather than by parallelism gallery partitions.
+     */
+    public List<String> recognizeBatch(List<Matrix> matrices) {
+        TrainedModel current = trainedModel;
+        Matrix W = current.getW();
+        double[] mean = current.getMeanMatrix().getRowPackedArray();
+        int count = matrices.size();
+        int d = W.getRowDimension();
+        int dimension = W.getColumnDimension();
+
+        // centred probes as the columns of a d by count matrix
+        Matrix P = new Matrix(d, count);
+        double[] p = P.getRowPackedArray();
+        for (int j = 0; j < count; j++) {
+            double[] x = matrices.get(j).getRowPackedArray();
+            for (int i = 0; i < d; i++) {
+                p[i * count + j] = x[i] - mean[i];
+            }
+        }
+        // P' * W holds one projected probe per row
+        double[] projected = P.transposeTimes(W).getRowPackedArray();
+
+        if (metric instanceof FloatMetric) {
+            float[] probes = new float[projected.length];
+            for (int i = 0; i < projected.length; i++) {
+                probes[i] = (float) projected[i];
+            }
+            QuantizedGallery quantized = current.getQuantizedGallery();
+            if (quantized != null) {
+                return Arrays.asList(KNN.assignLabels(quantized, current.getGallery(), probes, count, k,
+                        (FloatMetric) metric, rerank()));
+            }
+            return Arrays.asList(KNN.assignLabels(current.getGallery(), probes, count, k, (FloatMetric) metric));
+        }
+
+        ProjectedTrainingMatrix[] trainingSet = current.getTrainingArray();
+        List<String> result = new ArrayList<>(count);
+        for (int j = 0; j < count; j++) {
+            Matrix testCase = new Matrix(Arrays.copyOfRange(projected, j * dimension, (j + 1) * dimension), dimension, 1);
+            result.add(KNN.assignLabel(trainingSet, testCase, k, metric));
+        }
+        return result;
+    }
+
+    // quantized candidates scored exactly per probe
+    private int rerank() {
+        return pqRerank > 0 ? pqRerank : 10 * k;
+    }
+
     /**
      * Ensures that an object reference passed as a parameter to the calling method is not null.
      *
@@ -0,0 +1,12 @@
+package com.github.wihoho.constant;
+
+/**
+ * How PCA extracts its eigenfaces.
+ * FULL decomposes the whole n by n X'X, RANDOMIZED only computes the
+ * top components with a randomized range finder, so its cost follows
+ * the number of components instead of the number of training images.
+ */
+public enum EigenSolverType {
+    FULL,
+    RANDOMIZED;
+}
@@ -0,0 +1,254 @@
+package com.github.wihoho.jama;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+   Cache-blocked matrix multiplication kernels over row packed arrays.
+<P>
+   The product is split into blocks of output rows which run as
+   fork/join tasks on the common pool.  Inside a task the inner dimension
+   and the output columns are tiled so the working set of B stays in
+   cache, and four output rows are updated per pass so every element of
+   B that is loaded is used four times.  Small products run on the
+   calling thread.
+*/
+
+final class BlockedMultiply {
+
+   /** Multiply-adds below which a product is not worth forking. */
+   private static final long PARALLEL_THRESHOLD = 1L << 18;
+
+   /** Tile sizes, in elements, for the inner dimension and output columns. */
+   private static final int K_BLOCK = 128;
+   private static final int J_BLOCK = 512;
+
+   /** Rows of B visited per tile in the A*B' kernel. */
+   private static final int ROW_TILE = 16;
+
+   private static final int TIMES = 0;
+   private static final int TRANSPOSE_TIMES = 1;
+   private static final int TIMES_TRANSPOSE = 2;
+
+   private BlockedMultiply () {
+   }
+
+   /** C = A * B with A m-by-n, B n-by-p and C m-by-p, C zero on entry. */
+
+   static void times (double[] A, double[] B, double[] C, int m, int n, int p) {
+      run(new Task(TIMES, A, B, C, m, n, p, false, 0, m, grain(m, (long) n*p)));
+   }
+
+   /** C = C + A' * B with A m-by-n, B m-by-p and C n-by-p, so C is zero on
+       entry for the plain product.  When symmetric is set B is A, so only
+       the upper triangle is accumulated and then mirrored, and C must be
+       symmetric on entry. */
+
+   static void transposeTimes (double[] A, double[] B, double[] C, int m, int n, int p, boolean symmetric) {
+      run(new Task(TRANSPOSE_TIMES, A, B, C, m, n, p, symmetric, 0, n, grain(n, (long) m*p)));
+      if (symmetric) {
+         for (int j = 1; j < n; j++) {
+            for (int c = 0; c < j; c++) {
+               C[j*p+c] = C[c*p+j];
+            }
+         }
+      }
+   }
+
+   /** C = A * B' with A m-by-n, B p-by-n and C m-by-p, C zero on entry. */
+
+   static void timesTranspose (double[] A, double[] B, double[] C, int m, int n, int p) {
+      run(new Task(TIMES_TRANSPOSE, A, B, C, m, n, p, false, 0, m, grain(m, (long) n*p)));
+   }
+
+   private static void run (Task task) {
+      if (task.hi - task.lo <= task.grain) {
+         task.kernel(task.lo, task.hi);
+      } else {
+         ForkJoinPool.commonPool().invoke(task);
+      }
+   }
+
+   /** Number of output rows per task, a multiple of four. */
+
+   private static int grain (int rows, long workPerRow) {
+      if (rows * workPerRow < PARALLEL_THRESHOLD) {
+         return rows;
+      }
+      int tasks = 4 * ForkJoinPool.getCommonPoolParallelism();
+      int grain = Math.max(4, (rows + tasks - 1) / tasks);
+      long minRows = PARALLEL_THRESHOLD / Math.max(1, workPerRow);
+      grain = (int) Math.max(grain, Math.min(rows, minRows));
+      return (grain + 3) & ~3;
+   }
+
+   private static final class Task extends RecursiveAction {
+      private final int mode;
+      private final double[] A, B, C;
+      private final int m, n, p;
+      private final boolean symmetric;
+      private final int lo, hi, grain;
+
+      Task (int mode, double[] A, double[] B, double[] C, int m, int n, int p,
+            boolean symmetric, int lo, int hi, int grain) {
+         this.mode = mode;
+         this.A = A;
+         this.B = B;
+         this.C = C;
+         this.m = m;
+         this.n = n;
+         this.p = p;
+         this.symmetric = symmetric;
+         this.lo = lo;
+         this.hi = hi;
+         this.grain = grain;
+      }
+
+      @Override
+      protected void compute () {
+         if (hi - lo <= grain) {
+            kernel(lo, hi);
+            return;
+         }
+         int mid = lo + Math.max(4, ((hi - lo) >>> 1) & ~3);
+         invokeAll(new Task(mode, A, B, C, m, n, p, symmetric, lo, mid, grain),
+                   new Task(mode, A, B, C, m, n, p, symmetric, mid, hi, grain));
+      }
+
+      void kernel (int lo, int hi) {
+         switch (mode) {
+            case TIMES:
+               timesRows(lo, hi);
+               break;
+            case TRANSPOSE_TIMES:
+               transposeTimesRows(lo, hi);
+               break;
+            default:
+               timesTransposeRows(lo, hi);
+               break;
+         }
+      }
+
+      /** Rows lo..hi-1 of A * B. */
+
+      private void timesRows (int lo, int hi) {
+         for (int kk = 0; kk < n; kk += K_BLOCK) {
+            int kEnd = Math.min(kk + K_BLOCK, n);
+            for (int jj = 0; jj < p; jj += J_BLOCK) {
+               int jEnd = Math.min(jj + J_BLOCK, p);
+               int i = lo;
+               for (; i + 3 < hi; i += 4) {
+                  int c0 = i*p, c1 = c0+p, c2 = c1+p, c3 = c2+p;
+                  int r0 = i*n, r1 = r0+n, r2 = r1+n, r3 = r2+n;
+                  for (int k = kk; k < kEnd; k++) {
+                     double a0 = A[r0+k], a1 = A[r1+k], a2 = A[r2+k], a3 = A[r3+k];
+                     int b = k*p;
+                     for (int j = jj; j < jEnd; j++) {
+                        double bv = B[b+j];
+                        C[c0+j] += a0*bv;
+                        C[c1+j] += a1*bv;
+                        C[c2+j] += a2*bv;
+                        C[c3+j] += a3*bv;
+                     }
+                  }
+               }
+               for (; i < hi; i++) {
+                  int c0 = i*p;
+                  int r0 = i*n;
+                  for (int k = kk; k < kEnd; k++) {
+                     double a0 = A[r0+k];
+                     int b = k*p;
+                     for (int j = jj; j < jEnd; j++) {
+                        C[c0+j] += a0*B[b+j];
+                     }
+                  }
+               }
+            }
+         }
+      }
+
+      /** Rows lo..hi-1 of A' * B, i.e. columns lo..hi-1 of A against B. */
+
+      private void transposeTimesRows (int lo, int hi) {
+         for (int ii = 0; ii < m; ii += K_BLOCK) {
+            int iEnd = Math.min(ii + K_BLOCK, m);
+            for (int cc = 0; cc < p; cc += J_BLOCK) {
+               int cEnd = Math.min(cc + J_BLOCK, p);
+               int j = lo;
+               for (; j + 3 < hi; j += 4) {
+                  int start = symmetric ? Math.max(cc, j) : cc;
+                  if (start >= cEnd) {
+                     continue;
+                  }
+                  int c0 = j*p, c1 = c0+p, c2 = c1+p, c3 = c2+p;
+                  for (int i = ii; i < iEnd; i++) {
+                     int a = i*n+j;
+                     double a0 = A[a], a1 = A[a+1], a2 = A[a+2], a3 = A[a+3];
+                     int b = i*p;
+                     for (int c = start; c < cEnd; c++) {
+                        double bv = B[b+c];
+                        C[c0+c] += a0*bv;
+                        C[c1+c] += a1*bv;
+                        C[c2+c] += a2*bv;
+                        C[c3+c] += a3*bv;
+                     }
+                  }
+               }
+               for (; j < hi; j++) {
+                  int start = symmetric ? Math.max(cc, j) : cc;
+                  int c0 = j*p;
+                  for (int i = ii; i < iEnd; i++) {
+                     double a0 = A[i*n+j];
+                     int b = i*p;
+                     for (int c = start; c < cEnd; c++) {
+                        C[c0+c] += a0*B[b+c];
+                     }
+                  }
+               }
+            }
+         }
+      }
+
+      /** Rows lo..hi-1 of A * B', dot products of rows of A with rows of B. */
+
+      private void timesTransposeRows (int lo, int hi) {
+         int kBlock = 8 * K_BLOCK;
+         for (int kk = 0; kk < n; kk += kBlock) {
+            int kEnd = Math.min(kk + kBlock, n);
+            for (int jj = 0; jj < p; jj += ROW_TILE) {
+               int jEnd = Math.min(jj + ROW_TILE, p);
+               for (int i = lo; i < hi; i++) {
+                  int a = i*n;
+                  int ci = i*p;
+                  int j = jj;
+                  for (; j + 3 < jEnd; j += 4) {
+                     int b0 = j*n, b1 = b0+n, b2 = b1+n, b3 = b2+n;
+                     double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+                     for (int k = kk; k < kEnd; k++) {
+                        double av = A[a+k];
+                        s0 += av*B[b0+k];
+                        s1 += av*B[b1+k];
+                        s2 += av*B[b2+k];
+                        s3 += av*B[b3+k];
+                     }
+                     C[ci+j] += s0;
+                     C[ci+j+1] += s1;
+                     C[ci+j+2] += s2;
+                     C[ci+j+3] += s3;
+                  }
+                  for (; j < jEnd; j++) {
+                     int b0 = j*n;
+                     double s0 = 0;
+                     for (int k = kk; k < kEnd; k++) {
+                        s0 += A[a+k]*B[b0+k];
+                     }
+                     C[ci+j] += s0;
+                  }
+               }
+            }
+         }
+      }
+
+      private static final long serialVersionUID = 1;
+   }
+}
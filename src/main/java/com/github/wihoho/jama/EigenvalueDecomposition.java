@@ -937,8 +937,7 @@ public class EigenvalueDecomposition implements java.io.Serializable {
    */
 
    public Matrix getD () {
-      Matrix X = new Matrix(n,n);
-      double[][] D = X.getArray();
+      double[][] D = new double[n][n];
       for (int i = 0; i < n; i++) {
          for (int j = 0; j < n; j++) {
             D[i][j] = 0.0;
@@ -950,7 +949,7 @@ public class EigenvalueDecomposition implements java.io.Serializable {
             D[i][i-1] = e[i];
          }
       }
-      return X;
+      return new Matrix(D,n,n);
    }
    
    public double[] getd(){
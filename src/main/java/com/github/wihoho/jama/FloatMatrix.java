@@ -0,0 +1,258 @@
+package com.github.wihoho.jama;
+
+/**
+   Single precision counterpart of Matrix.
+<P>
+   Elements are stored as floats packed by rows, so a projected face
+   template or a basis W takes half the memory of the double version and
+   the inner loops process twice as many lanes per vector instruction.
+   Only the operations used on the recognition path are provided; train
+   in double precision with Matrix and convert the results with
+   FloatMatrix(Matrix).
+*/
+
+public class FloatMatrix implements java.io.Serializable {
+
+   /** Array for internal storage of elements, packed by rows.
+   @serial internal array storage.
+   */
+   private float[] A;
+
+   /** Row and column dimensions.
+   @serial row dimension.
+   @serial column dimension.
+   */
+   private int m, n;
+
+   /** Construct an m-by-n matrix of zeros.
+   @param m    Number of rows.
+   @param n    Number of colums.
+   */
+
+   public FloatMatrix (int m, int n) {
+      this.m = m;
+      this.n = n;
+      A = new float[m*n];
+   }
+
+   /** Construct a matrix around a one-dimensional row packed array.
+       The array is used as internal storage without copying.
+   @param vals One-dimensional array of floats, packed by rows.
+   @param m    Number of rows.
+   @param n    Number of colums.
+   @exception  IllegalArgumentException Array length must be m*n.
+   */
+
+   public FloatMatrix (float[] vals, int m, int n) {
+      if (vals.length != m*n) {
+         throw new IllegalArgumentException("Array length must be m*n.");
+      }
+      this.A = vals;
+      this.m = m;
+      this.n = n;
+   }
+
+   /** Construct a single precision copy of a double matrix.
+   @param X    Matrix to convert.
+   */
+
+   public FloatMatrix (Matrix X) {
+      this.m = X.getRowDimension();
+      this.n = X.getColumnDimension();
+      double[] src = X.getRowPackedArray();
+      A = new float[src.length];
+      for (int i = 0; i < src.length; i++) {
+         A[i] = (float) src[i];
+      }
+   }
+
+   /** Convert back to a double precision matrix.
+   @return     Matrix holding the same elements.
+   */
+
+   public Matrix toMatrix () {
+      double[] vals = new double[A.length];
+      for (int i = 0; i < A.length; i++) {
+         vals[i] = A[i];
+      }
+      return new Matrix(vals,m,n);
+   }
+
+   /** Make a deep copy of a matrix
+   */
+
+   public FloatMatrix copy () {
+      return new FloatMatrix(A.clone(),m,n);
+   }
+
+   /** Access the internal one-dimensional array.
+   @return     Pointer to the matrix elements packed by rows, A(i,j) at [i*n+j].
+   */
+
+   public float[] getRowPackedArray () {
+      return A;
+   }
+
+   /** Get row dimension.
+   @return     m, the number of rows.
+   */
+
+   public int getRowDimension () {
+      return m;
+   }
+
+   /** Get column dimension.
+   @return     n, the number of columns.
+   */
+
+   public int getColumnDimension () {
+      return n;
+   }
+
+   /** Get a single element.
+   @param i    Row index.
+   @param j    Column index.
+   @return     A(i,j)
+   @exception  ArrayIndexOutOfBoundsException
+   */
+
+   public float get (int i, int j) {
+      if (j < 0 || j >= n) {
+         throw new ArrayIndexOutOfBoundsException(j);
+      }
+      return A[i*n+j];
+   }
+
+   /** Set a single element.
+   @param i    Row index.
+   @param j    Column index.
+   @param s    A(i,j).
+   @exception  ArrayIndexOutOfBoundsException
+   */
+
+   public void set (int i, int j, float s) {
+      if (j < 0 || j >= n) {
+         throw new ArrayIndexOutOfBoundsException(j);
+      }
+      A[i*n+j] = s;
+   }
+
+   /** Matrix transpose.
+   @return    A'
+   */
+
+   public FloatMatrix transpose () {
+      FloatMatrix X = new FloatMatrix(n,m);
+      float[] C = X.A;
+      for (int i = 0; i < m; i++) {
+         for (int j = 0; j < n; j++) {
+            C[j*m+i] = A[i*n+j];
+         }
+      }
+      return X;
+   }
+
+   /** C = A - B
+   @param B    another matrix
+   @return     A - B
+   */
+
+   public FloatMatrix minus (FloatMatrix B) {
+      checkMatrixDimensions(B);
+      FloatMatrix X = new FloatMatrix(m,n);
+      float[] C = X.A;
+      for (int i = 0; i < A.length; i++) {
+         C[i] = A[i] - B.A[i];
+      }
+      return X;
+   }
+
+   /** Multiply a matrix by a scalar, C = s*A
+   @param s    scalar
+   @return     s*A
+   */
+
+   public FloatMatrix times (float s) {
+      FloatMatrix X = new FloatMatrix(m,n);
+      float[] C = X.A;
+      for (int i = 0; i < A.length; i++) {
+         C[i] = s*A[i];
+      }
+      return X;
+   }
+
+   /** Linear algebraic matrix multiplication, A * B
+   @param B    another matrix
+   @return     Matrix product, A * B
+   @exception  IllegalArgumentException Matrix inner dimensions must agree.
+   */
+
+   public FloatMatrix times (FloatMatrix B) {
+      if (B.m != n) {
+         throw new IllegalArgumentException("Matrix inner dimensions must agree.");
+      }
+      int p = B.n;
+      FloatMatrix X = new FloatMatrix(m,p);
+      float[] C = X.A;
+      for (int i = 0; i < m; i++) {
+         int ci = i*p;
+         for (int k = 0; k < n; k++) {
+            float a = A[i*n+k];
+            int bk = k*p;
+            for (int j = 0; j < p; j++) {
+               C[ci+j] += a*B.A[bk+j];
+            }
+         }
+      }
+      return X;
+   }
+
+   /** Linear algebraic matrix multiplication with this matrix transposed,
+       A' * B, without forming A'.  This is the projection W' * x.
+   @param B    another matrix with as many rows as A
+   @return     Matrix product, A' * B
+   @exception  IllegalArgumentException Matrix row dimensions must agree.
+   */
+
+   public FloatMatrix transposeTimes (FloatMatrix B) {
+      if (B.m != m) {
+         throw new IllegalArgumentException("Matrix row dimensions must agree.");
+      }
+      int p = B.n;
+      FloatMatrix X = new FloatMatrix(n,p);
+      float[] C = X.A;
+      if (p == 1) {
+         // column vector: stream each row of A into the whole result
+         for (int i = 0; i < m; i++) {
+            int ai = i*n;
+            float b = B.A[i];
+            for (int j = 0; j < n; j++) {
+               C[j] += A[ai+j]*b;
+            }
+         }
+         return X;
+      }
+      for (int i = 0; i < m; i++) {
+         int ai = i*n;
+         int bi = i*p;
+         for (int j = 0; j < n; j++) {
+            float a = A[ai+j];
+            int cj = j*p;
+            for (int c = 0; c < p; c++) {
+               C[cj+c] += a*B.A[bi+c];
+            }
+         }
+      }
+      return X;
+   }
+
+   /** Check if size(A) == size(B) **/
+
+   private void checkMatrixDimensions (FloatMatrix B) {
+      if (B.m != m || B.n != n) {
+         throw new IllegalArgumentException("Matrix dimensions must agree.");
+      }
+   }
+
+   private static final long serialVersionUID = 1;
+}
@@ -0,0 +1,160 @@
+package com.github.wihoho.jama;
+
+/** Generalized Symmetric-Definite Eigenvalue Decomposition.
+<P>
+   Solves A*v = lambda*B*v for a symmetric matrix A and a symmetric
+   positive definite matrix B without forming inv(B)*A.  With the
+   Cholesky factor B = L*L', the problem is equivalent to the standard
+   symmetric problem C*y = lambda*y with C = inv(L)*A*inv(L)', which is
+   solved by the symmetric tridiagonal path of EigenvalueDecomposition;
+   the eigenvectors are recovered as v = inv(L)'*y.
+<P>
+   The eigenvalues are real and returned in ascending order, as in the
+   symmetric EigenvalueDecomposition.  The eigenvectors are B-orthonormal,
+   V'*B*V = I.
+<P>
+   Both inputs are symmetrized as (X + X')/2 first, so products that are
+   symmetric only up to rounding are accepted.
+*/
+
+public class GeneralizedEigenvalueDecomposition implements java.io.Serializable {
+
+   /** Row and column dimension (square matrix).
+   @serial matrix dimension.
+   */
+   private int n;
+
+   /** Eigenvalues, ascending.
+   @serial eigenvalues.
+   */
+   private double[] d;
+
+   /** Eigenvectors, one per column, B-orthonormal.
+   @serial eigenvectors.
+   */
+   private Matrix V;
+
+   /** Decompose the pencil (A, B).
+   @param A    Square, symmetric matrix.
+   @param B    Square, symmetric positive definite matrix.
+   @exception  IllegalArgumentException Matrix dimensions must agree, or B is not positive definite.
+   */
+
+   public GeneralizedEigenvalueDecomposition (Matrix A, Matrix B) {
+      n = A.getRowDimension();
+      if (A.getColumnDimension() != n || B.getRowDimension() != n || B.getColumnDimension() != n) {
+         throw new IllegalArgumentException("Matrix dimensions must agree.");
+      }
+
+      CholeskyDecomposition chol = new CholeskyDecomposition(symmetrize(B));
+      if (!chol.isSPD()) {
+         throw new IllegalArgumentException("Matrix B is not symmetric positive definite.");
+      }
+      double[] L = chol.getL().getRowPackedArray();
+
+      // C = inv(L) * A * inv(L)' = inv(L) * (inv(L) * A)' for symmetric A
+      Matrix Y = symmetrize(A);
+      forwardSubstitute(L, Y.getRowPackedArray(), n);
+      Matrix C = Y.transpose();
+      forwardSubstitute(L, C.getRowPackedArray(), n);
+
+      EigenvalueDecomposition eig = new EigenvalueDecomposition(symmetrize(C));
+      d = eig.getRealEigenvalues().clone();
+      V = eig.getV();
+      backSubstitute(L, V.getRowPackedArray(), n);
+   }
+
+   private static Matrix symmetrize (Matrix X) {
+      int n = X.getRowDimension();
+      Matrix S = X.copy();
+      double[] s = S.getRowPackedArray();
+      for (int i = 0; i < n; i++) {
+         for (int j = i+1; j < n; j++) {
+            double v = 0.5*(s[i*n+j] + s[j*n+i]);
+            s[i*n+j] = v;
+            s[j*n+i] = v;
+         }
+      }
+      return S;
+   }
+
+   // Solve L*X = Y in place for lower triangular L, all n columns at once
+   private static void forwardSubstitute (double[] L, double[] y, int n) {
+      for (int i = 0; i < n; i++) {
+         int row = i*n;
+         for (int k = 0; k < i; k++) {
+            double lik = L[row+k];
+            if (lik == 0.0) {
+               continue;
+            }
+            int other = k*n;
+            for (int j = 0; j < n; j++) {
+               y[row+j] -= lik*y[other+j];
+            }
+         }
+         double lii = L[row+i];
+         for (int j = 0; j < n; j++) {
+            y[row+j] /= lii;
+         }
+      }
+   }
+
+   // Solve L'*X = Y in place for lower triangular L, all n columns at once
+   private static void backSubstitute (double[] L, double[] y, int n) {
+      for (int i = n-1; i >= 0; i--) {
+         int row = i*n;
+         for (int k = i+1; k < n; k++) {
+            double lki = L[k*n+i];
+            if (lki == 0.0) {
+               continue;
+            }
+            int other = k*n;
+            for (int j = 0; j < n; j++) {
+               y[row+j] -= lki*y[other+j];
+            }
+         }
+         double lii = L[row+i];
+         for (int j = 0; j < n; j++) {
+            y[row+j] /= lii;
+         }
+      }
+   }
+
+   /** Return the eigenvector matrix
+   @return     V, one B-orthonormal eigenvector per column
+   */
+
+   public Matrix getV () {
+      return V;
+   }
+
+   /** Return the eigenvalues
+   @return     eigenvalues, ascending
+   */
+
+   public double[] getRealEigenvalues () {
+      return d;
+   }
+
+   /** Return the eigenvalues, same array as getRealEigenvalues
+   @return     eigenvalues, ascending
+   */
+
+   public double[] getd () {
+      return d;
+   }
+
+   /** Return the diagonal eigenvalue matrix
+   @return     D
+   */
+
+   public Matrix getD () {
+      Matrix D = new Matrix(n, n);
+      for (int i = 0; i < n; i++) {
+         D.set(i, i, d[i]);
+      }
+      return D;
+   }
+
+   private static final long serialVersionUID = 1;
+}
@@ -192,8 +192,7 @@ public class LUDecomposition implements java.io.Serializable {
    */
 
    public Matrix getL () {
-      Matrix X = new Matrix(m,n);
-      double[][] L = X.getArray();
+      double[][] L = new double[m][n];
       for (int i = 0; i < m; i++) {
          for (int j = 0; j < n; j++) {
             if (i > j) {
@@ -205,7 +204,7 @@ public class LUDecomposition implements java.io.Serializable {
             }
          }
       }
-      return X;
+      return new Matrix(L,m,n);
    }
 
    /** Return upper triangular factor
@@ -213,8 +212,7 @@ public class LUDecomposition implements java.io.Serializable {
    */
 
    public Matrix getU () {
-      Matrix X = new Matrix(n,n);
-      double[][] U = X.getArray();
+      double[][] U = new double[n][n];
       for (int i = 0; i < n; i++) {
          for (int j = 0; j < n; j++) {
             if (i <= j) {
@@ -224,7 +222,7 @@ public class LUDecomposition implements java.io.Serializable {
             }
          }
       }
-      return X;
+      return new Matrix(U,n,n);
    }
 
    /** Return pivot permutation vector
@@ -284,8 +282,7 @@ public class LUDecomposition implements java.io.Serializable {
 
       // Copy right hand side with pivoting
       int nx = B.getColumnDimension();
-      Matrix Xmat = B.getMatrix(piv,0,nx-1);
-      double[][] X = Xmat.getArray();
+      double[][] X = B.getMatrix(piv,0,nx-1).getArrayCopy();
 
       // Solve L*Y = B(piv,:)
       for (int k = 0; k < n; k++) {
@@ -306,7 +303,7 @@ public class LUDecomposition implements java.io.Serializable {
             }
          }
       }
-      return Xmat;
+      return new Matrix(X,m,nx);
    }
   private static final long serialVersionUID = 1;
 }
@@ -59,10 +59,12 @@ public class Matrix implements Cloneable, java.io.Serializable {
    Class variables
  * ------------------------ */
 
-   /** Array for internal storage of elements.
+   /** Array for internal storage of elements, packed by rows.
+       Element (i,j) lives at A[i*n+j], so a column vector is a single
+       contiguous array instead of one small array per row.
    @serial internal array storage.
    */
-   private double[][] A;
+   private double[] A;
 
    /** Row and column dimensions.
    @serial row dimension.
@@ -82,7 +84,7 @@ public class Matrix implements Cloneable, java.io.Serializable {
    public Matrix (int m, int n) {
       this.m = m;
       this.n = n;
-      A = new double[m][n];
+      A = new double[m*n];
    }
 
    /** Construct an m-by-n constant matrix.
@@ -94,12 +96,8 @@ public class Matrix implements Cloneable, java.io.Serializable {
    public Matrix (int m, int n, double s) {
       this.m = m;
       this.n = n;
-      A = new double[m][n];
-      for (int i = 0; i < m; i++) {
-         for (int j = 0; j < n; j++) {
-            A[i][j] = s;
-         }
-      }
+      A = new double[m*n];
+      java.util.Arrays.fill(A, s);
    }
 
    /** Construct a matrix from a 2-D array.
@@ -111,22 +109,44 @@ public class Matrix implements Cloneable, java.io.Serializable {
    public Matrix (double[][] A) {
       m = A.length;
       n = A[0].length;
+      this.A = new double[m*n];
       for (int i = 0; i < m; i++) {
          if (A[i].length != n) {
             throw new IllegalArgumentException("All rows must have the same length.");
          }
+         System.arraycopy(A[i], 0, this.A, i*n, n);
       }
-      this.A = A;
    }
 
    /** Construct a matrix quickly without checking arguments.
+       The rows are copied into the packed internal storage.
    @param A    Two-dimensional array of doubles.
    @param m    Number of rows.
    @param n    Number of colums.
    */
 
    public Matrix (double[][] A, int m, int n) {
-      this.A = A;
+      this.m = m;
+      this.n = n;
+      this.A = new double[m*n];
+      for (int i = 0; i < m; i++) {
+         System.arraycopy(A[i], 0, this.A, i*n, n);
+      }
+   }
+
+   /** Construct a matrix around a one-dimensional row packed array.
+       The array is used as internal storage without copying.
+   @param vals One-dimensional array of doubles, packed by rows.
+   @param m    Number of rows.
+   @param n    Number of colums.
+   @exception  IllegalArgumentException Array length must be m*n.
+   */
+
+   public Matrix (double[] vals, int m, int n) {
+      if (vals.length != m*n) {
+         throw new IllegalArgumentException("Array length must be m*n.");
+      }
+      this.A = vals;
       this.m = m;
       this.n = n;
    }
@@ -143,10 +163,10 @@ public class Matrix implements Cloneable, java.io.Serializable {
       if (m*n != vals.length) {
          throw new IllegalArgumentException("Array length must be a multiple of m.");
       }
-      A = new double[m][n];
+      A = new double[m*n];
       for (int i = 0; i < m; i++) {
          for (int j = 0; j < n; j++) {
-            A[i][j] = vals[i+j*m];
+            A[i*n+j] = vals[i+j*m];
          }
       }
    }
@@ -164,15 +184,13 @@ public class Matrix implements Cloneable, java.io.Serializable {
       int m = A.length;
       int n = A[0].length;
       Matrix X = new Matrix(m,n);
-      double[][] C = X.getArray();
+      double[] C = X.A;
       for (int i = 0; i < m; i++) {
          if (A[i].length != n) {
             throw new IllegalArgumentException
                ("All rows must have the same length.");
          }
-         for (int j = 0; j < n; j++) {
-            C[i][j] = A[i][j];
-         }
+         System.arraycopy(A[i], 0, C, i*n, n);
       }
       return X;
    }
@@ -181,14 +199,7 @@ public class Matrix implements Cloneable, java.io.Serializable {
    */
 
    public Matrix copy () {
-      Matrix X = new Matrix(m,n);
-      double[][] C = X.getArray();
-      for (int i = 0; i < m; i++) {
-         for (int j = 0; j < n; j++) {
-            C[i][j] = A[i][j];
-         }
-      }
-      return X;
+      return new Matrix(A.clone(),m,n);
    }
 
    /** Clone the Matrix object.
@@ -198,37 +209,50 @@ public class Matrix implements Cloneable, java.io.Serializable {
       return this.copy();
    }
 
-   /** Access the internal two-dimensional array.
-   @return     Pointer to the two-dimensional array of matrix elements.
+   /** Two-dimensional view of the matrix elements, kept for code written
+       against the original row-array storage.  The elements are stored
+       packed by rows, so the returned rows are copies: writes to them are
+       not reflected in this matrix.  Use set, setMatrix or
+       getRowPackedArray to modify the matrix.
+   @return     Two-dimensional array of matrix elements.
    */
 
    public double[][] getArray () {
-      return A;
+      return getArrayCopy();
    }
 
-   /** Copy the internal two-dimensional array.
+   /** Copy the internal array into a two-dimensional array.
    @return     Two-dimensional array copy of matrix elements.
    */
 
    public double[][] getArrayCopy () {
       double[][] C = new double[m][n];
       for (int i = 0; i < m; i++) {
-         for (int j = 0; j < n; j++) {
-            C[i][j] = A[i][j];
-         }
+         System.arraycopy(A, i*n, C[i], 0, n);
       }
       return C;
    }
 
+   /** Access the internal one-dimensional array.
+   @return     Pointer to the matrix elements packed by rows, A(i,j) at [i*n+j].
+   */
+
+   public double[] getRowPackedArray () {
+      return A;
+   }
+
    /** Make a one-dimensional column packed copy of the internal array.
    @return     Matrix elements packed in a one-dimensional array by columns.
    */
 
    public double[] getColumnPackedCopy () {
+      if (n == 1) {
+         return A.clone();
+      }
       double[] vals = new double[m*n];
       for (int i = 0; i < m; i++) {
          for (int j = 0; j < n; j++) {
-            vals[i+j*m] = A[i][j];
+            vals[i+j*m] = A[i*n+j];
          }
       }
       return vals;
@@ -239,13 +263,7 @@ public class Matrix implements Cloneable, java.io.Serializable {
    */
 
    public double[] getRowPackedCopy () {
-      double[] vals = new double[m*n];
-      for (int i = 0; i < m; i++) {
-         for (int j = 0; j < n; j++) {
-            vals[i*n+j] = A[i][j];
-         }
-      }
-      return vals;
+      return A.clone();
    }
 
    /** Get row dimension.
@@ -272,7 +290,10 @@ public class Matrix implements Cloneable, java.io.Serializable {
    */
 
    public double get (int i, int j) {
-      return A[i][j];
+      if (j < 0 || j >= n) {
+         throw new ArrayIndexOutOfBoundsException(j);
+      }
+      return A[i*n+j];
    }
 
    /** Get a submatrix.
@@ -286,12 +307,11 @@ public class Matrix implements Cloneable, java.io.Serializable {
 
    public Matrix getMatrix (int i0, int i1, int j0, int j1) {
       Matrix X = new Matrix(i1-i0+1,j1-j0+1);
-      double[][] B = X.getArray();
+      double[] B = X.A;
       try {
+         checkColumnRange(j0,j1);
          for (int i = i0; i <= i1; i++) {
-            for (int j = j0; j <= j1; j++) {
-               B[i-i0][j-j0] = A[i][j];
-            }
+            System.arraycopy(A, i*n+j0, B, (i-i0)*X.n, X.n);
          }
       } catch(ArrayIndexOutOfBoundsException e) {
          throw new ArrayIndexOutOfBoundsException("Submatrix indices");
@@ -308,11 +328,13 @@ public class Matrix implements Cloneable, java.io.Serializable {
 
    public Matrix getMatrix (int[] r, int[] c) {
       Matrix X = new Matrix(r.length,c.length);
-      double[][] B = X.getArray();
+      double[] B = X.A;
       try {
+         checkColumns(c);
          for (int i = 0; i < r.length; i++) {
+            int row = r[i]*n;
             for (int j = 0; j < c.length; j++) {
-               B[i][j] = A[r[i]][c[j]];
+               B[i*c.length+j] = A[row+c[j]];
             }
          }
       } catch(ArrayIndexOutOfBoundsException e) {
@@ -331,11 +353,14 @@ public class Matrix implements Cloneable, java.io.Serializable {
 
    public Matrix getMatrix (int i0, int i1, int[] c) {
       Matrix X = new Matrix(i1-i0+1,c.length);
-      double[][] B = X.getArray();
+      double[] B = X.A;
       try {
+         checkColumns(c);
          for (int i = i0; i <= i1; i++) {
+            int row = i*n;
+            int dst = (i-i0)*c.length;
             for (int j = 0; j < c.length; j++) {
-               B[i-i0][j] = A[i][c[j]];
+               B[dst+j] = A[row+c[j]];
             }
          }
       } catch(ArrayIndexOutOfBoundsException e) {
@@ -354,12 +379,11 @@ public class Matrix implements Cloneable, java.io.Serializable {
 
    public Matrix getMatrix (int[] r, int j0, int j1) {
       Matrix X = new Matrix(r.length,j1-j0+1);
-      double[][] B = X.getArray();
+      double[] B = X.A;
       try {
+         checkColumnRange(j0,j1);
          for (int i = 0; i < r.length; i++) {
-            for (int j = j0; j <= j1; j++) {
-               B[i][j-j0] = A[r[i]][j];
-            }
+            System.arraycopy(A, r[i]*n+j0, B, i*X.n, X.n);
          }
       } catch(ArrayIndexOutOfBoundsException e) {
          throw new ArrayIndexOutOfBoundsException("Submatrix indices");
@@ -375,7 +399,10 @@ public class Matrix implements Cloneable, java.io.Serializable {
    */
 
    public void set (int i, int j, double s) {
-      A[i][j] = s;
+      if (j < 0 || j >= n) {
+         throw new ArrayIndexOutOfBoundsException(j);
+      }
+      A[i*n+j] = s;
    }
 
    /** Set a submatrix.
@@ -389,9 +416,10 @@ public class Matrix implements Cloneable, java.io.Serializable {
 
    public void setMatrix (int i0, int i1, int j0, int j1, Matrix X) {
       try {
+         checkColumnRange(j0,j1);
          for (int i = i0; i <= i1; i++) {
             for (int j = j0; j <= j1; j++) {
-               A[i][j] = X.get(i-i0,j-j0);
+               A[i*n+j] = X.get(i-i0,j-j0);
             }
          }
       } catch(ArrayIndexOutOfBoundsException e) {
@@ -408,9 +436,10 @@ public class Matrix implements Cloneable, java.io.Serializable {
 
    public void setMatrix (int[] r, int[] c, Matrix X) {
       try {
+         checkColumns(c);
          for (int i = 0; i < r.length; i++) {
             for (int j = 0; j < c.length; j++) {
-               A[r[i]][c[j]] = X.get(i,j);
+               A[r[i]*n+c[j]] = X.get(i,j);
             }
          }
       } catch(ArrayIndexOutOfBoundsException e) {
@@ -428,9 +457,10 @@ public class Matrix implements Cloneable, java.io.Serializable {
 
    public void setMatrix (int[] r, int j0, int j1, Matrix X) {
       try {
+         checkColumnRange(j0,j1);
          for (int i = 0; i < r.length; i++) {
             for (int j = j0; j <= j1; j++) {
-               A[r[i]][j] = X.get(i,j-j0);
+               A[r[i]*n+j] = X.get(i,j-j0);
             }
          }
       } catch(ArrayIndexOutOfBoundsException e) {
@@ -448,9 +478,10 @@ public class Matrix implements Cloneable, java.io.Serializable {
 
    public void setMatrix (int i0, int i1, int[] c, Matrix X) {
       try {
+         checkColumns(c);
          for (int i = i0; i <= i1; i++) {
             for (int j = 0; j < c.length; j++) {
-               A[i][c[j]] = X.get(i-i0,j);
+               A[i*n+c[j]] = X.get(i-i0,j);
             }
          }
       } catch(ArrayIndexOutOfBoundsException e) {
@@ -463,11 +494,14 @@ public class Matrix implements Cloneable, java.io.Serializable {
    */
 
    public Matrix transpose () {
+      if (m == 1 || n == 1) {
+         return new Matrix(A.clone(),n,m);
+      }
       Matrix X = new Matrix(n,m);
-      double[][] C = X.getArray();
+      double[] C = X.A;
       for (int i = 0; i < m; i++) {
          for (int j = 0; j < n; j++) {
-            C[j][i] = A[i][j];
+            C[j*m+i] = A[i*n+j];
          }
       }
       return X;
@@ -482,7 +516,7 @@ public class Matrix implements Cloneable, java.io.Serializable {
       for (int j = 0; j < n; j++) {
          double s = 0;
          for (int i = 0; i < m; i++) {
-            s += Math.abs(A[i][j]);
+            s += Math.abs(A[i*n+j]);
          }
          f = Math.max(f,s);
       }
@@ -506,7 +540,7 @@ public class Matrix implements Cloneable, java.io.Serializable {
       for (int i = 0; i < m; i++) {
          double s = 0;
          for (int j = 0; j < n; j++) {
-            s += Math.abs(A[i][j]);
+            s += Math.abs(A[i*n+j]);
          }
          f = Math.max(f,s);
       }
@@ -519,10 +553,8 @@ public class Matrix implements Cloneable, java.io.Serializable {
 
    public double normF () {
       double f = 0;
-      for (int i = 0; i < m; i++) {
-         for (int j = 0; j < n; j++) {
-            f = Math.hypot(f, A[i][j]);
-         }
+      for (int i = 0; i < A.length; i++) {
+         f = Math.hypot(f, A[i]);
       }
       return f;
    }
@@ -533,11 +565,9 @@ public class Matrix implements Cloneable, java.io.Serializable {
 
    public Matrix uminus () {
       Matrix X = new Matrix(m,n);
-      double[][] C = X.getArray();
-      for (int i = 0; i < m; i++) {
-         for (int j = 0; j < n; j++) {
-            C[i][j] = -A[i][j];
-         }
+      double[] C = X.A;
+      for (int i = 0; i < A.length; i++) {
+         C[i] = -A[i];
       }
       return X;
    }
@@ -550,11 +580,9 @@ public class Matrix implements Cloneable, java.io.Serializable {
    public Matrix plus (Matrix B) {
       checkMatrixDimensions(B);
       Matrix X = new Matrix(m,n);
-      double[][] C = X.getArray();
-      for (int i = 0; i < m; i++) {
-         for (int j = 0; j < n; j++) {
-            C[i][j] = A[i][j] + B.A[i][j];
-         }
+      double[] C = X.A;
+      for (int i = 0; i < A.length; i++) {
+         C[i] = A[i] + B.A[i];
       }
       return X;
    }
@@ -566,10 +594,8 @@ public class Matrix implements Cloneable, java.io.Serializable {
 
    public Matrix plusEquals (Matrix B) {
       checkMatrixDimensions(B);
-      for (int i = 0; i < m; i++) {
-         for (int j = 0; j < n; j++) {
-            A[i][j] = A[i][j] + B.A[i][j];
-         }
+      for (int i = 0; i < A.length; i++) {
+         A[i] = A[i] + B.A[i];
       }
       return this;
    }
@@ -582,11 +608,9 @@ public class Matrix implements Cloneable, java.io.Serializable {
    public Matrix minus (Matrix B) {
       checkMatrixDimensions(B);
       Matrix X = new Matrix(m,n);
-      double[][] C = X.getArray();
-      for (int i = 0; i < m; i++) {
-         for (int j = 0; j < n; j++) {
-            C[i][j] = A[i][j] - B.A[i][j];
-         }
+      double[] C = X.A;
+      for (int i = 0; i < A.length; i++) {
+         C[i] = A[i] - B.A[i];
       }
       return X;
    }
@@ -598,10 +622,8 @@ public class Matrix implements Cloneable, java.io.Serializable {
 
    public Matrix minusEquals (Matrix B) {
       checkMatrixDimensions(B);
-      for (int i = 0; i < m; i++) {
-         for (int j = 0; j < n; j++) {
-            A[i][j] = A[i][j] - B.A[i][j];
-         }
+      for (int i = 0; i < A.length; i++) {
+         A[i] = A[i] - B.A[i];
       }
       return this;
    }
@@ -614,11 +636,9 @@ public class Matrix implements Cloneable, java.io.Serializable {
    public Matrix arrayTimes (Matrix B) {
       checkMatrixDimensions(B);
       Matrix X = new Matrix(m,n);
-      double[][] C = X.getArray();
-      for (int i = 0; i < m; i++) {
-         for (int j = 0; j < n; j++) {
-            C[i][j] = A[i][j] * B.A[i][j];
-         }
+      double[] C = X.A;
+      for (int i = 0; i < A.length; i++) {
+         C[i] = A[i] * B.A[i];
       }
       return X;
    }
@@ -630,10 +650,8 @@ public class Matrix implements Cloneable, java.io.Serializable {
 
    public Matrix arrayTimesEquals (Matrix B) {
       checkMatrixDimensions(B);
-      for (int i = 0; i < m; i++) {
-         for (int j = 0; j < n; j++) {
-            A[i][j] = A[i][j] * B.A[i][j];
-         }
+      for (int i = 0; i < A.length; i++) {
+         A[i] = A[i] * B.A[i];
       }
       return this;
    }
@@ -646,11 +664,9 @@ public class Matrix implements Cloneable, java.io.Serializable {
    public Matrix arrayRightDivide (Matrix B) {
       checkMatrixDimensions(B);
       Matrix X = new Matrix(m,n);
-      double[][] C = X.getArray();
-      for (int i = 0; i < m; i++) {
-         for (int j = 0; j < n; j++) {
-            C[i][j] = A[i][j] / B.A[i][j];
-         }
+      double[] C = X.A;
+      for (int i = 0; i < A.length; i++) {
+         C[i] = A[i] / B.A[i];
       }
       return X;
    }
@@ -662,10 +678,8 @@ public class Matrix implements Cloneable, java.io.Serializable {
 
    public Matrix arrayRightDivideEquals (Matrix B) {
       checkMatrixDimensions(B);
-      for (int i = 0; i < m; i++) {
-         for (int j = 0; j < n; j++) {
-            A[i][j] = A[i][j] / B.A[i][j];
-         }
+      for (int i = 0; i < A.length; i++) {
+         A[i] = A[i] / B.A[i];
       }
       return this;
    }
@@ -678,11 +692,9 @@ public class Matrix implements Cloneable, java.io.Serializable {
    public Matrix arrayLeftDivide (Matrix B) {
       checkMatrixDimensions(B);
       Matrix X = new Matrix(m,n);
-      double[][] C = X.getArray();
-      for (int i = 0; i < m; i++) {
-         for (int j = 0; j < n; j++) {
-            C[i][j] = B.A[i][j] / A[i][j];
-         }
+      double[] C = X.A;
+      for (int i = 0; i < A.length; i++) {
+         C[i] = B.A[i] / A[i];
       }
       return X;
    }
@@ -694,10 +706,8 @@ public class Matrix implements Cloneable, java.io.Serializable {
 
    public Matrix arrayLeftDivideEquals (Matrix B) {
       checkMatrixDimensions(B);
-      for (int i = 0; i < m; i++) {
-         for (int j = 0; j < n; j++) {
-            A[i][j] = B.A[i][j] / A[i][j];
-         }
+      for (int i = 0; i < A.length; i++) {
+         A[i] = B.A[i] / A[i];
       }
       return this;
    }
@@ -709,11 +719,9 @@ public class Matrix implements Cloneable, java.io.Serializable {
 
    public Matrix times (double s) {
       Matrix X = new Matrix(m,n);
-      double[][] C = X.getArray();
-      for (int i = 0; i < m; i++) {
-         for (int j = 0; j < n; j++) {
-            C[i][j] = s*A[i][j];
-         }
+      double[] C = X.A;
+      for (int i = 0; i < A.length; i++) {
+         C[i] = s*A[i];
       }
       return X;
    }
@@ -724,10 +732,8 @@ public class Matrix implements Cloneable, java.io.Serializable {
    */
 
    public Matrix timesEquals (double s) {
-      for (int i = 0; i < m; i++) {
-         for (int j = 0; j < n; j++) {
-            A[i][j] = s*A[i][j];
-         }
+      for (int i = 0; i < A.length; i++) {
+         A[i] = s*A[i];
       }
       return this;
    }
@@ -743,21 +749,54 @@ public class Matrix implements Cloneable, java.io.Serializable {
          throw new IllegalArgumentException("Matrix inner dimensions must agree.");
       }
       Matrix X = new Matrix(m,B.n);
-      double[][] C = X.getArray();
-      double[] Bcolj = new double[n];
-      for (int j = 0; j < B.n; j++) {
-         for (int k = 0; k < n; k++) {
-            Bcolj[k] = B.A[k][j];
-         }
-         for (int i = 0; i < m; i++) {
-            double[] Arowi = A[i];
-            double s = 0;
-            for (int k = 0; k < n; k++) {
-               s += Arowi[k]*Bcolj[k];
-            }
-            C[i][j] = s;
-         }
+      BlockedMultiply.times(A, B.A, X.A, m, n, B.n);
+      return X;
+   }
+
+   /** Linear algebraic matrix multiplication with this matrix transposed,
+       A' * B, without forming A'.
+   @param B    another matrix with as many rows as A
+   @return     Matrix product, A' * B
+   @exception  IllegalArgumentException Matrix row dimensions must agree.
+   */
+
+   public Matrix transposeTimes (Matrix B) {
+      if (B.m != m) {
+         throw new IllegalArgumentException("Matrix row dimensions must agree.");
+      }
+      Matrix X = new Matrix(n,B.n);
+      BlockedMultiply.transposeTimes(A, B.A, X.A, m, n, B.n, B == this);
+      return X;
+   }
+
+   /** Symmetric rank-k update in place, A = A + B' * B, without forming
+       B' * B.  Only the upper triangle is accumulated and then mirrored.
+   @param B    another matrix with as many columns as A has rows
+   @return     A + B' * B
+   @exception  IllegalArgumentException A must be square and match B's column dimension.
+   */
+
+   public Matrix plusTransposeTimesEquals (Matrix B) {
+      if (m != n || B.n != n) {
+         throw new IllegalArgumentException("Matrix dimensions must agree.");
       }
+      BlockedMultiply.transposeTimes(B.A, B.A, A, B.m, n, n, true);
+      return this;
+   }
+
+   /** Linear algebraic matrix multiplication with B transposed, A * B',
+       without forming B'.
+   @param B    another matrix with as many columns as A
+   @return     Matrix product, A * B'
+   @exception  IllegalArgumentException Matrix column dimensions must agree.
+   */
+
+   public Matrix timesTranspose (Matrix B) {
+      if (B.n != n) {
+         throw new IllegalArgumentException("Matrix column dimensions must agree.");
+      }
+      Matrix X = new Matrix(m,B.m);
+      BlockedMultiply.timesTranspose(A, B.A, X.A, m, n, B.m);
       return X;
    }
 
@@ -864,7 +903,7 @@ public class Matrix implements Cloneable, java.io.Serializable {
    public double trace () {
       double t = 0;
       for (int i = 0; i < Math.min(m,n); i++) {
-         t += A[i][i];
+         t += A[i*n+i];
       }
       return t;
    }
@@ -877,11 +916,9 @@ public class Matrix implements Cloneable, java.io.Serializable {
 
    public static Matrix random (int m, int n) {
       Matrix A = new Matrix(m,n);
-      double[][] X = A.getArray();
-      for (int i = 0; i < m; i++) {
-         for (int j = 0; j < n; j++) {
-            X[i][j] = Math.random();
-         }
+      double[] X = A.A;
+      for (int i = 0; i < X.length; i++) {
+         X[i] = Math.random();
       }
       return A;
    }
@@ -894,11 +931,9 @@ public class Matrix implements Cloneable, java.io.Serializable {
 
    public static Matrix identity (int m, int n) {
       Matrix A = new Matrix(m,n);
-      double[][] X = A.getArray();
-      for (int i = 0; i < m; i++) {
-         for (int j = 0; j < n; j++) {
-            X[i][j] = (i == j ? 1.0 : 0.0);
-         }
+      double[] X = A.A;
+      for (int i = 0; i < Math.min(m,n); i++) {
+         X[i*n+i] = 1.0;
       }
       return A;
    }
@@ -964,7 +999,7 @@ public class Matrix implements Cloneable, java.io.Serializable {
       output.println();  // start on new line.
       for (int i = 0; i < m; i++) {
          for (int j = 0; j < n; j++) {
-            String s = format.format(A[i][j]); // format the number
+            String s = format.format(A[i*n+j]); // format the number
             int padding = Math.max(1,width-s.length()); // At _least_ 1 space
             for (int k = 0; k < padding; k++)
                output.print(' ');
@@ -1073,6 +1108,24 @@ public class Matrix implements Cloneable, java.io.Serializable {
       }
       return r;
    }
+   /** Check that columns j0..j1 exist; rows are checked by the packed array. **/
+
+   private void checkColumnRange (int j0, int j1) {
+      if (j0 < 0 || j1 >= n) {
+         throw new ArrayIndexOutOfBoundsException("Submatrix indices");
+      }
+   }
+
+   /** Check that every column index in c exists. **/
+
+   private void checkColumns (int[] c) {
+      for (int j = 0; j < c.length; j++) {
+         if (c[j] < 0 || c[j] >= n) {
+            throw new ArrayIndexOutOfBoundsException("Submatrix indices");
+         }
+      }
+   }
+
    /** Check if size(A) == size(B) **/
 
    private void checkMatrixDimensions (Matrix B) {
@@ -1088,5 +1141,5 @@ public class Matrix implements Cloneable, java.io.Serializable {
 	   return w.toString();	   
    }
    
-   private static final long serialVersionUID = 1;
+   private static final long serialVersionUID = 2;
 }
@@ -107,8 +107,7 @@ public class QRDecomposition implements java.io.Serializable {
    */
 
    public Matrix getH () {
-      Matrix X = new Matrix(m,n);
-      double[][] H = X.getArray();
+      double[][] H = new double[m][n];
       for (int i = 0; i < m; i++) {
          for (int j = 0; j < n; j++) {
             if (i >= j) {
@@ -118,7 +117,7 @@ public class QRDecomposition implements java.io.Serializable {
             }
          }
       }
-      return X;
+      return new Matrix(H,m,n);
    }
 
    /** Return the upper triangular factor
@@ -126,8 +125,7 @@ public class QRDecomposition implements java.io.Serializable {
    */
 
    public Matrix getR () {
-      Matrix X = new Matrix(n,n);
-      double[][] R = X.getArray();
+      double[][] R = new double[n][n];
       for (int i = 0; i < n; i++) {
          for (int j = 0; j < n; j++) {
             if (i < j) {
@@ -139,7 +137,7 @@ public class QRDecomposition implements java.io.Serializable {
             }
          }
       }
-      return X;
+      return new Matrix(R,n,n);
    }
 
    /** Generate and return the (economy-sized) orthogonal factor
@@ -147,8 +145,7 @@ public class QRDecomposition implements java.io.Serializable {
    */
 
    public Matrix getQ () {
-      Matrix X = new Matrix(m,n);
-      double[][] Q = X.getArray();
+      double[][] Q = new double[m][n];
       for (int k = n-1; k >= 0; k--) {
          for (int i = 0; i < m; i++) {
             Q[i][k] = 0.0;
@@ -167,7 +164,7 @@ public class QRDecomposition implements java.io.Serializable {
             }
          }
       }
-      return X;
+      return new Matrix(Q,m,n);
    }
 
    /** Least squares solution of A*X = B
@@ -0,0 +1,149 @@
+package com.github.wihoho.jama;
+
+/**
+   Sparse matrix in compressed sparse row (CSR) form.
+<P>
+   Row i holds the entries columnIndexes[k], values[k] for k in
+   [rowPointers[i], rowPointers[i+1]), with column indexes ascending.
+   Storage is proportional to the number of nonzeros, which keeps graphs
+   such as a k-nearest-neighbour adjacency at O(n*k) instead of O(n^2).
+   Only the products needed against dense matrices are provided.
+*/
+
+public class SparseMatrix implements java.io.Serializable {
+
+   /** Row and column dimensions.
+   @serial row dimension.
+   @serial column dimension.
+   */
+   private int m, n;
+
+   /** CSR arrays.
+   @serial row start offsets, length m+1.
+   @serial column index of each nonzero.
+   @serial value of each nonzero.
+   */
+   private int[] rowPointers;
+   private int[] columnIndexes;
+   private double[] values;
+
+   /** Construct a matrix around CSR arrays, used without copying.
+   @param m              Number of rows.
+   @param n              Number of colums.
+   @param rowPointers    Start of each row in the other arrays, length m+1.
+   @param columnIndexes  Column of each nonzero, ascending within a row.
+   @param values         Value of each nonzero.
+   @exception  IllegalArgumentException Inconsistent array lengths.
+   */
+
+   public SparseMatrix (int m, int n, int[] rowPointers, int[] columnIndexes, double[] values) {
+      if (rowPointers.length != m+1 || columnIndexes.length != values.length
+            || rowPointers[m] != values.length) {
+         throw new IllegalArgumentException("Inconsistent CSR arrays.");
+      }
+      this.m = m;
+      this.n = n;
+      this.rowPointers = rowPointers;
+      this.columnIndexes = columnIndexes;
+      this.values = values;
+   }
+
+   /** Get row dimension.
+   @return     m, the number of rows.
+   */
+
+   public int getRowDimension () {
+      return m;
+   }
+
+   /** Get column dimension.
+   @return     n, the number of columns.
+   */
+
+   public int getColumnDimension () {
+      return n;
+   }
+
+   /** Number of stored entries.
+   @return     nonzero count.
+   */
+
+   public int getNonZeros () {
+      return values.length;
+   }
+
+   /** Get a single element.
+   @param i    Row index.
+   @param j    Column index.
+   @return     A(i,j), zero when not stored.
+   @exception  ArrayIndexOutOfBoundsException
+   */
+
+   public double get (int i, int j) {
+      if (j < 0 || j >= n) {
+         throw new ArrayIndexOutOfBoundsException(j);
+      }
+      int k = java.util.Arrays.binarySearch(columnIndexes, rowPointers[i], rowPointers[i+1], j);
+      return k >= 0 ? values[k] : 0.0;
+   }
+
+   /** Sum of each row.
+   @return     array of m row sums, e.g. the degrees of an adjacency matrix.
+   */
+
+   public double[] rowSums () {
+      double[] sums = new double[m];
+      for (int i = 0; i < m; i++) {
+         double s = 0;
+         for (int k = rowPointers[i]; k < rowPointers[i+1]; k++) {
+            s += values[k];
+         }
+         sums[i] = s;
+      }
+      return sums;
+   }
+
+   /** Sparse times dense, A * B.
+   @param B    a dense matrix with n rows.
+   @return     Matrix product, A * B, dense m-by-p.
+   @exception  IllegalArgumentException Matrix inner dimensions must agree.
+   */
+
+   public Matrix times (Matrix B) {
+      if (B.getRowDimension() != n) {
+         throw new IllegalArgumentException("Matrix inner dimensions must agree.");
+      }
+      int p = B.getColumnDimension();
+      Matrix X = new Matrix(m,p);
+      double[] b = B.getRowPackedArray();
+      double[] x = X.getRowPackedArray();
+      for (int i = 0; i < m; i++) {
+         int row = i*p;
+         for (int k = rowPointers[i]; k < rowPointers[i+1]; k++) {
+            double a = values[k];
+            int other = columnIndexes[k]*p;
+            for (int j = 0; j < p; j++) {
+               x[row+j] += a*b[other+j];
+            }
+         }
+      }
+      return X;
+   }
+
+   /** Dense copy.
+   @return     m-by-n Matrix.
+   */
+
+   public Matrix toMatrix () {
+      Matrix X = new Matrix(m,n);
+      double[] x = X.getRowPackedArray();
+      for (int i = 0; i < m; i++) {
+         for (int k = rowPointers[i]; k < rowPointers[i+1]; k++) {
+            x[i*n+columnIndexes[k]] = values[k];
+         }
+      }
+      return X;
+   }
+
+   private static final long serialVersionUID = 1;
+}
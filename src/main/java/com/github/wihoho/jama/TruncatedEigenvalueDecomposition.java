@@ -0,0 +1,182 @@
+package com.github.wihoho.jama;
+
+import java.util.Random;
+
+/** Truncated Eigenvalue Decomposition.
+<P>
+   Computes only the k largest eigenvalues and their eigenvectors of a
+   real symmetric positive semi-definite matrix with a randomized range
+   finder: a Gaussian test matrix is multiplied through the operator, a
+   few power iterations sharpen the captured subspace, and the operator
+   is then compressed onto that subspace and decomposed with the full
+   EigenvalueDecomposition, which is only (k+p)-by-(k+p) in size.
+<P>
+   The operator is either an explicit symmetric matrix A or the Gram
+   matrix X'*X of a data matrix X.  In the Gram form X'*X is never
+   formed; each application costs two products with X, so the work grows
+   with k rather than with the full number of columns of X.
+<P>
+   The random test matrix is seeded, so the same input always yields the
+   same decomposition.
+*/
+
+public class TruncatedEigenvalueDecomposition implements java.io.Serializable {
+
+   /** Default number of extra directions sampled beyond k. */
+   public static final int DEFAULT_OVERSAMPLING = 10;
+
+   /** Default number of power iterations. */
+   public static final int DEFAULT_POWER_ITERATIONS = 2;
+
+   private static final long DEFAULT_SEED = 42L;
+
+   /** Operator size and number of eigenpairs returned.
+   @serial operator dimension.
+   @serial number of eigenpairs.
+   */
+   private int n, k;
+
+   /** Eigenvalues in descending order.
+   @serial eigenvalues.
+   */
+   private double[] d;
+
+   /** n-by-k matrix of eigenvectors, column j belongs to d[j].
+   @serial eigenvectors.
+   */
+   private Matrix V;
+
+   /** Data matrix for the Gram operator, or the symmetric matrix itself. */
+   private transient Matrix X;
+   private transient boolean gram;
+
+   /** Top k eigenpairs of a symmetric matrix with default parameters.
+   @param A    Square, symmetric positive semi-definite matrix.
+   @param k    Number of eigenpairs.
+   */
+
+   public TruncatedEigenvalueDecomposition (Matrix A, int k) {
+      this(A, false, k, DEFAULT_OVERSAMPLING, DEFAULT_POWER_ITERATIONS, DEFAULT_SEED);
+   }
+
+   /** Top k eigenpairs of a symmetric matrix, or of X'*X.
+   @param A               Symmetric matrix, or the data matrix X when gram is set.
+   @param gram            Decompose A'*A instead of A.
+   @param k               Number of eigenpairs.
+   @param oversampling    Extra directions sampled beyond k.
+   @param powerIterations Power iterations applied to the sample.
+   @param seed            Seed of the Gaussian test matrix.
+   @exception  IllegalArgumentException k out of range or A not square.
+   */
+
+   public TruncatedEigenvalueDecomposition (Matrix A, boolean gram, int k, int oversampling,
+                                            int powerIterations, long seed) {
+      this.X = A;
+      this.gram = gram;
+      this.n = A.getColumnDimension();
+      if (!gram && A.getRowDimension() != n) {
+         throw new IllegalArgumentException("Matrix must be square.");
+      }
+      if (k < 1 || k > n) {
+         throw new IllegalArgumentException("k must be between 1 and the matrix dimension.");
+      }
+      this.k = k;
+      int l = Math.min(n, k + Math.max(0, oversampling));
+
+      Random random = new Random(seed);
+      Matrix Omega = new Matrix(n, l);
+      double[] w = Omega.getRowPackedArray();
+      for (int i = 0; i < w.length; i++) {
+         w[i] = random.nextGaussian();
+      }
+
+      Matrix Q = orthonormalize(apply(Omega));
+      for (int q = 0; q < powerIterations; q++) {
+         Q = orthonormalize(apply(Q));
+      }
+
+      // B = Q' * op * Q, symmetrized against rounding so the small
+      // decomposition takes the symmetric tridiagonal path
+      Matrix B;
+      if (gram) {
+         Matrix Z = X.times(Q);
+         B = Z.transposeTimes(Z);
+      } else {
+         B = Q.transposeTimes(X.times(Q));
+      }
+      double[] b = B.getRowPackedArray();
+      for (int i = 0; i < l; i++) {
+         for (int j = i+1; j < l; j++) {
+            double s = 0.5*(b[i*l+j] + b[j*l+i]);
+            b[i*l+j] = s;
+            b[j*l+i] = s;
+         }
+      }
+
+      EigenvalueDecomposition small = new EigenvalueDecomposition(B);
+      double[] values = small.getRealEigenvalues();
+      Integer[] order = new Integer[l];
+      for (int i = 0; i < l; i++) {
+         order[i] = i;
+      }
+      java.util.Arrays.sort(order, (x, y) -> Double.compare(values[y], values[x]));
+
+      int[] columns = new int[k];
+      d = new double[k];
+      for (int j = 0; j < k; j++) {
+         columns[j] = order[j];
+         d[j] = values[order[j]];
+      }
+      V = Q.times(small.getV().getMatrix(0, l-1, columns));
+      X = null;
+   }
+
+   /** Top k eigenpairs of X'*X without forming X'*X, default parameters.
+   @param X    Data matrix.
+   @param k    Number of eigenpairs.
+   @return     Decomposition of X'*X.
+   */
+
+   public static TruncatedEigenvalueDecomposition gram (Matrix X, int k) {
+      return new TruncatedEigenvalueDecomposition(X, true, k, DEFAULT_OVERSAMPLING,
+            DEFAULT_POWER_ITERATIONS, DEFAULT_SEED);
+   }
+
+   private Matrix apply (Matrix Y) {
+      return gram ? X.transposeTimes(X.times(Y)) : X.times(Y);
+   }
+
+   private static Matrix orthonormalize (Matrix Y) {
+      return new QRDecomposition(Y).getQ();
+   }
+
+   /** Return the eigenvector matrix
+   @return     V, n-by-k with one eigenvector per column
+   */
+
+   public Matrix getV () {
+      return V;
+   }
+
+   /** Return the eigenvalues, largest first
+   @return     d, of length k
+   */
+
+   public double[] getd () {
+      return d;
+   }
+
+   /** Return the diagonal eigenvalue matrix
+   @return     D, k-by-k
+   */
+
+   public Matrix getD () {
+      Matrix D = new Matrix(k, k);
+      for (int i = 0; i < k; i++) {
+         D.set(i, i, d[i]);
+      }
+      return D;
+   }
+
+   private static final long serialVersionUID = 1;
+}
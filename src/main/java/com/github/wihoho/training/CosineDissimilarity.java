@@ -2,39 +2,59 @@ package com.github.wihoho.training;
 
 import com.github.wihoho.jama.Matrix;
 
-public class CosineDissimilarity implements Metric {
+public class CosineDissimilarity implements Metric, FloatMetric {
 
 	@Override
 	public double getDistance(Matrix a, Matrix b) {
 		assert a.getRowDimension() == b.getRowDimension();
+		double[] s = a.getRowPackedArray();
+		double[] e = b.getRowPackedArray();
 		int size = a.getRowDimension();
-		double cosine, sNorm, eNorm, se;
-		int i;
 
-		// get s * e
-		se = 0;
-		for (i = 0; i < size; i++) {
-			se += a.get(i, 0) * b.get(i, 0);
+		// s * e and both squared norms in one pass
+		double se0 = 0, se1 = 0, ss0 = 0, ss1 = 0, ee0 = 0, ee1 = 0;
+		int i = 0;
+		for (int end = size - 1; i < end; i += 2) {
+			se0 += s[i] * e[i];
+			se1 += s[i + 1] * e[i + 1];
+			ss0 += s[i] * s[i];
+			ss1 += s[i + 1] * s[i + 1];
+			ee0 += e[i] * e[i];
+			ee1 += e[i + 1] * e[i + 1];
 		}
-
-		// get s norm
-		sNorm = 0;
-		for (i = 0; i < size; i++) {
-			sNorm += Math.pow(a.get(i, 0), 2);
+		for (; i < size; i++) {
+			se0 += s[i] * e[i];
+			ss0 += s[i] * s[i];
+			ee0 += e[i] * e[i];
 		}
-		sNorm = Math.sqrt(sNorm);
 
-		// get e norm
-		eNorm = 0;
-		for (i = 0; i < size; i++) {
-			eNorm += Math.pow(b.get(i, 0), 2);
+		return fromDot(se0 + se1, ss0 + ss1, ee0 + ee1);
+	}
+
+	@Override
+	public float getDistance(float[] a, float[] b, int bOffset) {
+		float se = 0, sNorm = 0, eNorm = 0;
+		for (int i = 0; i < a.length; i++) {
+			float bi = b[bOffset + i];
+			se += a[i] * bi;
+			sNorm += a[i] * a[i];
+			eNorm += bi * bi;
 		}
-		eNorm = Math.sqrt(eNorm);
-		
-		if(se < 0)
+
+		return (float) Math.min(Float.MAX_VALUE, fromDot(se, sNorm, eNorm));
+	}
+
+	@Override
+	public float getDistance(float[] a, double aSquaredNorm, float[] b, int bOffset, double bSquaredNorm) {
+		return (float) Math.min(Float.MAX_VALUE,
+				fromDot(Vectors.dot(a, 0, b, bOffset, a.length), aSquaredNorm, bSquaredNorm));
+	}
+
+	static double fromDot(double se, double sSquaredNorm, double eSquaredNorm) {
+		if (se < 0)
 			se = 0 - se;
-		
-		cosine = se / (eNorm * sNorm);
+
+		double cosine = se / Math.sqrt(sSquaredNorm * eSquaredNorm);
 
 		// transform cosine similarity into dissimilarity such that this is
 		// unified with EuclideanDistance and L1Distance
@@ -0,0 +1,131 @@
+package com.github.wihoho.training;
+
+import com.github.wihoho.jama.Matrix;
+
+import java.util.Arrays;
+
+/**
+ * Running mean and scatter matrix of a stream of vectorized faces, so a
+ * training set never has to be held in memory as one data matrix.
+ *
+ * Faces are buffered into chunks of chunkSize rows. Each full chunk is
+ * centred on its own mean, its scatter is one symmetric product C'C, and
+ * it is merged into the running totals with the pairwise update of Chan
+ * et al.: for counts na and nb and mean difference delta the scatter grows
+ * by Sb + delta delta' * na nb / (na + nb). This is Welford's update
+ * applied a chunk at a time and keeps the accuracy of two-pass centring.
+ *
+ * Memory is the d by d scatter plus one chunk, independent of the number
+ * of faces; C'C is accumulated into the scatter in place. The scatter is
+ * d * d doubles, about 850 MB for 112 by 92 faces, so this suits reduced
+ * image sizes rather than the full resolution.
+ */
+public class CovarianceAccumulator {
+	private final int chunkSize;
+	private int dimension = -1;
+	private long count;
+	private double[] mean;
+	private Matrix scatter;
+
+	private double[] chunk;
+	private int chunkCount;
+
+	public CovarianceAccumulator(int chunkSize) {
+		if (chunkSize < 1)
+			throw new IllegalArgumentException("chunkSize must be positive");
+		this.chunkSize = chunkSize;
+	}
+
+	// face is a d by 1 column vector
+	public void add(Matrix face) {
+		double[] values = face.getRowPackedArray();
+		if (dimension < 0) {
+			dimension = values.length;
+			mean = new double[dimension];
+			scatter = new Matrix(dimension, dimension);
+			chunk = new double[chunkSize * dimension];
+		} else if (values.length != dimension) {
+			throw new IllegalArgumentException("face does not match the accumulated dimension");
+		}
+
+		System.arraycopy(values, 0, chunk, chunkCount * dimension, dimension);
+		if (++chunkCount == chunkSize)
+			flush();
+	}
+
+	// merge the buffered faces into the running mean and scatter
+	public void flush() {
+		int nb = chunkCount;
+		if (nb == 0)
+			return;
+		int d = dimension;
+
+		double[] chunkMean = new double[d];
+		for (int i = 0; i < nb; i++) {
+			for (int j = 0; j < d; j++)
+				chunkMean[j] += chunk[i * d + j];
+		}
+		for (int j = 0; j < d; j++)
+			chunkMean[j] /= nb;
+
+		Matrix C = new Matrix(nb == chunkSize ? chunk : Arrays.copyOf(chunk, nb * d), nb, d);
+		double[] c = C.getRowPackedArray();
+		for (int i = 0; i < nb; i++) {
+			for (int j = 0; j < d; j++)
+				c[i * d + j] -= chunkMean[j];
+		}
+		scatter.plusTransposeTimesEquals(C);
+
+		long na = count;
+		long n = na + nb;
+		double[] delta = new double[d];
+		for (int j = 0; j < d; j++) {
+			delta[j] = chunkMean[j] - mean[j];
+			mean[j] += delta[j] * nb / n;
+		}
+		if (na > 0) {
+			double weight = (double) na * nb / n;
+			double[] s = scatter.getRowPackedArray();
+			for (int i = 0; i < d; i++) {
+				double di = weight * delta[i];
+				for (int j = 0; j < d; j++)
+					s[i * d + j] += di * delta[j];
+			}
+		}
+
+		count = n;
+		chunkCount = 0;
+	}
+
+	public long getCount() {
+		return count + chunkCount;
+	}
+
+	public int getDimension() {
+		return dimension;
+	}
+
+	// d by 1 mean of the merged faces
+	public Matrix getMean() {
+		flush();
+		return new Matrix(mean.clone(), dimension, 1);
+	}
+
+	// sum over the merged faces of (x - mean)(x - mean)'
+	public Matrix getScatter() {
+		flush();
+		return scatter.copy();
+	}
+
+	// the running scatter itself, for callers in this package that only read it
+	Matrix scatterMatrix() {
+		flush();
+		return scatter;
+	}
+
+	// unbiased sample covariance, scatter / (n - 1)
+	public Matrix getCovariance() {
+		flush();
+		return scatter.times(1.0 / (count - 1));
+	}
+}
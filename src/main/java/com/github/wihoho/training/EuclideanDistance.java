@@ -2,18 +2,57 @@ package com.github.wihoho.training;
 
 import com.github.wihoho.jama.Matrix;
 
-public class EuclideanDistance implements Metric {
+public class EuclideanDistance implements Metric, FloatMetric {
 
 	@Override
 	public double getDistance(Matrix a, Matrix b) {
+		assert a.getRowDimension() == b.getRowDimension();
+		double[] x = a.getRowPackedArray();
+		double[] y = b.getRowPackedArray();
 		int size = a.getRowDimension();
-		double sum = 0;
+		double s0 = 0, s1 = 0;
+		int i = 0;
+		for (int end = size - 1; i < end; i += 2) {
+			double d0 = x[i] - y[i];
+			double d1 = x[i + 1] - y[i + 1];
+			s0 += d0 * d0;
+			s1 += d1 * d1;
+		}
+		for (; i < size; i++) {
+			double d0 = x[i] - y[i];
+			s0 += d0 * d0;
+		}
+
+		return Math.sqrt(s0 + s1);
+	}
 
-		for (int i = 0; i < size; i++) {
-			sum += Math.pow(a.get(i, 0) - b.get(i, 0), 2);
+	// summed in double like Vectors, so this ranks the same as the norm based overload
+	@Override
+	public float getDistance(float[] a, float[] b, int bOffset) {
+		double s0 = 0, s1 = 0;
+		int i = 0;
+		for (int end = a.length - 1; i < end; i += 2) {
+			double d0 = a[i] - b[bOffset + i];
+			double d1 = a[i + 1] - b[bOffset + i + 1];
+			s0 += d0 * d0;
+			s1 += d1 * d1;
+		}
+		for (; i < a.length; i++) {
+			double d0 = a[i] - b[bOffset + i];
+			s0 += d0 * d0;
 		}
 
-		return Math.sqrt(sum);
+		return (float) Math.sqrt(s0 + s1);
+	}
+
+	// ||a - b||^2 = ||a||^2 + ||b||^2 - 2 a.b, so only the dot product is left per pair
+	@Override
+	public float getDistance(float[] a, double aSquaredNorm, float[] b, int bOffset, double bSquaredNorm) {
+		return fromDot(Vectors.dot(a, 0, b, bOffset, a.length), aSquaredNorm, bSquaredNorm);
+	}
+
+	static float fromDot(double dot, double aSquaredNorm, double bSquaredNorm) {
+		return (float) Math.sqrt(Math.max(0, aSquaredNorm + bSquaredNorm - 2 * dot));
 	}
 
 }
@@ -0,0 +1,154 @@
+package com.github.wihoho.training;
+
+import com.github.wihoho.jama.Matrix;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+
+/**
+ * Loads a face dataset laid out as root/label/*.pgm, the way the ORL set
+ * is: every subdirectory is one person and its name is the label.
+ *
+ * Images are decoded straight into training vectors on a pool of worker
+ * threads, while the calling thread hands them to a consumer such as
+ * {@code trainer::add} in directory order. At most maxInFlight images are
+ * decoded ahead of the consumer, which bounds memory for any dataset
+ * size. Files that fail to decode are skipped and listed in the report.
+ */
+public class FaceDatasetLoader {
+	private final int threads;
+	private final int maxInFlight;
+
+	public FaceDatasetLoader() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	public FaceDatasetLoader(int threads) {
+		this(threads, 4 * threads);
+	}
+
+	public FaceDatasetLoader(int threads, int maxInFlight) {
+		if (threads < 1 || maxInFlight < 1)
+			throw new IllegalArgumentException("threads and maxInFlight must be positive");
+		this.threads = threads;
+		this.maxInFlight = maxInFlight;
+	}
+
+	public Report load(Path root, BiConsumer<Matrix, String> consumer) throws IOException {
+		long start = System.nanoTime();
+		List<Path> files = new ArrayList<Path>();
+		List<String> labels = new ArrayList<String>();
+		for (Path directory : sortedEntries(root)) {
+			if (!Files.isDirectory(directory))
+				continue;
+			String label = directory.getFileName().toString();
+			for (Path file : sortedEntries(directory)) {
+				if (Files.isRegularFile(file) && file.getFileName().toString().toLowerCase().endsWith(".pgm")) {
+					files.add(file);
+					labels.add(label);
+				}
+			}
+		}
+
+		Report report = new Report();
+		ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "face-dataset-loader");
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			ArrayDeque<Future<Matrix>> pending = new ArrayDeque<Future<Matrix>>();
+			int next = 0;
+			for (int delivered = 0; delivered < files.size(); delivered++) {
+				while (next < files.size() && pending.size() < maxInFlight) {
+					String address = files.get(next++).toString();
+					pending.add(executor.submit(() -> FileManager.convertPGMtoVector(address)));
+				}
+
+				Path file = files.get(delivered);
+				Matrix face;
+				try {
+					face = pending.poll().get();
+				} catch (ExecutionException e) {
+					report.skipped.add(file + ": " + e.getCause().getMessage());
+					continue;
+				}
+				consumer.accept(face, labels.get(delivered));
+				report.loaded++;
+				report.bytes += Files.size(file);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while loading " + root, e);
+		} finally {
+			executor.shutdownNow();
+		}
+
+		report.elapsedNanos = System.nanoTime() - start;
+		return report;
+	}
+
+	private static List<Path> sortedEntries(Path directory) throws IOException {
+		List<Path> entries = new ArrayList<Path>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+			for (Path entry : stream) {
+				entries.add(entry);
+			}
+		}
+		Collections.sort(entries);
+		return entries;
+	}
+
+	/**
+	 * Outcome of one load: how many images reached the consumer, which
+	 * files were skipped and why, and the throughput.
+	 */
+	public static class Report {
+		private int loaded;
+		private long bytes;
+		private long elapsedNanos;
+		private final List<String> skipped = new ArrayList<String>();
+
+		public int getLoaded() {
+			return loaded;
+		}
+
+		// "path: reason" for every file that could not be decoded
+		public List<String> getSkipped() {
+			return Collections.unmodifiableList(skipped);
+		}
+
+		public long getBytes() {
+			return bytes;
+		}
+
+		public long getElapsedMillis() {
+			return elapsedNanos / 1000000;
+		}
+
+		public double getImagesPerSecond() {
+			return elapsedNanos == 0 ? 0 : loaded * 1e9 / elapsedNanos;
+		}
+
+		public double getMegabytesPerSecond() {
+			return elapsedNanos == 0 ? 0 : bytes * 1e9 / elapsedNanos / (1024 * 1024);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("loaded %d images (%d skipped) in %d ms, %.1f images/s, %.1f MB/s",
+					loaded, skipped.size(), getElapsedMillis(), getImagesPerSecond(), getMegabytesPerSecond());
+		}
+	}
+}
@@ -5,50 +5,126 @@ import com.github.wihoho.jama.Matrix;
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.awt.image.WritableRaster;
-import java.io.DataInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.Scanner;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 
 public class FileManager {
+    // Reused per thread so decoding a dataset does not allocate a file buffer per image.
+    // Files above the limit get a one-off heap buffer instead, so a pool thread never
+    // holds more than PGM_BUFFER_LIMIT bytes of direct memory after a bulk load
+    private static final ThreadLocal<ByteBuffer> PGM_BUFFER = new ThreadLocal<ByteBuffer>();
+    private static final int PGM_BUFFER_LIMIT = 256 * 1024;
+
     // Convert PGM to Matrix
     public static Matrix convertPGMtoMatrix(String address) throws IOException {
-        FileInputStream fileInputStream = new FileInputStream(address);
-        Scanner scan = new Scanner(fileInputStream);
-
-        // Discard the magic number
-        scan.nextLine();
-        // Read pic width, height and max value
-        int picWidth = scan.nextInt();
-        int picHeight = scan.nextInt();
-
-        fileInputStream.close();
-
-        // Now parse the file as binary data
-        fileInputStream = new FileInputStream(address);
-        DataInputStream dis = new DataInputStream(fileInputStream);
-
-        // look for 4 lines (i.e.: the header) and discard them
-        int numnewlines = 3;
-        while (numnewlines > 0) {
-            char c;
-            do {
-                c = (char) (dis.readUnsignedByte());
-            } while (c != '\n');
-            numnewlines--;
+        return readPGM(address, false);
+    }
+
+    // Convert PGM straight to the m*n by 1 column that training expects,
+    // element p * m + q being row q and column p of the image
+    public static Matrix convertPGMtoVector(String address) throws IOException {
+        return readPGM(address, true);
+    }
+
+    /**
+     * Single pass binary (P5) PGM decoder: the whole file is read into a
+     * buffer (the cached direct one unless the file is large), the header
+     * is parsed in place, and the pixels are written into a flat array
+     * laid out either by rows or as the vectorized column. Comment lines in
+     * the header are skipped and a maxval above 255 selects 16 bit
+     * big-endian samples. Sample values are returned unscaled.
+     */
+    private static Matrix readPGM(String address, boolean vectorize) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(Paths.get(address), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+                throw new IOException("PGM file too large: " + address);
+            if (size > PGM_BUFFER_LIMIT) {
+                buffer = ByteBuffer.allocate((int) size);
+            } else {
+                buffer = PGM_BUFFER.get();
+                if (buffer == null || buffer.capacity() < size) {
+                    buffer = ByteBuffer.allocateDirect((int) Math.max(size, 64 * 1024));
+                    PGM_BUFFER.set(buffer);
+                }
+            }
+            buffer.clear();
+            buffer.limit((int) size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0)
+                    break;
+            }
+            buffer.flip();
         }
 
-        // read the image data
-        double[][] data2D = new double[picHeight][picWidth];
-        for (int row = 0; row < picHeight; row++) {
-            for (int col = 0; col < picWidth; col++) {
-                data2D[row][col] = dis.readUnsignedByte();
+        if (buffer.remaining() < 2 || buffer.get() != 'P' || buffer.get() != '5')
+            throw new IOException("not a binary PGM file: " + address);
+        int width = readHeaderInt(buffer, address);
+        int height = readHeaderInt(buffer, address);
+        int maxValue = readHeaderInt(buffer, address);
+        if (width <= 0 || height <= 0 || maxValue <= 0 || maxValue > 65535)
+            throw new IOException("invalid PGM header: " + address);
+        // exactly one whitespace character separates the header from the pixels
+        if (!buffer.hasRemaining())
+            throw new IOException("truncated PGM file: " + address);
+        buffer.get();
+
+        int bytesPerSample = maxValue < 256 ? 1 : 2;
+        if (buffer.remaining() < (long) width * height * bytesPerSample)
+            throw new IOException("truncated PGM file: " + address);
+
+        double[] pixels = new double[width * height];
+        int position = buffer.position();
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                int value;
+                if (bytesPerSample == 1) {
+                    value = buffer.get(position++) & 0xff;
+                } else {
+                    value = (buffer.get(position) & 0xff) << 8 | (buffer.get(position + 1) & 0xff);
+                    position += 2;
+                }
+                pixels[vectorize ? col * height + row : row * width + col] = value;
+            }
+        }
+
+        return vectorize ? new Matrix(pixels, width * height, 1) : new Matrix(pixels, height, width);
+    }
+
+    // next decimal header field, skipping whitespace and # comments
+    private static int readHeaderInt(ByteBuffer buffer, String address) throws IOException {
+        while (buffer.hasRemaining()) {
+            byte c = buffer.get(buffer.position());
+            if (c == '#') {
+                while (buffer.hasRemaining() && buffer.get() != '\n') {
+                }
+            } else if (c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == 0x0b) {
+                buffer.get();
+            } else {
+                break;
             }
         }
 
-        return new Matrix(data2D);
+        int value = 0;
+        int digits = 0;
+        while (buffer.hasRemaining()) {
+            byte c = buffer.get(buffer.position());
+            if (c < '0' || c > '9')
+                break;
+            buffer.get();
+            value = value * 10 + (c - '0');
+            if (++digits > 9)
+                throw new IOException("invalid PGM header: " + address);
+        }
+        if (digits == 0)
+            throw new IOException("invalid PGM header: " + address);
+        return value;
     }
 
     // Convert Matrix to PGM with numbers of row and column
@@ -0,0 +1,22 @@
+package com.github.wihoho.training;
+
+/**
+ * Single precision form of {@link Metric} over raw template arrays,
+ * used with {@link com.github.wihoho.jama.FloatMatrix} projections and
+ * {@link Gallery} entries.
+ */
+public interface FloatMetric {
+	// distance between a and the a.length values of b starting at bOffset
+	float getDistance(float[] a, float[] b, int bOffset);
+
+	default float getDistance(float[] a, float[] b) {
+		assert a.length == b.length;
+		return getDistance(a, b, 0);
+	}
+
+	// same distance given the squared norms of a and of the b slice, which
+	// metrics built on dot products use to skip recomputing them per pair
+	default float getDistance(float[] a, double aSquaredNorm, float[] b, int bOffset, double bSquaredNorm) {
+		return getDistance(a, b, bOffset);
+	}
+}
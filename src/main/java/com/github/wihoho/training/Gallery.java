@@ -0,0 +1,163 @@
+package com.github.wihoho.training;
+
+import com.github.wihoho.jama.Matrix;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Enrolled face templates stored column by column: every projection is a
+ * row of one contiguous float array, next to an int column of label ids
+ * and a dictionary from id to label. A nearest neighbour scan is then a
+ * linear sweep over memory and an entry costs 4 bytes per component plus
+ * 4 for its label.
+ *
+ * One thread may add while any number of threads read. An entry is
+ * published by the volatile size, and growth replaces the arrays through
+ * volatile writes after copying them, so a reader that calls size() before
+ * getData(), getSquaredNorms() or getLabelId() sees every entry below it,
+ * whichever generation of the arrays it picks up.
+ */
+public class Gallery {
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private final int dimension;
+	private volatile float[] data;
+	private volatile int[] labelIds;
+	private volatile double[] squaredNorms;
+	private volatile int size;
+
+	private final List<String> labels = new CopyOnWriteArrayList<String>();
+	private final HashMap<String, Integer> labelIndex = new HashMap<String, Integer>();
+
+	public Gallery(int dimension) {
+		this(dimension, DEFAULT_CAPACITY);
+	}
+
+	public Gallery(int dimension, int capacity) {
+		this.dimension = dimension;
+		capacity = Math.max(1, capacity);
+		this.data = new float[capacity * dimension];
+		this.labelIds = new int[capacity];
+		this.squaredNorms = new double[capacity];
+	}
+
+	// Wrap entries read back from a model snapshot; data holds size rows
+	Gallery(int dimension, float[] data, int[] labelIds, List<String> labels, int size) {
+		this.dimension = dimension;
+		this.data = data;
+		this.labelIds = labelIds;
+		this.size = size;
+		this.squaredNorms = new double[Math.max(1, labelIds.length)];
+		for (int i = 0; i < size; i++) {
+			squaredNorms[i] = Vectors.squaredNorm(data, i * dimension, dimension);
+		}
+		for (String label : labels) {
+			labelId(label);
+		}
+	}
+
+	// Copy a projected training set into a gallery
+	public static Gallery of(List<ProjectedTrainingMatrix> projectedTrainingSet) {
+		int dimension = projectedTrainingSet.isEmpty() ? 0
+				: projectedTrainingSet.get(0).matrix.getRowDimension();
+		Gallery gallery = new Gallery(dimension, projectedTrainingSet.size());
+		for (ProjectedTrainingMatrix ptm : projectedTrainingSet) {
+			gallery.add(ptm);
+		}
+		return gallery;
+	}
+
+	public int add(ProjectedTrainingMatrix projected) {
+		return add(projected.matrix, projected.label);
+	}
+
+	// projection is a dimension by 1 column vector
+	public int add(Matrix projection, String label) {
+		assert projection.getRowDimension() == dimension : "projection does not match the gallery dimension";
+		int index = size;
+		ensureCapacity(index + 1);
+		double[] values = projection.getRowPackedArray();
+		float[] data = this.data;
+		int offset = index * dimension;
+		for (int i = 0; i < dimension; i++) {
+			data[offset + i] = (float) values[i];
+		}
+		squaredNorms[index] = Vectors.squaredNorm(data, offset, dimension);
+		labelIds[index] = labelId(label);
+		size = index + 1;
+		return index;
+	}
+
+	public int add(float[] projection, String label) {
+		assert projection.length == dimension : "projection does not match the gallery dimension";
+		int index = size;
+		ensureCapacity(index + 1);
+		float[] data = this.data;
+		System.arraycopy(projection, 0, data, index * dimension, dimension);
+		squaredNorms[index] = Vectors.squaredNorm(data, index * dimension, dimension);
+		labelIds[index] = labelId(label);
+		size = index + 1;
+		return index;
+	}
+
+	private int labelId(String label) {
+		Integer id = labelIndex.get(label);
+		if (id == null) {
+			id = labels.size();
+			labels.add(label);
+			labelIndex.put(label, id);
+		}
+		return id;
+	}
+
+	// only the adding thread writes; readers see either array generation
+	private void ensureCapacity(int capacity) {
+		if (capacity > labelIds.length) {
+			int newCapacity = Math.max(capacity, labelIds.length + (labelIds.length >> 1));
+			data = Arrays.copyOf(data, newCapacity * dimension);
+			labelIds = Arrays.copyOf(labelIds, newCapacity);
+			squaredNorms = Arrays.copyOf(squaredNorms, newCapacity);
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getDimension() {
+		return dimension;
+	}
+
+	// Entry i occupies data[i * dimension, (i + 1) * dimension)
+	public float[] getData() {
+		return data;
+	}
+
+	// squared Euclidean norm of every entry, kept up to date by add
+	public double[] getSquaredNorms() {
+		return squaredNorms;
+	}
+
+	public float[] get(int index) {
+		return Arrays.copyOfRange(data, index * dimension, (index + 1) * dimension);
+	}
+
+	public int getLabelId(int index) {
+		return labelIds[index];
+	}
+
+	public String getLabel(int index) {
+		return labels.get(labelIds[index]);
+	}
+
+	public String getLabelName(int labelId) {
+		return labels.get(labelId);
+	}
+
+	public int getLabelCount() {
+		return labels.size();
+	}
+}
@@ -2,9 +2,13 @@ package com.github.wihoho.training;
 
 import com.github.wihoho.jama.Matrix;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.IntStream;
 
 /**
  * 就是在训练集中数据和标签已知的情况下，输入测试数据，将测试数据的特征与训练集中对应的特征进行相互比较，
@@ -13,61 +17,276 @@ import java.util.Set;
  *
  */
 public class KNN {
+	// galleries smaller than two partitions of this size are scanned serially
+	public static final int DEFAULT_MIN_PARTITION_SIZE = 8192;
+
+	// probes scored together against each gallery row in a batch
+	private static final int PROBE_TILE = 16;
 
 	public static String assignLabel(ProjectedTrainingMatrix[] trainingSet, Matrix testFace, int K, Metric metric) {
-		ProjectedTrainingMatrix[] neighbors = findKNN(trainingSet, testFace, K, metric);
-		return classify(neighbors);
+		NeighborHeap neighbors = findKNN(trainingSet, testFace, K, metric);
+		return classify(trainingSet, neighbors);
 	}
 
-	// testFace has been projected to the subspace
-	static ProjectedTrainingMatrix[] findKNN(ProjectedTrainingMatrix[] trainingSet, Matrix testFace, int K, Metric metric) {
+	// testFace has been projected to the subspace; returns the indexes and
+	// distances of the K nearest entries of trainingSet
+	static NeighborHeap findKNN(ProjectedTrainingMatrix[] trainingSet, Matrix testFace, int K, Metric metric) {
 		int NumOfTrainingSet = trainingSet.length;
 		assert K <= NumOfTrainingSet : "K is lager than the length of trainingSet!";
 
-		// initialization
-		ProjectedTrainingMatrix[] neighbors = new ProjectedTrainingMatrix[K];
-		int i;
-		for (i = 0; i < K; i++) {
-			trainingSet[i].distance = metric.getDistance(trainingSet[i].matrix,
-					testFace);
-//			System.out.println("index: " + i + " distance: "
-//					+ trainingSet[i].distance);
-			neighbors[i] = trainingSet[i];
+		NeighborHeap neighbors = new NeighborHeap(Math.min(K, NumOfTrainingSet));
+		for (int i = 0; i < NumOfTrainingSet; i++) {
+			neighbors.offer(i, metric.getDistance(trainingSet[i].matrix, testFace));
 		}
+		return neighbors;
+	}
+
+	public static String assignLabel(Gallery gallery, float[] testFace, int K, FloatMetric metric) {
+		NeighborHeap neighbors = findKNN(gallery, testFace, K, metric);
+		return classify(gallery, neighbors);
+	}
+
+	/**
+	 * Same as {@link #assignLabel(Gallery, float[], int, FloatMetric)} with the
+	 * gallery split into up to parallelism partitions of at least
+	 * minPartitionSize entries, each scanned for a local top K on the common
+	 * fork/join pool before the local results are merged.
+	 */
+	public static String assignLabel(Gallery gallery, float[] testFace, int K, FloatMetric metric,
+			int parallelism, int minPartitionSize) {
+		NeighborHeap neighbors = findKNN(gallery, testFace, K, metric, parallelism, minPartitionSize);
+		return classify(gallery, neighbors);
+	}
+
+	static NeighborHeap findKNN(Gallery gallery, float[] testFace, int K, FloatMetric metric,
+			int parallelism, int minPartitionSize) {
+		int size = gallery.size();
+		if (minPartitionSize <= 0)
+			minPartitionSize = DEFAULT_MIN_PARTITION_SIZE;
+		int partitions = Math.min(parallelism, size / minPartitionSize);
+		if (partitions < 2)
+			return findKNN(gallery, testFace, K, metric);
+
+		int partitionSize = (size + partitions - 1) / partitions;
+		return ForkJoinPool.commonPool().invoke(new ScanTask(gallery, testFace, K, metric, 0, size, partitionSize));
+	}
+
+	// top K of the gallery entries [from, to), split in halves down to partitionSize
+	private static final class ScanTask extends RecursiveTask<NeighborHeap> {
+		private static final long serialVersionUID = 1L;
+
+		private final Gallery gallery;
+		private final float[] testFace;
+		private final int K;
+		private final FloatMetric metric;
+		private final int from, to, partitionSize;
+
+		ScanTask(Gallery gallery, float[] testFace, int K, FloatMetric metric, int from, int to, int partitionSize) {
+			this.gallery = gallery;
+			this.testFace = testFace;
+			this.K = K;
+			this.metric = metric;
+			this.from = from;
+			this.to = to;
+			this.partitionSize = partitionSize;
+		}
+
+		@Override
+		protected NeighborHeap compute() {
+			if (to - from <= partitionSize)
+				return findKNNInRange(gallery, testFace, K, metric, from, to);
+
+			int mid = from + (to - from) / 2;
+			ScanTask left = new ScanTask(gallery, testFace, K, metric, from, mid, partitionSize);
+			ScanTask right = new ScanTask(gallery, testFace, K, metric, mid, to, partitionSize);
+			left.fork();
+			NeighborHeap rightNeighbors = right.compute();
+			NeighborHeap leftNeighbors = left.join();
+
+			NeighborHeap neighbors = new NeighborHeap(Math.min(K, to - from));
+			neighbors.addAll(leftNeighbors);
+			neighbors.addAll(rightNeighbors);
+			return neighbors;
+		}
+	}
+
+	/**
+	 * Same as {@link #assignLabel(Gallery, float[], int, FloatMetric)} with the
+	 * scan done on product-quantized codes: the rerank entries with the
+	 * smallest estimated distance are scored exactly on the gallery
+	 * templates and the K nearest of them vote.
+	 */
+	public static String assignLabel(QuantizedGallery quantized, Gallery gallery, float[] testFace, int K,
+			FloatMetric metric, int rerank) {
+		NeighborHeap neighbors = findKNN(quantized, gallery, testFace, K, metric, rerank);
+		return classify(gallery, neighbors);
+	}
+
+	static NeighborHeap findKNN(QuantizedGallery quantized, Gallery gallery, float[] testFace, int K,
+			FloatMetric metric, int rerank) {
+		double testNorm = Vectors.squaredNorm(testFace, 0, testFace.length);
+		NeighborHeap candidates = quantized.candidates(testFace, testNorm, gallery, Math.max(K, rerank), metric);
+
+		int dimension = gallery.getDimension();
+		float[] data = gallery.getData();
+		double[] squaredNorms = gallery.getSquaredNorms();
+		NeighborHeap neighbors = new NeighborHeap(Math.min(K, candidates.size()));
+		for (int t = 0; t < candidates.size(); t++) {
+			int i = candidates.id(t);
+			neighbors.offer(i, metric.getDistance(testFace, testNorm, data, i * dimension, squaredNorms[i]));
+		}
+		return neighbors;
+	}
+
+	// testFace has been projected to the subspace; returns the indexes and
+	// distances of the K nearest gallery entries
+	static NeighborHeap findKNN(Gallery gallery, float[] testFace, int K, FloatMetric metric) {
+		return findKNNInRange(gallery, testFace, K, metric, 0, gallery.size());
+	}
+
+	// K nearest among the gallery entries [from, to)
+	static NeighborHeap findKNNInRange(Gallery gallery, float[] testFace, int K, FloatMetric metric, int from, int to) {
+		int dimension = gallery.getDimension();
+		float[] data = gallery.getData();
 
-		// go through the remaining records in the trainingSet to find K nearest
-		// neighbors
-		for (i = K; i < NumOfTrainingSet; i++) {
-			trainingSet[i].distance = metric.getDistance(trainingSet[i].matrix,
-					testFace);
-//			System.out.println("index: " + i + " distance: "
-//					+ trainingSet[i].distance);
-
-			int maxIndex = 0;
-			for (int j = 0; j < K; j++) {
-				if (neighbors[j].distance > neighbors[maxIndex].distance)
-					maxIndex = j;
+		double[] squaredNorms = gallery.getSquaredNorms();
+		double testNorm = Vectors.squaredNorm(testFace, 0, testFace.length);
+
+		NeighborHeap neighbors = new NeighborHeap(Math.max(0, Math.min(K, to - from)));
+		for (int i = from; i < to; i++) {
+			neighbors.offer(i, metric.getDistance(testFace, testNorm, data, i * dimension, squaredNorms[i]));
+		}
+		return neighbors;
+	}
+
+	/**
+	 * Labels a batch of projected probes. probes holds count rows of
+	 * gallery.getDimension() values, probe j starting at j * dimension.
+	 *
+	 * For Euclidean and cosine distances the scan is a blocked product of the
+	 * gallery with the probes: a tile of probes stays in cache while the
+	 * gallery streams past once, and distances follow from the dot products
+	 * and the squared norms. Other metrics scan the gallery once per probe.
+	 */
+	public static String[] assignLabels(Gallery gallery, float[] probes, int count, int K, FloatMetric metric) {
+		int dimension = gallery.getDimension();
+		assert probes.length >= count * dimension : "probes shorter than count rows";
+		String[] result = new String[count];
+
+		if (!(metric instanceof EuclideanDistance) && !(metric instanceof CosineDissimilarity)) {
+			float[] probe = new float[dimension];
+			for (int j = 0; j < count; j++) {
+				System.arraycopy(probes, j * dimension, probe, 0, dimension);
+				result[j] = assignLabel(gallery, probe, K, metric);
+			}
+			return result;
+		}
+
+		boolean cosine = metric instanceof CosineDissimilarity;
+		double[] probeNorms = new double[count];
+		for (int j = 0; j < count; j++) {
+			probeNorms[j] = Vectors.squaredNorm(probes, j * dimension, dimension);
+		}
+		int tiles = (count + PROBE_TILE - 1) / PROBE_TILE;
+		IntStream.range(0, tiles).parallel().forEach(tile -> {
+			int from = tile * PROBE_TILE;
+			int to = Math.min(count, from + PROBE_TILE);
+			NeighborHeap[] neighbors = scanTile(gallery, probes, probeNorms, from, to, K, cosine);
+			for (int j = from; j < to; j++) {
+				result[j] = classify(gallery, neighbors[j - from]);
 			}
+		});
+		return result;
+	}
+
+	/**
+	 * Same as {@link #assignLabels(Gallery, float[], int, int, FloatMetric)}
+	 * with every probe scanned on the product-quantized codes, so each label
+	 * equals the one {@link #assignLabel(QuantizedGallery, Gallery, float[], int, FloatMetric, int)}
+	 * gives for that probe. The probes are spread over the common pool.
+	 */
+	public static String[] assignLabels(QuantizedGallery quantized, Gallery gallery, float[] probes, int count, int K,
+			FloatMetric metric, int rerank) {
+		int dimension = gallery.getDimension();
+		assert probes.length >= count * dimension : "probes shorter than count rows";
+		String[] result = new String[count];
+		IntStream.range(0, count).parallel().forEach(j -> {
+			float[] probe = Arrays.copyOfRange(probes, j * dimension, (j + 1) * dimension);
+			result[j] = assignLabel(quantized, gallery, probe, K, metric, rerank);
+		});
+		return result;
+	}
+
+	// top K of every probe in [from, to), one pass over the gallery
+	private static NeighborHeap[] scanTile(Gallery gallery, float[] probes, double[] probeNorms,
+			int from, int to, int K, boolean cosine) {
+		int size = gallery.size();
+		int dimension = gallery.getDimension();
+		float[] data = gallery.getData();
+		double[] galleryNorms = gallery.getSquaredNorms();
 
-			if (neighbors[maxIndex].distance > trainingSet[i].distance)
-				neighbors[maxIndex] = trainingSet[i];
+		NeighborHeap[] neighbors = new NeighborHeap[to - from];
+		for (int j = 0; j < neighbors.length; j++) {
+			neighbors[j] = new NeighborHeap(Math.min(K, size));
+		}
+
+		for (int i = 0; i < size; i++) {
+			int row = i * dimension;
+			for (int j = from; j < to; j++) {
+				double dot = Vectors.dot(data, row, probes, j * dimension, dimension);
+				double distance = cosine
+						? (float) Math.min(Float.MAX_VALUE, CosineDissimilarity.fromDot(dot, galleryNorms[i], probeNorms[j]))
+						: EuclideanDistance.fromDot(dot, galleryNorms[i], probeNorms[j]);
+				neighbors[j - from].offer(i, distance);
+			}
 		}
 		return neighbors;
 	}
 
+	// get the class label of the neighbors, weighted by 1 / distance
+	static String classify(Gallery gallery, NeighborHeap neighbors) {
+		int count = neighbors.size();
+		double maxSimilarity = 0;
+		int returnLabel = -1;
+		for (int i = 0; i < count; i++) {
+			int labelId = gallery.getLabelId(neighbors.id(i));
+			boolean seen = false;
+			for (int j = 0; j < i; j++) {
+				if (gallery.getLabelId(neighbors.id(j)) == labelId) {
+					seen = true;
+					break;
+				}
+			}
+			if (seen)
+				continue;
+
+			double value = 0;
+			for (int j = i; j < count; j++) {
+				if (gallery.getLabelId(neighbors.id(j)) == labelId)
+					value += 1 / neighbors.distance(j);
+			}
+			if (value > maxSimilarity) {
+				maxSimilarity = value;
+				returnLabel = labelId;
+			}
+		}
+
+		return returnLabel < 0 ? "" : gallery.getLabelName(returnLabel);
+	}
+
 	// get the class label by using neighbors
-	static String classify(ProjectedTrainingMatrix[] neighbors) {
+	static String classify(ProjectedTrainingMatrix[] trainingSet, NeighborHeap neighbors) {
 		HashMap<String, Double> map = new HashMap<String, Double>();
-		int num = neighbors.length;
+		int num = neighbors.size();
 
 		for (int index = 0; index < num; index++) {
-			ProjectedTrainingMatrix temp = neighbors[index];
-			String key = temp.label;
+			String key = trainingSet[neighbors.id(index)].label;
+			double similarity = 1 / neighbors.distance(index);
 			if (!map.containsKey(key))
-				map.put(key, 1 / temp.distance);
+				map.put(key, similarity);
 			else {
 				double value = map.get(key);
-				value += 1 / temp.distance;
+				value += similarity;
 				map.put(key, value);
 			}
 		}
@@ -2,7 +2,7 @@ package com.github.wihoho.training;
 
 import com.github.wihoho.jama.Matrix;
 
-public class L1Distance implements Metric {
+public class L1Distance implements Metric, FloatMetric {
 
 	@Override
 	public double getDistance(Matrix a, Matrix b) {
@@ -16,4 +16,14 @@ public class L1Distance implements Metric {
 		return sum;
 	}
 
+	@Override
+	public float getDistance(float[] a, float[] b, int bOffset) {
+		float sum = 0;
+		for (int i = 0; i < a.length; i++) {
+			sum += Math.abs(a[i] - b[bOffset + i]);
+		}
+
+		return sum;
+	}
+
 }
@@ -1,9 +1,10 @@
 package com.github.wihoho.training;
 
-import com.github.wihoho.jama.EigenvalueDecomposition;
+import com.github.wihoho.jama.GeneralizedEigenvalueDecomposition;
 import com.github.wihoho.jama.Matrix;
 
 import java.util.*;
+import java.util.stream.IntStream;
 
 
 public class LDA extends FeatureExtraction {
@@ -19,52 +20,68 @@ public class LDA extends FeatureExtraction {
         // process in PCA
         PCA pca = new PCA(trainingSet, labels, n - c);
 
-        // classify
-        Matrix meanTotal = new Matrix(n - c, 1);
-
-        HashMap<String, ArrayList<Matrix>> map = new HashMap<String, ArrayList<Matrix>>();
+        // classify, keeping the classes in order of first appearance
+        int p = n - c;
         ArrayList<ProjectedTrainingMatrix> pcaTrain = pca.getProjectedTrainingSet();
+        LinkedHashMap<String, ArrayList<Integer>> map = new LinkedHashMap<String, ArrayList<Integer>>();
+        double[] meanTotal = new double[p];
         for (int i = 0; i < pcaTrain.size(); i++) {
             String key = pcaTrain.get(i).label;
-            meanTotal.plusEquals(pcaTrain.get(i).matrix);
-            if (!map.containsKey(key)) {
-                ArrayList<Matrix> temp = new ArrayList<Matrix>();
-                temp.add(pcaTrain.get(i).matrix);
-                map.put(key, temp);
-            } else {
-                ArrayList<Matrix> temp = map.get(key);
-                temp.add(pcaTrain.get(i).matrix);
+            ArrayList<Integer> temp = map.get(key);
+            if (temp == null) {
+                temp = new ArrayList<Integer>();
                 map.put(key, temp);
             }
+            temp.add(i);
+
+            double[] x = pcaTrain.get(i).matrix.getRowPackedArray();
+            for (int j = 0; j < p; j++)
+                meanTotal[j] += x[j];
         }
-        meanTotal.times((double) 1 / n);
-
-        // calculate Sw, Sb
-        Matrix Sw = new Matrix(n - c, n - c);
-        Matrix Sb = new Matrix(n - c, n - c);
-
-        tempSet = map.keySet();
-        Iterator<String> it = tempSet.iterator();
-        while (it.hasNext()) {
-            String s = (String) it.next();
-            ArrayList<Matrix> matrixWithinThatClass = map.get(s);
-            Matrix meanOfCurrentClass = getMean(matrixWithinThatClass);
-            for (int i = 0; i < matrixWithinThatClass.size(); i++) {
-                Matrix temp1 = matrixWithinThatClass.get(i).minus(
-                        meanOfCurrentClass);
-                temp1 = temp1.times(temp1.transpose());
-                Sw.plusEquals(temp1);
+        for (int j = 0; j < p; j++)
+            meanTotal[j] /= n;
+
+        // Sw = C'C with C the samples centred on their class means, one row
+        // each, and Sb = M'M with row k of M = sqrt(n_k) (mean_k - meanTotal).
+        // The classes fill their own rows in parallel, then each scatter is
+        // a single blocked symmetric product that sums over every class.
+        ArrayList<ArrayList<Integer>> classes = new ArrayList<ArrayList<Integer>>(map.values());
+        int[] firstRow = new int[classes.size() + 1];
+        for (int k = 0; k < classes.size(); k++)
+            firstRow[k + 1] = firstRow[k] + classes.get(k).size();
+
+        Matrix centred = new Matrix(n, p);
+        Matrix between = new Matrix(classes.size(), p);
+        double[] centredRows = centred.getRowPackedArray();
+        double[] betweenRows = between.getRowPackedArray();
+        IntStream.range(0, classes.size()).parallel().forEach(k -> {
+            ArrayList<Integer> members = classes.get(k);
+            double[] meanOfCurrentClass = new double[p];
+            for (int index : members) {
+                double[] x = pcaTrain.get(index).matrix.getRowPackedArray();
+                for (int j = 0; j < p; j++)
+                    meanOfCurrentClass[j] += x[j];
+            }
+            for (int j = 0; j < p; j++)
+                meanOfCurrentClass[j] /= members.size();
+
+            for (int i = 0; i < members.size(); i++) {
+                double[] x = pcaTrain.get(members.get(i)).matrix.getRowPackedArray();
+                int row = (firstRow[k] + i) * p;
+                for (int j = 0; j < p; j++)
+                    centredRows[row + j] = x[j] - meanOfCurrentClass[j];
             }
 
-            Matrix temp = meanOfCurrentClass.minus(meanTotal);
-            temp = temp.times(temp.transpose()).times(
-                    matrixWithinThatClass.size());
-            Sb.plusEquals(temp);
-        }
+            double weight = Math.sqrt(members.size());
+            for (int j = 0; j < p; j++)
+                betweenRows[k * p + j] = weight * (meanOfCurrentClass[j] - meanTotal[j]);
+        });
+
+        Matrix Sw = centred.transposeTimes(centred);
+        Matrix Sb = between.transposeTimes(between);
 
-        // calculate the eigenvalues and vectors of Sw^-1 * Sb
-        Matrix targetForEigen = Sw.inverse().times(Sb);
-        EigenvalueDecomposition feature = targetForEigen.eig();
+        // calculate the eigenvalues and vectors of Sw^-1 * Sb, i.e. Sb v = lambda Sw v
+        GeneralizedEigenvalueDecomposition feature = new GeneralizedEigenvalueDecomposition(Sb, Sw);
 
         double[] d = feature.getd();
         assert d.length >= c - 1 : "Ensure that the number of eigenvalues is larger than c - 1";
@@ -80,8 +97,7 @@ public class LDA extends FeatureExtraction {
         this.projectedTrainingSet = new ArrayList<ProjectedTrainingMatrix>();
         for (int i = 0; i < trainingSet.size(); i++) {
             ProjectedTrainingMatrix ptm = new ProjectedTrainingMatrix(this.W
-                    .transpose()
-                    .times(trainingSet.get(i).minus(pca.meanMatrix)),
+                    .transposeTimes(trainingSet.get(i).minus(pca.meanMatrix)),
                     labels.get(i));
             this.projectedTrainingSet.add(ptm);
         }
@@ -122,22 +138,6 @@ public class LDA extends FeatureExtraction {
         return result;
     }
 
-    static Matrix getMean(ArrayList<Matrix> m) {
-        int num = m.size();
-        int row = m.get(0).getRowDimension();
-        int column = m.get(0).getColumnDimension();
-
-        assert column == 1 : "expected column does not equal to 1!";
-
-        Matrix mean = new Matrix(row, column);
-        for (int i = 0; i < num; i++) {
-            mean.plusEquals(m.get(i));
-        }
-
-        mean = mean.times((double) 1 / num);
-        return mean;
-    }
-
     @Override
     public Matrix getW() {
         return this.W;
@@ -1,12 +1,14 @@
 package com.github.wihoho.training;
 
-import com.github.wihoho.jama.EigenvalueDecomposition;
+import com.github.wihoho.jama.GeneralizedEigenvalueDecomposition;
 import com.github.wihoho.jama.Matrix;
+import com.github.wihoho.jama.SparseMatrix;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.stream.IntStream;
 
 
 public class LPP extends FeatureExtraction {
@@ -20,19 +22,18 @@ public class LPP extends FeatureExtraction {
         // process in PCA
         this.pca = new PCA(trainingSet, labels, numOfComponents);
 
-        //construct the nearest neighbor graph
-        Matrix S = constructNearestNeighborGraph(pca.projectedTrainingSet);
-        Matrix D = constructD(S);
-        Matrix L = D.minus(S);
+        //reconstruct the trainingSet into required X, stored transposed as Y = X'
+        Matrix Y = constructTrainingMatrix(pca.getProjectedTrainingSet());
 
-        //reconstruct the trainingSet into required X;
-        Matrix X = constructTrainingMatrix(pca.getProjectedTrainingSet());
-        Matrix XLXT = X.times(L).times(X.transpose());
-        Matrix XDXT = X.times(D).times(X.transpose());
+        //construct the nearest neighbor graph, L = D - S
+        SparseMatrix S = constructNearestNeighborGraph(Y);
+        double[] D = S.rowSums();
 
-        //calculate the eignevalues and eigenvectors of (XDXT)^-1 * (XLXT)
-        Matrix targetForEigen = XDXT.inverse().times(XLXT);
-        EigenvalueDecomposition feature = targetForEigen.eig();
+        Matrix XDXT = Y.transposeTimes(scaleRows(Y, D));
+        Matrix XLXT = XDXT.minus(Y.transposeTimes(S.times(Y)));
+
+        //calculate the eignevalues and eigenvectors of (XDXT)^-1 * (XLXT), i.e. XLXT v = lambda XDXT v
+        GeneralizedEigenvalueDecomposition feature = new GeneralizedEigenvalueDecomposition(XLXT, XDXT);
 
         double[] d = feature.getd();
         assert d.length >= c - 1 : "Ensure that the number of eigenvalues is larger than c - 1";
@@ -46,65 +47,109 @@ public class LPP extends FeatureExtraction {
         //Construct projectedTrainingMatrix
         this.projectedTrainingSet = new ArrayList<ProjectedTrainingMatrix>();
         for (int i = 0; i < trainingSet.size(); i++) {
-            ProjectedTrainingMatrix ptm = new ProjectedTrainingMatrix(this.W.transpose().times(trainingSet.get(i).minus(pca.meanMatrix)), labels.get(i));
+            ProjectedTrainingMatrix ptm = new ProjectedTrainingMatrix(this.W.transposeTimes(trainingSet.get(i).minus(pca.meanMatrix)), labels.get(i));
             this.projectedTrainingSet.add(ptm);
         }
         this.meanMatrix = pca.meanMatrix;
     }
 
-    private Matrix constructNearestNeighborGraph(ArrayList<ProjectedTrainingMatrix> input) {
-        int size = input.size();
-        Matrix S = new Matrix(size, size);
+    // the sample itself is among its own nearest neighbours and is skipped
+    private static final int NEIGHBORS = 3;
 
-        Metric Euclidean = new EuclideanDistance();
-        ProjectedTrainingMatrix[] trainArray = input.toArray(new ProjectedTrainingMatrix[input.size()]);
+    // symmetric 0/1 adjacency of the kNN graph over the rows of Y
+    private SparseMatrix constructNearestNeighborGraph(Matrix Y) {
+        int size = Y.getRowDimension();
+        int dimension = Y.getColumnDimension();
+        double[] y = Y.getRowPackedArray();
 
-        for (int i = 0; i < size; i++) {
-            ProjectedTrainingMatrix[] neighbors = KNN.findKNN(trainArray, input.get(i).matrix, 3, Euclidean);
-            for (int j = 0; j < neighbors.length; j++) {
-                if (!neighbors[j].equals(input.get(i))) {
-//					double distance = Euclidean.getDistance(neighbors[j].matrix, input.get(i).matrix);
-//					double weight = Math.exp(0-distance*distance / 2);
-                    int index = input.indexOf(neighbors[j]);
-                    S.set(i, index, 1);
-                    S.set(index, i, 1);
+        int[][] neighbors = new int[size][];
+        IntStream.range(0, size).parallel().forEach(i -> {
+            NeighborHeap heap = new NeighborHeap(Math.min(NEIGHBORS, size));
+            for (int j = 0; j < size; j++) {
+                // squared Euclidean distance, ranked the same as the distance
+                double sum = 0;
+                for (int c = 0; c < dimension; c++) {
+                    double diff = y[i * dimension + c] - y[j * dimension + c];
+                    sum += diff * diff;
                 }
+                heap.offer(j, sum);
             }
 
-//			for(int j = 0; j < size; j ++){
-//				if( i != j && input.get(i).label.equals(input.get(j).label)){
-//					S.set(i, j, 1);
-//				}
-//			}
-        }
-        return S;
-    }
+            int[] row = new int[heap.size()];
+            int count = 0;
+            for (int t = 0; t < heap.size(); t++) {
+                if (heap.id(t) != i)
+                    row[count++] = heap.id(t);
+            }
+            neighbors[i] = Arrays.copyOf(row, count);
+        });
 
-    private Matrix constructD(Matrix S) {
-        int size = S.getRowDimension();
-        Matrix D = new Matrix(size, size);
+        // S(i, j) = S(j, i) = 1 for every neighbour j of i
+        int[][] rows = new int[size][];
+        int[] counts = new int[size];
+        for (int i = 0; i < size; i++) {
+            for (int j : neighbors[i]) {
+                counts[i]++;
+                counts[j]++;
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            rows[i] = new int[counts[i]];
+            counts[i] = 0;
+        }
+        for (int i = 0; i < size; i++) {
+            for (int j : neighbors[i]) {
+                rows[i][counts[i]++] = j;
+                rows[j][counts[j]++] = i;
+            }
+        }
 
+        int[] rowPointers = new int[size + 1];
         for (int i = 0; i < size; i++) {
-            double temp = 0;
-            for (int j = 0; j < size; j++) {
-                temp += S.get(j, i);
+            Arrays.sort(rows[i]);
+            int unique = 0;
+            for (int t = 0; t < rows[i].length; t++) {
+                if (t == 0 || rows[i][t] != rows[i][t - 1])
+                    rows[i][unique++] = rows[i][t];
             }
-            D.set(i, i, temp);
+            counts[i] = unique;
+            rowPointers[i + 1] = rowPointers[i] + unique;
+        }
+        int[] columnIndexes = new int[rowPointers[size]];
+        for (int i = 0; i < size; i++) {
+            System.arraycopy(rows[i], 0, columnIndexes, rowPointers[i], counts[i]);
         }
+        double[] values = new double[columnIndexes.length];
+        Arrays.fill(values, 1);
 
-        return D;
+        return new SparseMatrix(size, size, rowPointers, columnIndexes, values);
+    }
+
+    // diag(d) * Y
+    private static Matrix scaleRows(Matrix Y, double[] d) {
+        int column = Y.getColumnDimension();
+        Matrix result = Y.copy();
+        double[] r = result.getRowPackedArray();
+        for (int i = 0; i < d.length; i++) {
+            for (int j = 0; j < column; j++) {
+                r[i * column + j] *= d[i];
+            }
+        }
+        return result;
     }
 
+    // one projected sample per row
     private Matrix constructTrainingMatrix(ArrayList<ProjectedTrainingMatrix> input) {
-        int row = input.get(0).matrix.getRowDimension();
-        int column = input.size();
-        Matrix X = new Matrix(row, column);
+        int row = input.size();
+        int column = input.get(0).matrix.getRowDimension();
+        Matrix Y = new Matrix(row, column);
+        double[] y = Y.getRowPackedArray();
 
-        for (int i = 0; i < column; i++) {
-            X.setMatrix(0, row - 1, i, i, input.get(i).matrix);
+        for (int i = 0; i < row; i++) {
+            System.arraycopy(input.get(i).matrix.getRowPackedArray(), 0, y, i * column, column);
         }
 
-        return X;
+        return Y;
     }
 
     private int[] getIndexesOfKEigenvalues(double[] d, int k) {
@@ -158,7 +203,7 @@ public class LPP extends FeatureExtraction {
 
     @Override
     public int addFace(Matrix face, String label) {
-        ProjectedTrainingMatrix projectedTrainingMatrix = new ProjectedTrainingMatrix(this.W.transpose().times(face.minus(pca.meanMatrix)), label);
+        ProjectedTrainingMatrix projectedTrainingMatrix = new ProjectedTrainingMatrix(this.W.transposeTimes(face.minus(pca.meanMatrix)), label);
         this.projectedTrainingSet.add(projectedTrainingMatrix);
         return this.projectedTrainingSet.size() - 1;
     }
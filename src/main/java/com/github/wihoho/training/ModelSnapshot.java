@@ -0,0 +1,200 @@
+package com.github.wihoho.training;
+
+import com.github.wihoho.constant.FeatureType;
+import com.github.wihoho.jama.Matrix;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/**
+ * Binary snapshot of a trained model: the basis W, the mean face, the
+ * gallery templates and the labels. Restarting a service from a snapshot
+ * skips reading the images and the eigendecomposition.
+ *
+ * Layout, little-endian, every array starting on an 8 byte boundary:
+ * <pre>
+ * int    magic "FRMS", version, feature type ordinal, reserved
+ * int    d (image size), k (components), n (gallery size), label count
+ * double W[d * k], packed by rows
+ * double mean[d]
+ * float  gallery[n * k], packed by rows
+ * int    labelIds[n]
+ * then for every label: int byte length, UTF-8 bytes
+ * </pre>
+ *
+ * A snapshot is assembled in a heap buffer and written to a temporary
+ * file that is moved into place, so a reader never sees half a snapshot.
+ * Reading copies the file into a heap buffer too: no mapping outlives the
+ * call, which would keep the file from being replaced on Windows.
+ */
+public final class ModelSnapshot {
+	static final int MAGIC = 0x534d5246; // "FRMS" read as little-endian
+	static final int VERSION = 1;
+	private static final int HEADER_BYTES = 32;
+
+	private final FeatureType featureType;
+	private final ProjectionModel featureExtraction;
+	private final Gallery gallery;
+
+	private ModelSnapshot(FeatureType featureType, ProjectionModel featureExtraction, Gallery gallery) {
+		this.featureType = featureType;
+		this.featureExtraction = featureExtraction;
+		this.gallery = gallery;
+	}
+
+	public FeatureType getFeatureType() {
+		return featureType;
+	}
+
+	public FeatureExtraction getFeatureExtraction() {
+		return featureExtraction;
+	}
+
+	public Gallery getGallery() {
+		return gallery;
+	}
+
+	public static void write(Path path, FeatureType featureType, FeatureExtraction featureExtraction,
+			Gallery gallery) throws IOException {
+		write(path, featureType, featureExtraction.getW(), featureExtraction.getMeanMatrix(), gallery);
+	}
+
+	public static void write(Path path, FeatureType featureType, Matrix W, Matrix meanMatrix,
+			Gallery gallery) throws IOException {
+		int d = W.getRowDimension();
+		int k = W.getColumnDimension();
+		int n = gallery.size();
+		if (gallery.getDimension() != k)
+			throw new IllegalArgumentException("gallery dimension does not match the basis");
+
+		int labelCount = gallery.getLabelCount();
+		byte[][] labels = new byte[labelCount][];
+		long labelBytes = 0;
+		for (int i = 0; i < labelCount; i++) {
+			labels[i] = gallery.getLabelName(i).getBytes(StandardCharsets.UTF_8);
+			labelBytes += 4 + labels[i].length;
+		}
+
+		long size = HEADER_BYTES + align(8L * d * k) + align(8L * d) + align(4L * n * k) + align(4L * n)
+				+ labelBytes;
+		if (size > Integer.MAX_VALUE)
+			throw new IOException("model snapshot larger than 2GB");
+
+		Path parent = path.toAbsolutePath().getParent();
+		Path temp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING)) {
+				ByteBuffer buffer = ByteBuffer.allocate((int) size);
+				buffer.order(ByteOrder.LITTLE_ENDIAN);
+				buffer.putInt(MAGIC).putInt(VERSION).putInt(featureType.ordinal()).putInt(0);
+				buffer.putInt(d).putInt(k).putInt(n).putInt(labelCount);
+
+				buffer.asDoubleBuffer().put(W.getRowPackedArray(), 0, d * k);
+				skip(buffer, 8L * d * k);
+				buffer.asDoubleBuffer().put(meanMatrix.getRowPackedArray(), 0, d);
+				skip(buffer, 8L * d);
+				buffer.asFloatBuffer().put(gallery.getData(), 0, n * k);
+				skip(buffer, 4L * n * k);
+				int[] labelIds = new int[n];
+				for (int i = 0; i < n; i++) {
+					labelIds[i] = gallery.getLabelId(i);
+				}
+				buffer.asIntBuffer().put(labelIds);
+				skip(buffer, 4L * n);
+				for (byte[] label : labels) {
+					buffer.putInt(label.length).put(label);
+				}
+				buffer.flip();
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+				channel.force(true);
+			}
+			Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	public static ModelSnapshot read(Path path) throws IOException {
+		ByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < HEADER_BYTES || size > Integer.MAX_VALUE)
+				throw new IOException("not a model snapshot: " + path);
+			buffer = ByteBuffer.allocate((int) size);
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer) < 0)
+					throw new IOException("model snapshot truncated while reading: " + path);
+			}
+		}
+		buffer.flip();
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+		if (buffer.getInt() != MAGIC)
+			throw new IOException("not a model snapshot: " + path);
+		int version = buffer.getInt();
+		if (version != VERSION)
+			throw new IOException("unsupported model snapshot version " + version + ": " + path);
+		int type = buffer.getInt();
+		buffer.getInt();
+		int d = buffer.getInt();
+		int k = buffer.getInt();
+		int n = buffer.getInt();
+		int labelCount = buffer.getInt();
+		if (type < 0 || type >= FeatureType.values().length || d < 0 || k < 0 || n < 0 || labelCount < 0
+				|| HEADER_BYTES + align(8L * d * k) + align(8L * d) + align(4L * n * k) + align(4L * n)
+						+ 4L * labelCount > buffer.limit())
+			throw new IOException("corrupt model snapshot: " + path);
+
+		try {
+			double[] w = new double[d * k];
+			buffer.asDoubleBuffer().get(w);
+			skip(buffer, 8L * d * k);
+			double[] mean = new double[d];
+			buffer.asDoubleBuffer().get(mean);
+			skip(buffer, 8L * d);
+			float[] data = new float[n * k];
+			buffer.asFloatBuffer().get(data);
+			skip(buffer, 4L * n * k);
+			int[] labelIds = new int[n];
+			buffer.asIntBuffer().get(labelIds);
+			skip(buffer, 4L * n);
+
+			ArrayList<String> labels = new ArrayList<String>(labelCount);
+			for (int i = 0; i < labelCount; i++) {
+				byte[] label = new byte[buffer.getInt()];
+				buffer.get(label);
+				labels.add(new String(label, StandardCharsets.UTF_8));
+			}
+			for (int labelId : labelIds) {
+				if (labelId < 0 || labelId >= labelCount)
+					throw new IOException("corrupt model snapshot: " + path);
+			}
+
+			Gallery gallery = new Gallery(k, data, labelIds, labels, n);
+			ProjectionModel model = new ProjectionModel(new Matrix(w, d, k), new Matrix(mean, d, 1), gallery);
+			return new ModelSnapshot(FeatureType.values()[type], model, gallery);
+		} catch (RuntimeException e) {
+			// buffer underflow or a negative label length
+			throw new IOException("corrupt model snapshot: " + path, e);
+		}
+	}
+
+	private static long align(long bytes) {
+		return (bytes + 7) & ~7L;
+	}
+
+	private static void skip(ByteBuffer buffer, long bytes) {
+		buffer.position((int) (buffer.position() + align(bytes)));
+	}
+}
@@ -0,0 +1,84 @@
+package com.github.wihoho.training;
+
+/**
+ * Bounded max-heap of (index, distance) pairs holding the K nearest
+ * candidates seen so far. The root is the worst kept neighbour, so a new
+ * candidate is compared against one value and replaces it in O(log K).
+ *
+ * Each search owns its heap, which keeps KNN re-entrant.
+ */
+final class NeighborHeap {
+	private final int[] ids;
+	private final double[] distances;
+	private int size;
+
+	NeighborHeap(int capacity) {
+		this.ids = new int[capacity];
+		this.distances = new double[capacity];
+	}
+
+	int size() {
+		return size;
+	}
+
+	int id(int i) {
+		return ids[i];
+	}
+
+	double distance(int i) {
+		return distances[i];
+	}
+
+	void offer(int id, double distance) {
+		if (size < ids.length) {
+			int i = size++;
+			while (i > 0) {
+				int parent = (i - 1) >>> 1;
+				if (distances[parent] >= distance)
+					break;
+				ids[i] = ids[parent];
+				distances[i] = distances[parent];
+				i = parent;
+			}
+			ids[i] = id;
+			distances[i] = distance;
+		} else if (size > 0 && distance < distances[0]) {
+			siftDown(0, id, distance, size);
+		}
+	}
+
+	private void siftDown(int i, int id, double distance, int end) {
+		int half = end >>> 1;
+		while (i < half) {
+			int child = 2 * i + 1;
+			int right = child + 1;
+			if (right < end && distances[right] > distances[child])
+				child = right;
+			if (distance >= distances[child])
+				break;
+			ids[i] = ids[child];
+			distances[i] = distances[child];
+			i = child;
+		}
+		ids[i] = id;
+		distances[i] = distance;
+	}
+
+	// merge the kept neighbours of another heap into this one
+	void addAll(NeighborHeap other) {
+		for (int i = 0; i < other.size; i++)
+			offer(other.ids[i], other.distances[i]);
+	}
+
+	// order the kept neighbours by increasing distance; the heap is no
+	// longer valid for offer afterwards
+	void sort() {
+		for (int end = size - 1; end > 0; end--) {
+			int id = ids[end];
+			double distance = distances[end];
+			ids[end] = ids[0];
+			distances[end] = distances[0];
+			siftDown(0, id, distance, end);
+		}
+	}
+}
@@ -1,7 +1,9 @@
 package com.github.wihoho.training;
 
+import com.github.wihoho.constant.EigenSolverType;
 import com.github.wihoho.jama.EigenvalueDecomposition;
 import com.github.wihoho.jama.Matrix;
+import com.github.wihoho.jama.TruncatedEigenvalueDecomposition;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -9,6 +11,12 @@ import java.util.Arrays;
 
 public class PCA extends FeatureExtraction {
 
+	private EigenSolverType eigenSolver;
+	// eigenvalues of the scatter matrix for the columns of W, and the number
+	// of faces they summarize; both are kept up to date by addFace
+	private double[] eigenValues;
+	private int sampleCount;
+
 	/**
 	 * 
 	 * @param trainingSet Matrix是一维的列向量
@@ -18,6 +26,19 @@ public class PCA extends FeatureExtraction {
 	 */	
 	public PCA(ArrayList<Matrix> trainingSet, ArrayList<String> labels,
 			   int numOfComponents) throws Exception {
+		this(trainingSet, labels, numOfComponents, EigenSolverType.FULL);
+	}
+
+	/**
+	 * 
+	 * @param trainingSet Matrix是一维的列向量
+	 * @param labels
+	 * @param numOfComponents
+	 * @param eigenSolver FULL or RANDOMIZED top-K decomposition of X'X
+	 * @throws Exception
+	 */
+	public PCA(ArrayList<Matrix> trainingSet, ArrayList<String> labels,
+			   int numOfComponents, EigenSolverType eigenSolver) throws Exception {
 		
 		if(numOfComponents >= trainingSet.size()){
 			throw new Exception("the expected dimensions could not be achieved!");
@@ -26,6 +47,8 @@ public class PCA extends FeatureExtraction {
 		this.trainingSet = trainingSet;
 		this.labels = labels;
 		this.numOfComponents = numOfComponents;
+		this.eigenSolver = eigenSolver;
+		this.sampleCount = trainingSet.size();
 
 		this.meanMatrix = getMean(this.trainingSet);
 		this.W = getFeature(this.trainingSet, this.numOfComponents);
@@ -34,12 +57,93 @@ public class PCA extends FeatureExtraction {
 		this.projectedTrainingSet = new ArrayList<ProjectedTrainingMatrix>();
 		for (int i = 0; i < trainingSet.size(); i++) {
 			ProjectedTrainingMatrix ptm = new ProjectedTrainingMatrix(this.W
-					.transpose().times(trainingSet.get(i).minus(meanMatrix)),
+					.transposeTimes(trainingSet.get(i).minus(meanMatrix)),
 					labels.get(i));
 			this.projectedTrainingSet.add(ptm);
 		}
 	}
 
+	/**
+	 * Streaming PCA: the faces are read twice, chunk by chunk, and never
+	 * held together in memory. The first pass accumulates the mean and the
+	 * d by d scatter matrix with a {@link CovarianceAccumulator}, whose top
+	 * eigenvectors are the basis W; the second pass projects the faces.
+	 * Memory is d * d doubles plus one chunk, so this suits training sets
+	 * larger than the heap when the image size d is moderate. It does not
+	 * scale to full resolution faces: at d = 10304 (112 by 92) the scatter
+	 * alone is about 850 MB, so reduce the images first, or use the
+	 * in-memory constructor, which works on the n by n Gram matrix.
+	 *
+	 * @param faces an Iterable that can be iterated twice, e.g. one reading from disk
+	 * @param labels label of each face, in iteration order
+	 * @param numOfComponents
+	 * @param chunkSize number of faces merged into the scatter at a time
+	 * @throws Exception
+	 */
+	public PCA(Iterable<Matrix> faces, ArrayList<String> labels,
+			   int numOfComponents, int chunkSize) throws Exception {
+		CovarianceAccumulator accumulator = new CovarianceAccumulator(chunkSize);
+		for (Matrix face : faces) {
+			accumulator.add(face);
+		}
+		Matrix scatter = accumulator.scatterMatrix();
+		int n = (int) accumulator.getCount();
+
+		if (n != labels.size()) {
+			throw new Exception("the number of faces and labels differ!");
+		}
+		if (numOfComponents >= n || numOfComponents > accumulator.getDimension()) {
+			throw new Exception("the expected dimensions could not be achieved!");
+		}
+
+		this.labels = labels;
+		this.numOfComponents = numOfComponents;
+		this.eigenSolver = EigenSolverType.RANDOMIZED;
+		this.sampleCount = n;
+		this.meanMatrix = accumulator.getMean();
+
+		// the eigenvectors of the scatter are already unit length, and its
+		// eigenvalues are those of X'X used by addFace
+		TruncatedEigenvalueDecomposition feature = new TruncatedEigenvalueDecomposition(scatter, numOfComponents);
+		this.W = feature.getV();
+		this.eigenValues = feature.getd().clone();
+
+		// second pass: project a chunk at a time, C * W holds one projection per row
+		int d = this.W.getRowDimension();
+		double[] mean = this.meanMatrix.getRowPackedArray();
+		double[] chunk = new double[chunkSize * d];
+		this.projectedTrainingSet = new ArrayList<ProjectedTrainingMatrix>(n);
+		int count = 0;
+		for (Matrix face : faces) {
+			if (count == n) {
+				throw new Exception("faces changed between the two passes!");
+			}
+			double[] values = face.getRowPackedArray();
+			int row = count % chunkSize;
+			for (int j = 0; j < d; j++) {
+				chunk[row * d + j] = values[j] - mean[j];
+			}
+			count++;
+			if (row == chunkSize - 1 || count == n) {
+				projectChunk(chunk, row + 1, d, count - row - 1);
+			}
+		}
+		if (count != n) {
+			throw new Exception("faces changed between the two passes!");
+		}
+	}
+
+	private void projectChunk(double[] chunk, int rows, int d, int first) {
+		int k = this.W.getColumnDimension();
+		Matrix C = new Matrix(rows * d == chunk.length ? chunk : Arrays.copyOf(chunk, rows * d), rows, d);
+		double[] projections = C.times(this.W).getRowPackedArray();
+		for (int i = 0; i < rows; i++) {
+			this.projectedTrainingSet.add(new ProjectedTrainingMatrix(
+					new Matrix(Arrays.copyOfRange(projections, i * k, (i + 1) * k), k, 1),
+					this.labels.get(first + i)));
+		}
+	}
+
 	// extract features, namely W
 	private Matrix getFeature(ArrayList<Matrix> input, int K) {
 		int i, j;
@@ -53,17 +157,27 @@ public class PCA extends FeatureExtraction {
 		}
 
 		// get eigenvalues and eigenvectors
-		Matrix XT = X.transpose();
-		Matrix XTX = XT.times(X);
-		EigenvalueDecomposition feature = XTX.eig();
-		double[] d = feature.getd();
-
-		assert d.length >= K : "number of eigenvalues is less than K";
-		int[] indexes = this.getIndexesOfKEigenvalues(d, K);
-
-		Matrix eigenVectors = X.times(feature.getV());
-		Matrix selectedEigenVectors = eigenVectors.getMatrix(0,
-				eigenVectors.getRowDimension() - 1, indexes);
+		Matrix selectedEigenVectors;
+		if (eigenSolver == EigenSolverType.RANDOMIZED) {
+			// only the top K eigenvectors of X'X, already in descending order
+			TruncatedEigenvalueDecomposition feature = TruncatedEigenvalueDecomposition.gram(X, K);
+			selectedEigenVectors = X.times(feature.getV());
+			this.eigenValues = feature.getd().clone();
+		} else {
+			Matrix XTX = X.transposeTimes(X);
+			EigenvalueDecomposition feature = XTX.eig();
+			double[] d = feature.getd();
+
+			assert d.length >= K : "number of eigenvalues is less than K";
+			int[] indexes = this.getIndexesOfKEigenvalues(d, K);
+
+			Matrix eigenVectors = X.times(feature.getV());
+			selectedEigenVectors = eigenVectors.getMatrix(0,
+					eigenVectors.getRowDimension() - 1, indexes);
+			this.eigenValues = new double[K];
+			for (i = 0; i < K; i++)
+				this.eigenValues[i] = d[indexes[i]];
+		}
 
 		// normalize the eigenvectors
 		row = selectedEigenVectors.getRowDimension();
@@ -147,10 +261,102 @@ public class PCA extends FeatureExtraction {
 		return meanMatrix;
 	}
 
+	/**
+	 * Incremental PCA: fold one more face into the mean and the basis
+	 * without retraining.
+	 *
+	 * Adding x to n faces with mean u changes the scatter matrix by the
+	 * rank-one term n/(n+1) * (x-u)(x-u)'. Restricted to the current basis
+	 * W plus the normalised residual of x, the updated scatter is the small
+	 * (k+1) by (k+1) matrix diag(eigenValues, 0) + n/(n+1) * [a; g][a; g]',
+	 * where a = W'(x-u) and g is the residual norm. Its top k eigenvectors
+	 * R rotate the extended basis into the new W, and the stored
+	 * projections are rotated and re-centred the same way, so the cost is
+	 * O(d*k^2 + n*k^2) instead of a full retrain.
+	 *
+	 * Like the scatter update itself, this is the usual incremental PCA
+	 * approximation: each stored projection is extended with 0 along the
+	 * residual direction of x before the rotation, while the stored faces
+	 * generally have a component there, so the updated gallery is close to
+	 * but not exactly W'(x_i - u) for the new W and mean. The original faces
+	 * are not revisited, and getTrainingSet() still returns only the faces
+	 * the basis was trained on. Retrain to get exact templates.
+	 *
+	 * @return index of the new face in the projected training set
+	 */
 	@Override
 	public int addFace(Matrix face, String label) {
-		// to be done
-		return 0;
+		int n = this.sampleCount;
+		int k = this.W.getColumnDimension();
+		int d = this.W.getRowDimension();
+		double c = (double) n / (n + 1);
+
+		Matrix diff = face.minus(this.meanMatrix);
+		double[] a = this.W.transposeTimes(diff).getRowPackedArray();
+		Matrix residual = diff.minus(this.W.times(new Matrix(a, k, 1)));
+		double[] r = residual.getRowPackedArray();
+		double gamma = 0, diffNorm = 0;
+		double[] x = diff.getRowPackedArray();
+		for (int i = 0; i < d; i++) {
+			gamma += r[i] * r[i];
+			diffNorm += x[i] * x[i];
+		}
+		gamma = Math.sqrt(gamma);
+		// only extend the basis when the face leaves the current subspace
+		boolean extend = gamma > 1e-10 * Math.sqrt(diffNorm);
+		int size = extend ? k + 1 : k;
+
+		double[] v = new double[size];
+		System.arraycopy(a, 0, v, 0, k);
+		if (extend)
+			v[k] = gamma;
+		Matrix small = new Matrix(size, size);
+		for (int i = 0; i < size; i++) {
+			for (int j = 0; j < size; j++)
+				small.set(i, j, c * v[i] * v[j]);
+			if (i < k)
+				small.set(i, i, small.get(i, i) + this.eigenValues[i]);
+		}
+
+		EigenvalueDecomposition feature = small.eig();
+		int[] indexes = getIndexesOfKEigenvalues(feature.getd(), k);
+		Matrix R = feature.getV().getMatrix(0, size - 1, indexes);
+		double[] newEigenValues = new double[k];
+		for (int i = 0; i < k; i++)
+			newEigenValues[i] = feature.getd()[indexes[i]];
+
+		Matrix basis = this.W;
+		if (extend) {
+			basis = new Matrix(d, k + 1);
+			basis.setMatrix(0, d - 1, 0, k - 1, this.W);
+			basis.setMatrix(0, d - 1, k, k, residual.times(1 / gamma));
+		}
+		Matrix newW = basis.times(R);
+
+		// W'(x - u') for the new face is exactly n/(n+1) * R'v; the stored
+		// projections, padded with 0 along the residual, move by R' and
+		// then by the shift of the mean
+		Matrix rv = R.transposeTimes(new Matrix(v, size, 1));
+		Matrix shift = rv.times(1.0 / (n + 1));
+		ArrayList<ProjectedTrainingMatrix> newProjectedTrainingSet = new ArrayList<ProjectedTrainingMatrix>(
+				this.projectedTrainingSet.size() + 1);
+		for (ProjectedTrainingMatrix ptm : this.projectedTrainingSet) {
+			Matrix old = ptm.matrix;
+			if (extend) {
+				old = new Matrix(size, 1);
+				old.setMatrix(0, k - 1, 0, 0, ptm.matrix);
+			}
+			newProjectedTrainingSet.add(new ProjectedTrainingMatrix(
+					R.transposeTimes(old).minusEquals(shift), ptm.label));
+		}
+		newProjectedTrainingSet.add(new ProjectedTrainingMatrix(rv.times(c), label));
+
+		this.meanMatrix = this.meanMatrix.plus(diff.times(1.0 / (n + 1)));
+		this.W = newW;
+		this.eigenValues = newEigenValues;
+		this.projectedTrainingSet = newProjectedTrainingSet;
+		this.sampleCount = n + 1;
+		return newProjectedTrainingSet.size() - 1;
 	}
 
 	public ArrayList<Matrix> getTrainingSet(){
@@ -0,0 +1,206 @@
+package com.github.wihoho.training;
+
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Product quantization codec for face templates. A template is cut into
+ * subspaces of consecutive components and each slice is replaced by the
+ * index of its nearest centroid in a per-subspace codebook of at most 256
+ * entries, so a template costs one byte per subspace.
+ *
+ * Distances to a probe are estimated without decoding: the distance from
+ * every probe slice to every centroid is tabulated once per probe, and the
+ * estimate for an entry is the sum of one table lookup per subspace
+ * (asymmetric distance computation).
+ */
+public class ProductQuantizer {
+	public static final int MAX_CENTROIDS = 256;
+	private static final int DEFAULT_ITERATIONS = 20;
+	private static final long DEFAULT_SEED = 42L;
+
+	// lookup tables a probe can be scored with
+	enum Table {
+		SQUARED_EUCLIDEAN, L1, DOT
+	}
+
+	private final int dimension;
+	private final int subspaces;
+	private final int centroids;
+	// subspace m covers components [offsets[m], offsets[m + 1])
+	private final int[] offsets;
+	// centroid c of subspace m starts at codebooks[m][c * width(m)]
+	private final float[][] codebooks;
+
+	private ProductQuantizer(int dimension, int subspaces, int centroids, int[] offsets, float[][] codebooks) {
+		this.dimension = dimension;
+		this.subspaces = subspaces;
+		this.centroids = centroids;
+		this.offsets = offsets;
+		this.codebooks = codebooks;
+	}
+
+	// Train codebooks on the templates of a gallery
+	public static ProductQuantizer train(Gallery gallery, int subspaces) {
+		return train(gallery.getData(), gallery.size(), gallery.getDimension(), subspaces, MAX_CENTROIDS,
+				DEFAULT_ITERATIONS, DEFAULT_SEED);
+	}
+
+	/**
+	 * Train codebooks with k-means on count rows of data.
+	 *
+	 * @param data rows of dimension values, row i starting at i * dimension
+	 * @param subspaces number of slices, clamped to the dimension
+	 * @param centroids codebook size per subspace, at most 256 and at most count
+	 * @param iterations Lloyd iterations per subspace
+	 * @param seed seed of the initial centroid choice
+	 */
+	public static ProductQuantizer train(float[] data, int count, int dimension, int subspaces, int centroids,
+			int iterations, long seed) {
+		if (count < 1 || dimension < 1 || subspaces < 1)
+			throw new IllegalArgumentException("nothing to quantize");
+		subspaces = Math.min(subspaces, dimension);
+		centroids = Math.max(1, Math.min(Math.min(centroids, MAX_CENTROIDS), count));
+
+		int[] offsets = new int[subspaces + 1];
+		for (int m = 0; m <= subspaces; m++) {
+			offsets[m] = (int) ((long) m * dimension / subspaces);
+		}
+
+		float[][] codebooks = new float[subspaces][];
+		Random random = new Random(seed);
+		for (int m = 0; m < subspaces; m++) {
+			codebooks[m] = kmeans(data, count, dimension, offsets[m], offsets[m + 1] - offsets[m], centroids,
+					iterations, random.nextLong());
+		}
+		return new ProductQuantizer(dimension, subspaces, centroids, offsets, codebooks);
+	}
+
+	// Lloyd's algorithm on one slice, seeded with distinct random rows
+	private static float[] kmeans(float[] data, int count, int dimension, int from, int width, int k,
+			int iterations, long seed) {
+		Random random = new Random(seed);
+		int[] rows = new int[count];
+		for (int i = 0; i < count; i++)
+			rows[i] = i;
+		float[] codebook = new float[k * width];
+		for (int c = 0; c < k; c++) {
+			int pick = c + random.nextInt(count - c);
+			int row = rows[pick];
+			rows[pick] = rows[c];
+			rows[c] = row;
+			System.arraycopy(data, row * dimension + from, codebook, c * width, width);
+		}
+
+		int[] assignment = new int[count];
+		for (int iteration = 0; iteration < iterations; iteration++) {
+			boolean[] changed = new boolean[1];
+			float[] current = codebook;
+			IntStream.range(0, count).parallel().forEach(i -> {
+				int nearest = nearest(current, k, width, data, i * dimension + from);
+				if (nearest != assignment[i]) {
+					assignment[i] = nearest;
+					changed[0] = true;
+				}
+			});
+			if (iteration > 0 && !changed[0])
+				break;
+
+			double[] sums = new double[k * width];
+			int[] sizes = new int[k];
+			for (int i = 0; i < count; i++) {
+				int c = assignment[i];
+				sizes[c]++;
+				for (int j = 0; j < width; j++)
+					sums[c * width + j] += data[i * dimension + from + j];
+			}
+			for (int c = 0; c < k; c++) {
+				if (sizes[c] == 0) {
+					// restart an empty cluster from a random row
+					System.arraycopy(data, random.nextInt(count) * dimension + from, codebook, c * width, width);
+					continue;
+				}
+				for (int j = 0; j < width; j++)
+					codebook[c * width + j] = (float) (sums[c * width + j] / sizes[c]);
+			}
+		}
+		return codebook;
+	}
+
+	private static int nearest(float[] codebook, int k, int width, float[] vector, int offset) {
+		int best = 0;
+		double bestDistance = Double.POSITIVE_INFINITY;
+		for (int c = 0; c < k; c++) {
+			double distance = 0;
+			for (int j = 0; j < width; j++) {
+				double diff = vector[offset + j] - codebook[c * width + j];
+				distance += diff * diff;
+			}
+			if (distance < bestDistance) {
+				bestDistance = distance;
+				best = c;
+			}
+		}
+		return best;
+	}
+
+	// codes of the template at vector[offset, offset + dimension) into codes[codeOffset, codeOffset + subspaces)
+	public void encode(float[] vector, int offset, byte[] codes, int codeOffset) {
+		for (int m = 0; m < subspaces; m++) {
+			int width = offsets[m + 1] - offsets[m];
+			codes[codeOffset + m] = (byte) nearest(codebooks[m], centroids, width, vector, offset + offsets[m]);
+		}
+	}
+
+	// approximate template for the given codes
+	public float[] decode(byte[] codes, int codeOffset) {
+		float[] vector = new float[dimension];
+		for (int m = 0; m < subspaces; m++) {
+			int width = offsets[m + 1] - offsets[m];
+			System.arraycopy(codebooks[m], (codes[codeOffset + m] & 0xff) * width, vector, offsets[m], width);
+		}
+		return vector;
+	}
+
+	// table[m * centroids + c] compares the probe slice m with centroid c
+	float[] table(float[] probe, Table kind) {
+		float[] table = new float[subspaces * centroids];
+		for (int m = 0; m < subspaces; m++) {
+			int from = offsets[m];
+			int width = offsets[m + 1] - from;
+			float[] codebook = codebooks[m];
+			for (int c = 0; c < centroids; c++) {
+				double value = 0;
+				for (int j = 0; j < width; j++) {
+					double x = probe[from + j];
+					double y = codebook[c * width + j];
+					switch (kind) {
+						case SQUARED_EUCLIDEAN:
+							value += (x - y) * (x - y);
+							break;
+						case L1:
+							value += Math.abs(x - y);
+							break;
+						default:
+							value += x * y;
+					}
+				}
+				table[m * centroids + c] = (float) value;
+			}
+		}
+		return table;
+	}
+
+	public int getDimension() {
+		return dimension;
+	}
+
+	// bytes per encoded template
+	public int getSubspaces() {
+		return subspaces;
+	}
+
+	public int getCentroids() {
+		return centroids;
+	}
+}
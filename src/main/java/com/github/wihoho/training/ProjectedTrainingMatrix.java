@@ -5,7 +5,6 @@ import com.github.wihoho.jama.Matrix;
 public class ProjectedTrainingMatrix {
 	Matrix matrix;
 	String label;
-	double distance = 0;
 
 	public ProjectedTrainingMatrix(Matrix m, String l) {
 		this.matrix = m;
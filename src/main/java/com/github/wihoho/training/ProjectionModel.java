@@ -0,0 +1,61 @@
+package com.github.wihoho.training;
+
+import com.github.wihoho.jama.Matrix;
+
+import java.util.ArrayList;
+
+/**
+ * A trained basis without its training data, as restored from a
+ * {@link ModelSnapshot}. Faces are projected into the saved basis; the
+ * basis itself never changes, so addFace only enrolls.
+ *
+ * The projected training set is rebuilt from the gallery the first time it
+ * is asked for, which keeps loading a large model cheap.
+ */
+public class ProjectionModel extends FeatureExtraction {
+	private final Gallery gallery;
+
+	ProjectionModel(Matrix W, Matrix meanMatrix, Gallery gallery) {
+		this.W = W;
+		this.meanMatrix = meanMatrix;
+		this.numOfComponents = W.getColumnDimension();
+		this.gallery = gallery;
+	}
+
+	@Override
+	public Matrix getW() {
+		return this.W;
+	}
+
+	@Override
+	public Matrix getMeanMatrix() {
+		return this.meanMatrix;
+	}
+
+	@Override
+	public synchronized ArrayList<ProjectedTrainingMatrix> getProjectedTrainingSet() {
+		if (this.projectedTrainingSet == null) {
+			int size = gallery.size();
+			int dimension = gallery.getDimension();
+			float[] data = gallery.getData();
+			this.projectedTrainingSet = new ArrayList<ProjectedTrainingMatrix>(size);
+			for (int i = 0; i < size; i++) {
+				double[] values = new double[dimension];
+				for (int j = 0; j < dimension; j++) {
+					values[j] = data[i * dimension + j];
+				}
+				this.projectedTrainingSet.add(new ProjectedTrainingMatrix(
+						new Matrix(values, dimension, 1), gallery.getLabel(i)));
+			}
+		}
+		return this.projectedTrainingSet;
+	}
+
+	@Override
+	public synchronized int addFace(Matrix face, String label) {
+		ArrayList<ProjectedTrainingMatrix> projected = getProjectedTrainingSet();
+		projected.add(new ProjectedTrainingMatrix(
+				this.W.transposeTimes(face.minus(this.meanMatrix)), label));
+		return projected.size() - 1;
+	}
+}
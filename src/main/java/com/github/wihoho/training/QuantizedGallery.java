@@ -0,0 +1,93 @@
+package com.github.wihoho.training;
+
+import java.util.Arrays;
+
+/**
+ * Product-quantized copy of a {@link Gallery}: one byte per subspace for
+ * every entry, in the same order as the gallery. A scan sums table lookups
+ * instead of touching the float templates, and its best candidates are
+ * re-scored exactly against the gallery (see KNN).
+ *
+ * Supports the Euclidean, L1 and cosine metrics. Like Gallery, one thread
+ * may add while others read: growth swaps the codes through a volatile
+ * write, and readers load them after size.
+ */
+public class QuantizedGallery {
+	private final ProductQuantizer quantizer;
+	private final int subspaces;
+	private volatile byte[] codes;
+	private volatile int size;
+
+	public QuantizedGallery(ProductQuantizer quantizer, Gallery gallery) {
+		if (quantizer.getDimension() != gallery.getDimension())
+			throw new IllegalArgumentException("quantizer does not match the gallery dimension");
+		this.quantizer = quantizer;
+		this.subspaces = quantizer.getSubspaces();
+		int count = gallery.size();
+		this.codes = new byte[Math.max(1, count) * subspaces];
+		float[] data = gallery.getData();
+		for (int i = 0; i < count; i++) {
+			quantizer.encode(data, i * gallery.getDimension(), codes, i * subspaces);
+		}
+		this.size = count;
+	}
+
+	public static boolean supports(FloatMetric metric) {
+		return metric instanceof EuclideanDistance || metric instanceof L1Distance
+				|| metric instanceof CosineDissimilarity;
+	}
+
+	// encode the template at vector[offset, offset + dimension) as the next entry
+	public int add(float[] vector, int offset) {
+		int index = size;
+		byte[] codes = this.codes;
+		if ((index + 1) * subspaces > codes.length) {
+			codes = Arrays.copyOf(codes, Math.max((index + 1) * subspaces, codes.length + (codes.length >> 1)));
+			this.codes = codes;
+		}
+		quantizer.encode(vector, offset, codes, index * subspaces);
+		size = index + 1;
+		return index;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public ProductQuantizer getQuantizer() {
+		return quantizer;
+	}
+
+	// bytes held by the codes of the current entries
+	public long getCodeBytes() {
+		return (long) size * subspaces;
+	}
+
+	/**
+	 * The R entries with the smallest estimated distance to the probe. The
+	 * cosine estimate uses the exact squared norms kept by the gallery this
+	 * was built from.
+	 */
+	NeighborHeap candidates(float[] probe, double probeNorm, Gallery gallery, int R, FloatMetric metric) {
+		int count = size;
+		byte[] codes = this.codes;
+		double[] galleryNorms = gallery.getSquaredNorms();
+		boolean cosine = metric instanceof CosineDissimilarity;
+		ProductQuantizer.Table kind = cosine ? ProductQuantizer.Table.DOT
+				: metric instanceof L1Distance ? ProductQuantizer.Table.L1 : ProductQuantizer.Table.SQUARED_EUCLIDEAN;
+		float[] table = quantizer.table(probe, kind);
+		int centroids = quantizer.getCentroids();
+
+		NeighborHeap neighbors = new NeighborHeap(Math.max(0, Math.min(R, count)));
+		for (int i = 0; i < count; i++) {
+			int row = i * subspaces;
+			float sum = 0;
+			for (int m = 0; m < subspaces; m++) {
+				sum += table[m * centroids + (codes[row + m] & 0xff)];
+			}
+			// rank by a quantity monotone in the estimated distance
+			neighbors.offer(i, cosine ? CosineDissimilarity.fromDot(sum, probeNorm, galleryNorms[i]) : sum);
+		}
+		return neighbors;
+	}
+}
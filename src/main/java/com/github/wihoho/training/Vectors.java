@@ -0,0 +1,47 @@
+package com.github.wihoho.training;
+
+/**
+ * Unrolled inner loops shared by the metrics. Products are summed into
+ * four independent double accumulators, which keeps the pipeline busy and
+ * loses less precision than a single float sum over long templates.
+ */
+final class Vectors {
+	private Vectors() {
+	}
+
+	// a[0, length) . b[bOffset, bOffset + length)
+	static double dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+		double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+		int i = 0;
+		for (int end = length - 3; i < end; i += 4) {
+			s0 += a[aOffset + i] * b[bOffset + i];
+			s1 += a[aOffset + i + 1] * b[bOffset + i + 1];
+			s2 += a[aOffset + i + 2] * b[bOffset + i + 2];
+			s3 += a[aOffset + i + 3] * b[bOffset + i + 3];
+		}
+		for (; i < length; i++) {
+			s0 += a[aOffset + i] * b[bOffset + i];
+		}
+		return (s0 + s1) + (s2 + s3);
+	}
+
+	static double squaredNorm(float[] a, int offset, int length) {
+		return dot(a, offset, a, offset, length);
+	}
+
+	static double dot(double[] a, double[] b) {
+		double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+		int length = a.length;
+		int i = 0;
+		for (int end = length - 3; i < end; i += 4) {
+			s0 += a[i] * b[i];
+			s1 += a[i + 1] * b[i + 1];
+			s2 += a[i + 2] * b[i + 2];
+			s3 += a[i + 3] * b[i + 3];
+		}
+		for (; i < length; i++) {
+			s0 += a[i] * b[i];
+		}
+		return (s0 + s1) + (s2 + s3);
+	}
+}
@@ -0,0 +1,226 @@
+package com.example.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class LSHTest {
+
+	@Test
+	public void testBucketMapGrowth() {
+		LongBucketMap map = new LongBucketMap(4);
+		Map<Long, List<Integer>> expected = new HashMap<Long, List<Integer>>();
+		Random random = new Random(1);
+		int id = 0;
+		for (int i = 0; i < 5000; i++) {
+			// sequential, high-bit-only and negative keys all land on nearby raw values
+			long[] keys = { i, (long) i << 40, -i - 1L, random.nextLong() };
+			for (long key : keys) {
+				int copies = 1 + random.nextInt(6);
+				for (int c = 0; c < copies; c++) {
+					map.add(key, id);
+					List<Integer> ids = expected.get(key);
+					if (ids == null) {
+						ids = new ArrayList<Integer>();
+						expected.put(key, ids);
+					}
+					ids.add(id++);
+				}
+			}
+		}
+
+		assertEquals(expected.size(), map.size());
+		for (Map.Entry<Long, List<Integer>> entry : expected.entrySet()) {
+			int bucket = map.bucket(entry.getKey());
+			assertTrue(bucket >= 0);
+			List<Integer> ids = entry.getValue();
+			assertEquals(ids.size(), map.bucketSize(bucket));
+			for (int k = 0; k < ids.size(); k++) {
+				assertEquals((int) ids.get(k), map.ids(bucket)[k]);
+			}
+		}
+		for (long key = 1L << 60; key < (1L << 60) + 1000; key++) {
+			assertEquals(-1, map.bucket(key));
+		}
+	}
+
+	// the long signatures bucket exactly like the bit strings of the unary encoding used to
+	@Test
+	public void testMatchesStringKeys() {
+		checkAgainstStringKeys(8, 4, 4, 6, false);
+		// above 64 bits the words are folded, which may only add candidates
+		checkAgainstStringKeys(40, 4, 3, 100, true);
+	}
+
+	private void checkAgainstStringKeys(int dimention, int max, int hashCount, int bitCount, boolean superset) {
+		Random random = new Random(dimention * 31 + bitCount);
+		List<Integer> samples = new ArrayList<Integer>();
+		for (int i = 0; i < hashCount * bitCount; i++) {
+			samples.add(random.nextInt(dimention * max));
+		}
+		LSH<int[]> lsh = LSH.hamming(dimention, max, hashCount, bitCount, samples);
+		HammingLSHFamily family = (HammingLSHFamily) lsh.getFamily();
+
+		List<Map<String, Set<String>>> tables = new ArrayList<Map<String, Set<String>>>();
+		for (int j = 0; j < hashCount; j++) {
+			tables.add(new HashMap<String, Set<String>>());
+		}
+		for (int i = 0; i < 2000; i++) {
+			int[] vector = randomInts(random, dimention, max);
+			String id = "v" + i;
+			lsh.generateHashMap(id, vector);
+			for (int j = 0; j < hashCount; j++) {
+				String key = stringKey(family, vector, samples, j, bitCount);
+				Set<String> bucket = tables.get(j).get(key);
+				if (bucket == null) {
+					bucket = new HashSet<String>();
+					tables.get(j).put(key, bucket);
+				}
+				bucket.add(id);
+			}
+		}
+
+		for (int q = 0; q < 300; q++) {
+			int[] query = randomInts(random, dimention, max);
+			Set<String> expected = new HashSet<String>();
+			for (int j = 0; j < hashCount; j++) {
+				Set<String> bucket = tables.get(j).get(stringKey(family, query, samples, j, bitCount));
+				if (bucket != null) {
+					expected.addAll(bucket);
+				}
+			}
+			Set<String> found = lsh.query(query);
+			if (superset) {
+				assertTrue(found.containsAll(expected));
+			} else {
+				assertEquals(expected, found);
+			}
+		}
+	}
+
+	private static String stringKey(HammingLSHFamily family, int[] vector, List<Integer> samples, int table,
+			int bitCount) {
+		int[] encoded = family.hanmingEncode(vector);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < bitCount; i++) {
+			sb.append(encoded[samples.get(table * bitCount + i)]);
+		}
+		return sb.toString();
+	}
+
+	@Test
+	public void testProbeSequence() {
+		int tables = 3;
+		int bits = 6;
+		SimHashFamily family = new SimHashFamily(16, tables, bits, 5);
+		LSH<float[]> lsh = new LSH<float[]>(family);
+		LSH.Scratch scratch = lsh.newScratch();
+		Random random = new Random(6);
+		double[] margins = new double[bits];
+
+		for (int q = 0; q < 50; q++) {
+			float[] query = randomFloats(random, 16);
+			int count = lsh.probe(query, 40, scratch);
+			assertEquals(tables + 40, count);
+
+			Set<String> buckets = new HashSet<String>();
+			for (int p = 0; p < count; p++) {
+				int table = scratch.probeTables[p];
+				long home = family.hash(query, table);
+				assertTrue("bucket probed twice", buckets.add(table + ":" + scratch.probeKeys[p]));
+				if (p < tables) {
+					assertEquals(table, p);
+					assertEquals(home, scratch.probeKeys[p]);
+					assertEquals(0, scratch.probeScores[p], 0);
+					continue;
+				}
+				assertTrue("scores out of order", scratch.probeScores[p] >= scratch.probeScores[p - 1]);
+				// the score is the sum of the squared margins of the flipped bits
+				family.margins(query, table, margins);
+				double score = 0;
+				for (long flip = home ^ scratch.probeKeys[p]; flip != 0; flip &= flip - 1) {
+					double m = margins[Long.numberOfTrailingZeros(flip)];
+					score += m * m;
+				}
+				assertEquals(score, scratch.probeScores[p], 1e-9 * (1 + score));
+			}
+		}
+
+		// a large enough budget visits every bucket of every table once, then stops
+		float[] query = randomFloats(random, 16);
+		int all = tables << bits;
+		assertEquals(all, lsh.probe(query, 1000, scratch));
+		Set<String> buckets = new HashSet<String>();
+		for (int p = 0; p < all; p++) {
+			buckets.add(scratch.probeTables[p] + ":" + scratch.probeKeys[p]);
+		}
+		assertEquals(all, buckets.size());
+	}
+
+	@Test
+	public void testFoldedSignaturesSkipProbes() {
+		SimHashFamily family = new SimHashFamily(16, 3, 70, 7);
+		LSH<float[]> lsh = new LSH<float[]>(family);
+		assertEquals(3, lsh.probe(randomFloats(new Random(8), 16), 50, lsh.newScratch()));
+	}
+
+	@Test
+	public void testMultiProbeFindsNeighbours() {
+		int dimention = 32;
+		SimHashFamily family = new SimHashFamily(dimention, 4, 16, 9);
+		LSH<float[]> lsh = new LSH<float[]>(family);
+		Random random = new Random(10);
+		float[][] data = new float[2000][];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = randomFloats(random, dimention);
+			lsh.generateHashMap("v" + i, data[i]);
+		}
+
+		LSH.Scratch scratch = lsh.newScratch();
+		int home = 0, probed = 0;
+		for (int q = 0; q < 200; q++) {
+			int target = random.nextInt(data.length);
+			// far enough that the home buckets usually miss
+			float[] query = data[target].clone();
+			for (int j = 0; j < dimention; j++) {
+				query[j] += (float) (random.nextGaussian() * 0.4);
+			}
+			if (lsh.query(query).contains("v" + target)) {
+				home++;
+			}
+			Set<String> visited = new HashSet<String>();
+			lsh.query(query, 200, scratch, id -> assertTrue("id visited twice", visited.add(id)));
+			assertEquals(lsh.query(query, 200), visited);
+			if (visited.contains("v" + target)) {
+				probed++;
+			}
+		}
+		assertTrue("home buckets alone found " + home, home < 130);
+		assertTrue("multi-probe found " + probed + " of 200, home buckets " + home, probed >= 185);
+	}
+
+	private static int[] randomInts(Random random, int dimention, int max) {
+		int[] vector = new int[dimention];
+		for (int i = 0; i < dimention; i++) {
+			vector[i] = random.nextInt(max + 1);
+		}
+		return vector;
+	}
+
+	private static float[] randomFloats(Random random, int dimention) {
+		float[] vector = new float[dimention];
+		for (int i = 0; i < dimention; i++) {
+			vector[i] = (float) random.nextGaussian();
+		}
+		return vector;
+	}
+}
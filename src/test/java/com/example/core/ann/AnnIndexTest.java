@@ -0,0 +1,275 @@
+package com.example.core.ann;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.example.core.SimHashFamily;
+
+public class AnnIndexTest {
+	private static final int DIMENSION = 32;
+
+	@Test
+	public void testHnswRecall() {
+		float[][] data = randomVectors(5000, 1);
+		HnswIndex index = new HnswIndex(DIMENSION, Distance.COSINE);
+		for (int i = 0; i < data.length; i++) {
+			index.add("v" + i, data[i]);
+		}
+		assertEquals(data.length, index.size());
+		assertTrue(recall(index, data, 10) >= 0.95);
+	}
+
+	@Test
+	public void testHnswConcurrentAdd() throws Exception {
+		float[][] data = randomVectors(8000, 2);
+		HnswIndex index = new HnswIndex(DIMENSION, Distance.EUCLIDEAN);
+		assertTrue(addWhileSearching(index, data) > 0);
+		assertEquals(data.length, index.size());
+		assertTrue(selfHits(index, data) >= 0.99 * data.length);
+	}
+
+	@Test
+	public void testIvfAndLshConcurrentAdd() throws Exception {
+		float[][] data = randomVectors(4000, 8);
+		AnnIndex[] indexes = { IvfIndex.train(DIMENSION, Distance.EUCLIDEAN, Arrays.asList(data), 32, 4),
+				new LshIndex(new SimHashFamily(DIMENSION, 16, 12, 7), 200) };
+		for (AnnIndex index : indexes) {
+			assertTrue(addWhileSearching(index, data) > 0);
+			assertEquals(data.length, index.size());
+			assertTrue(selfHits(index, data) >= 0.99 * data.length);
+		}
+	}
+
+	// adds data on 4 threads while 2 more keep searching; returns the searches done meanwhile
+	static int addWhileSearching(AnnIndex index, float[][] data) throws Exception {
+		int writers = 4;
+		int per = data.length / writers;
+		AtomicInteger added = new AtomicInteger();
+		AtomicInteger searches = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(writers + 2);
+		try {
+			List<Future<?>> inserts = new ArrayList<Future<?>>();
+			for (int t = 0; t < writers; t++) {
+				int from = t * per;
+				inserts.add(executor.submit(() -> {
+					for (int i = from; i < from + per; i++) {
+						index.add("v" + i, data[i]);
+						added.incrementAndGet();
+					}
+				}));
+			}
+			List<Future<?>> queries = new ArrayList<Future<?>>();
+			for (int t = 0; t < 2; t++) {
+				long seed = t;
+				queries.add(executor.submit(() -> {
+					Random random = new Random(seed);
+					while (added.get() < writers * per) {
+						List<Neighbor> result = index.search(data[random.nextInt(data.length)], 10);
+						assertTrue(result.size() <= 10);
+						assertEquals(result.size(), new HashSet<String>(ids(result)).size());
+						for (int i = 1; i < result.size(); i++) {
+							assertTrue(result.get(i - 1).getDistance() <= result.get(i).getDistance());
+						}
+						searches.incrementAndGet();
+					}
+				}));
+			}
+			// get() rethrows any exception or assertion failure from the workers
+			for (Future<?> future : inserts) {
+				future.get();
+			}
+			for (Future<?> future : queries) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+		return searches.get();
+	}
+
+	static int selfHits(AnnIndex index, float[][] data) {
+		int found = 0;
+		for (int i = 0; i < data.length; i++) {
+			if (index.search(data[i], 1).get(0).getId().equals("v" + i)) {
+				found++;
+			}
+		}
+		return found;
+	}
+
+	@Test
+	public void testIvfRecall() {
+		float[][] data = clusteredVectors(5000, 20, 6);
+		IvfIndex index = IvfIndex.train(DIMENSION, Distance.EUCLIDEAN, Arrays.asList(data), 32, 8);
+		for (int i = 0; i < data.length; i++) {
+			index.add("v" + i, data[i]);
+		}
+		assertEquals(data.length, index.size());
+		assertTrue(recall(index, data, 10) >= 0.9);
+
+		// scanning every list is an exact search
+		index.setNprobe(index.getLists());
+		assertEquals(1.0, recall(index, data, 10), 0);
+	}
+
+	@Test
+	public void testSaveAndLoad() throws Exception {
+		float[][] data = randomVectors(1000, 3);
+		AnnIndex[] indexes = { new HnswIndex(DIMENSION, Distance.COSINE),
+				new LshIndex(new SimHashFamily(DIMENSION, 16, 12, 7), 200),
+				IvfIndex.train(DIMENSION, Distance.COSINE, Arrays.asList(data), 16, 4) };
+		for (AnnIndex index : indexes) {
+			for (int i = 0; i < data.length; i++) {
+				index.add("v" + i, data[i]);
+			}
+			Path path = Files.createTempFile("ann", ".idx");
+			try {
+				index.save(path);
+				AnnIndex loaded = AnnIndex.load(path);
+				assertEquals(index.getClass(), loaded.getClass());
+				assertEquals(index.size(), loaded.size());
+				for (int i = 0; i < 50; i++) {
+					assertEquals(ids(index.search(data[i], 10)), ids(loaded.search(data[i], 10)));
+				}
+			} finally {
+				Files.deleteIfExists(path);
+			}
+		}
+	}
+
+	@Test
+	public void testDuplicateIdRejected() throws Exception {
+		float[][] data = randomVectors(200, 7);
+		AnnIndex[] indexes = { new HnswIndex(DIMENSION, Distance.COSINE),
+				new LshIndex(new SimHashFamily(DIMENSION, 16, 12, 7), 200),
+				IvfIndex.train(DIMENSION, Distance.COSINE, Arrays.asList(data), 8, 2) };
+		for (AnnIndex index : indexes) {
+			for (int i = 0; i < data.length; i++) {
+				index.add("v" + i, data[i]);
+			}
+			try {
+				index.add("v0", data[1]);
+				fail(index.getClass().getSimpleName() + " accepted a duplicate id");
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+			assertEquals(data.length, index.size());
+			assertEquals("v1", index.search(data[1], 1).get(0).getId());
+			List<String> before = ids(index.search(data[0], 10));
+			assertEquals(before.size(), new HashSet<String>(before).size());
+
+			Path path = Files.createTempFile("ann", ".idx");
+			try {
+				index.save(path);
+				AnnIndex loaded = AnnIndex.load(path);
+				assertEquals(data.length, loaded.size());
+				assertEquals(before, ids(loaded.search(data[0], 10)));
+			} finally {
+				Files.deleteIfExists(path);
+			}
+		}
+	}
+
+	@Test
+	public void testLshFindsNearDuplicates() {
+		float[][] data = randomVectors(2000, 4);
+		LshIndex index = new LshIndex(new SimHashFamily(DIMENSION, 16, 12, 11), 200);
+		for (int i = 0; i < data.length; i++) {
+			index.add("v" + i, data[i]);
+		}
+		Random random = new Random(5);
+		for (int i = 0; i < 100; i++) {
+			float[] query = data[i].clone();
+			for (int j = 0; j < DIMENSION; j++) {
+				query[j] += 0.05f * random.nextGaussian();
+			}
+			List<Neighbor> result = index.search(query, 5);
+			assertEquals("v" + i, result.get(0).getId());
+		}
+	}
+
+	// recall@k against an exact search, for queries near stored vectors
+	static double recall(AnnIndex index, float[][] data, int k) {
+		Random random = new Random(9);
+		int hits = 0;
+		int queries = 100;
+		for (int q = 0; q < queries; q++) {
+			float[] query = data[random.nextInt(data.length)].clone();
+			for (int j = 0; j < DIMENSION; j++) {
+				query[j] += 0.1f * (float) random.nextGaussian();
+			}
+			Set<String> expected = new HashSet<String>(exact(index.getDistance(), data, query, k));
+			for (Neighbor neighbor : index.search(query, k)) {
+				if (expected.contains(neighbor.getId())) {
+					hits++;
+				}
+			}
+		}
+		return hits / (double) (queries * k);
+	}
+
+	static List<String> exact(Distance distance, float[][] data, float[] query, int k) {
+		float[] q = distance.prepare(query);
+		Integer[] order = new Integer[data.length];
+		float[] d = new float[data.length];
+		for (int i = 0; i < data.length; i++) {
+			order[i] = i;
+			d[i] = distance.compare(q, distance.prepare(data[i]));
+		}
+		Arrays.sort(order, (a, b) -> Float.compare(d[a], d[b]));
+		List<String> ids = new ArrayList<String>();
+		for (int i = 0; i < k; i++) {
+			ids.add("v" + order[i]);
+		}
+		return ids;
+	}
+
+	static List<String> ids(List<Neighbor> neighbors) {
+		List<String> ids = new ArrayList<String>();
+		for (Neighbor neighbor : neighbors) {
+			ids.add(neighbor.getId());
+		}
+		return ids;
+	}
+
+	// count vectors around clusters random centres
+	static float[][] clusteredVectors(int count, int clusters, long seed) {
+		float[][] centres = randomVectors(clusters, seed);
+		Random random = new Random(seed + 1);
+		float[][] data = new float[count][DIMENSION];
+		for (int i = 0; i < count; i++) {
+			float[] centre = centres[random.nextInt(clusters)];
+			for (int j = 0; j < DIMENSION; j++) {
+				data[i][j] = centre[j] + 0.3f * (float) random.nextGaussian();
+			}
+		}
+		return data;
+	}
+
+	static float[][] randomVectors(int count, long seed) {
+		Random random = new Random(seed);
+		float[][] data = new float[count][DIMENSION];
+		for (float[] v : data) {
+			for (int j = 0; j < DIMENSION; j++) {
+				v[j] = (float) random.nextGaussian();
+			}
+		}
+		return data;
+	}
+}
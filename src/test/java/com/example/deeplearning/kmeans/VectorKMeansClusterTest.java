@@ -0,0 +1,73 @@
+package com.example.deeplearning.kmeans;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class VectorKMeansClusterTest {
+
+	@Test
+	public void testEmptyClusterTakesFarthestPoint() {
+		List<float[]> points = new ArrayList<float[]>();
+		for (float x : new float[] { 0, 1, 2, 10 }) {
+			points.add(new float[] { x });
+		}
+		VectorKMeansCluster cluster = new VectorKMeansCluster(3, 10, points, VectorKMeansCluster.Metric.EUCLIDEAN, 1);
+		// cluster 2 is empty and cluster 1 holds a single point
+		cluster.clusterIDs = new int[] { 0, 0, 0, 1 };
+		cluster.centers = new float[][] { { 5 }, { 7 }, { 9 } };
+		cluster.adjustCenters();
+
+		// the means are updated first, so the farthest point is measured from 1, not 5
+		assertArrayEquals(new int[] { 2, 0, 0, 1 }, cluster.clusterIDs);
+		assertEquals(1.5f, cluster.centers[0][0], 0);
+		assertEquals(10f, cluster.centers[1][0], 0);
+		assertEquals(0f, cluster.centers[2][0], 0);
+	}
+
+	@Test
+	public void testCentersAreClusterMeans() {
+		Random random = new Random(2);
+		List<float[]> points = new ArrayList<float[]>();
+		for (int i = 0; i < 300; i++) {
+			float[] point = new float[4];
+			for (int j = 0; j < point.length; j++) {
+				point[j] = (float) random.nextGaussian();
+			}
+			points.add(point);
+		}
+		VectorKMeansCluster cluster = new VectorKMeansCluster(20, 1, points, VectorKMeansCluster.Metric.EUCLIDEAN, 3);
+		// crowd every point into the first five clusters, leaving fifteen empty
+		for (int i = 0; i < points.size(); i++) {
+			cluster.clusterIDs[i] = i % 5;
+		}
+		cluster.adjustCenters();
+
+		double[][] sum = new double[20][4];
+		int[] count = new int[20];
+		for (int i = 0; i < points.size(); i++) {
+			int c = cluster.clusterIDs[i];
+			count[c]++;
+			for (int j = 0; j < 4; j++) {
+				sum[c][j] += points.get(i)[j];
+			}
+		}
+		for (int c = 0; c < 20; c++) {
+			assertTrue("cluster " + c + " is empty", count[c] > 0);
+			for (int j = 0; j < 4; j++) {
+				assertEquals(sum[c][j] / count[c], cluster.centers[c][j], 1e-5);
+			}
+			for (int other = 0; other < c; other++) {
+				assertTrue("clusters " + other + " and " + c + " share a center",
+						!Arrays.equals(cluster.centers[other], cluster.centers[c]));
+			}
+		}
+	}
+}
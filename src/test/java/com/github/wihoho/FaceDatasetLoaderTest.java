@@ -0,0 +1,76 @@
+package com.github.wihoho;
+
+import com.github.wihoho.constant.FeatureType;
+import com.github.wihoho.training.EuclideanDistance;
+import com.github.wihoho.training.FaceDatasetLoader;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FaceDatasetLoaderTest {
+    ClassLoader classLoader = getClass().getClassLoader();
+
+    @Test
+    public void testLoadIntoTrainer() throws Exception {
+        Trainer trainer = Trainer.builder()
+                .metric(new EuclideanDistance())
+                .featureType(FeatureType.PCA)
+                .numberOfComponents(30)
+                .k(1)
+                .build();
+
+        Path root = Paths.get(new File(classLoader.getResource("faces").getFile()).getAbsolutePath());
+        FaceDatasetLoader.Report report = new FaceDatasetLoader(4, 8).load(root, trainer::add);
+
+        assertEquals(400, report.getLoaded());
+        assertTrue(report.getSkipped().isEmpty());
+        long bytes;
+        try (Stream<Path> files = Files.walk(root)) {
+            bytes = files.filter(f -> f.toString().endsWith(".pgm")).mapToLong(f -> f.toFile().length()).sum();
+        }
+        assertEquals(bytes, report.getBytes());
+        assertTrue(report.getImagesPerSecond() > 0);
+        assertTrue(report.getMegabytesPerSecond() > 0);
+        assertTrue(report.toString(), report.toString().startsWith("loaded 400 images (0 skipped)"));
+        assertEquals(400, trainer.trainingSet.size());
+        assertEquals("s1", trainer.trainingLabels.get(0));
+
+        trainer.train();
+        assertEquals("s1", trainer.recognize(trainer.trainingSet.get(0)));
+    }
+
+    @Test
+    public void testSkipsBrokenFiles() throws Exception {
+        Path root = Files.createTempDirectory("faces");
+        Path person = Files.createDirectory(root.resolve("alice"));
+        Path good = person.resolve("1.pgm");
+        Path broken = person.resolve("2.pgm");
+        Path ignored = person.resolve("notes.txt");
+        try {
+            Files.write(good, new byte[]{'P', '5', '\n', '1', ' ', '1', '\n', '2', '5', '5', '\n', 7});
+            Files.write(broken, new byte[]{'P', '2'});
+            Files.write(ignored, new byte[]{'x'});
+
+            FaceDatasetLoader.Report report = new FaceDatasetLoader(2, 1).load(root, (face, label) -> {
+                assertEquals("alice", label);
+                assertEquals(7.0, face.get(0, 0), 0);
+            });
+            assertEquals(1, report.getLoaded());
+            assertEquals(1, report.getSkipped().size());
+            assertTrue(report.getSkipped().get(0).startsWith(broken.toString()));
+        } finally {
+            Files.deleteIfExists(good);
+            Files.deleteIfExists(broken);
+            Files.deleteIfExists(ignored);
+            Files.deleteIfExists(person);
+            Files.deleteIfExists(root);
+        }
+    }
+}
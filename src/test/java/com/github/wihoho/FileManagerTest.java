@@ -0,0 +1,94 @@
+package com.github.wihoho;
+
+import com.github.wihoho.jama.Matrix;
+import com.github.wihoho.training.FileManager;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class FileManagerTest {
+    ClassLoader classLoader = getClass().getClassLoader();
+
+    @Test
+    public void testVectorMatchesMatrix() throws Exception {
+        String address = new File(classLoader.getResource("faces/s1/1.pgm").getFile()).getAbsolutePath();
+        Matrix image = FileManager.convertPGMtoMatrix(address);
+        assertEquals(112, image.getRowDimension());
+        assertEquals(92, image.getColumnDimension());
+
+        Matrix vector = FileManager.convertPGMtoVector(address);
+        assertArrayEquals(TrainerTest.vectorize(image).getRowPackedArray(), vector.getRowPackedArray(), 0);
+    }
+
+    @Test
+    public void testCommentsAndSixteenBitSamples() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write("P5\n# created by hand\n3 2\n# another comment\n65535\n".getBytes(StandardCharsets.US_ASCII));
+        int[] samples = {0, 1, 255, 256, 4660, 65535};
+        for (int sample : samples) {
+            out.write(sample >> 8);
+            out.write(sample & 0xff);
+        }
+
+        Path path = Files.createTempFile("image", ".pgm");
+        try {
+            Files.write(path, out.toByteArray());
+            Matrix image = FileManager.convertPGMtoMatrix(path.toString());
+            assertEquals(2, image.getRowDimension());
+            assertEquals(3, image.getColumnDimension());
+            assertArrayEquals(new double[]{0, 1, 255, 256, 4660, 65535}, image.getRowPackedArray(), 0);
+
+            Matrix vector = FileManager.convertPGMtoVector(path.toString());
+            assertArrayEquals(new double[]{0, 256, 1, 4660, 255, 65535}, vector.getRowPackedArray(), 0);
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void testLargeFileBetweenSmallOnes() throws Exception {
+        // above the cached buffer limit, so it is decoded from a one-off buffer
+        int width = 800, height = 600;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(("P5\n" + width + " " + height + "\n255\n").getBytes(StandardCharsets.US_ASCII));
+        for (int i = 0; i < width * height; i++) {
+            out.write(i * 7 % 256);
+        }
+
+        String face = new File(classLoader.getResource("faces/s1/1.pgm").getFile()).getAbsolutePath();
+        double[] expected = FileManager.convertPGMtoMatrix(face).getRowPackedArray();
+        Path path = Files.createTempFile("image", ".pgm");
+        try {
+            Files.write(path, out.toByteArray());
+            Matrix image = FileManager.convertPGMtoMatrix(path.toString());
+            assertEquals(height, image.getRowDimension());
+            assertEquals(width, image.getColumnDimension());
+            double[] pixels = image.getRowPackedArray();
+            for (int i = 0; i < pixels.length; i++) {
+                assertEquals(i * 7 % 256, pixels[i], 0);
+            }
+            assertArrayEquals(expected, FileManager.convertPGMtoMatrix(face).getRowPackedArray(), 0);
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedFile() throws Exception {
+        Path path = Files.createTempFile("image", ".pgm");
+        try {
+            Files.write(path, "P5 4 4 255\n\u0001\u0002".getBytes(StandardCharsets.US_ASCII));
+            FileManager.convertPGMtoMatrix(path.toString());
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+}
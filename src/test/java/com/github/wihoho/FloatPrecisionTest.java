@@ -0,0 +1,96 @@
+package com.github.wihoho;
+
+import com.github.wihoho.jama.FloatMatrix;
+import com.github.wihoho.jama.Matrix;
+import com.github.wihoho.training.*;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that recognising ORL faces with single precision templates gives
+ * the same answers as the double precision path.
+ */
+public class FloatPrecisionTest {
+    ClassLoader classLoader = getClass().getClassLoader();
+
+    @Test
+    public void testFloatMatchesDouble() throws Exception {
+        Metric[] metrics = {new CosineDissimilarity(), new L1Distance(), new EuclideanDistance()};
+
+        ArrayList<Matrix> trainingSet = new ArrayList<>();
+        ArrayList<String> labels = new ArrayList<>();
+        ArrayList<Matrix> testingSet = new ArrayList<>();
+        ArrayList<String> trueLabels = new ArrayList<>();
+        for (int i = 1; i <= 40; i++) {
+            String label = "s" + i;
+            ArrayList<Integer> train = PerformanceTest.generateTrainNums(5);
+            for (int j = 1; j <= 10; j++) {
+                Matrix face = convertToMatrix("faces/" + label + "/" + j + ".pgm");
+                if (train.contains(j)) {
+                    trainingSet.add(face);
+                    labels.add(label);
+                } else {
+                    testingSet.add(face);
+                    trueLabels.add(label);
+                }
+            }
+        }
+
+        PCA pca = new PCA(trainingSet, labels, 60);
+        ArrayList<ProjectedTrainingMatrix> projected = pca.getProjectedTrainingSet();
+        ProjectedTrainingMatrix[] gallery = projected.toArray(new ProjectedTrainingMatrix[0]);
+
+        FloatMatrix W = new FloatMatrix(pca.getW());
+        FloatMatrix mean = new FloatMatrix(pca.getMeanMatrix());
+        float[][] floatGallery = new float[trainingSet.size()][];
+        for (int i = 0; i < trainingSet.size(); i++) {
+            floatGallery[i] = W.transposeTimes(new FloatMatrix(trainingSet.get(i)).minus(mean)).getRowPackedArray();
+        }
+
+        for (Metric metric : metrics) {
+            FloatMetric floatMetric = (FloatMetric) metric;
+            int agree = 0;
+            int doubleCorrect = 0;
+            int floatCorrect = 0;
+            for (int i = 0; i < testingSet.size(); i++) {
+                Matrix probe = pca.getW().transposeTimes(testingSet.get(i).minus(pca.getMeanMatrix()));
+                String doubleResult = KNN.assignLabel(gallery, probe, 1, metric);
+
+                float[] floatProbe = W.transposeTimes(new FloatMatrix(testingSet.get(i)).minus(mean)).getRowPackedArray();
+                int best = 0;
+                float bestDistance = Float.MAX_VALUE;
+                for (int j = 0; j < floatGallery.length; j++) {
+                    float distance = floatMetric.getDistance(floatGallery[j], floatProbe);
+                    if (distance < bestDistance) {
+                        bestDistance = distance;
+                        best = j;
+                    }
+                }
+                String floatResult = labels.get(best);
+
+                if (doubleResult.equals(floatResult))
+                    agree++;
+                if (doubleResult.equals(trueLabels.get(i)))
+                    doubleCorrect++;
+                if (floatResult.equals(trueLabels.get(i)))
+                    floatCorrect++;
+            }
+
+            double n = testingSet.size();
+            String name = metric.getClass().getSimpleName();
+            assertTrue(name + " agreement " + agree / n, agree / n >= 0.98);
+            assertTrue(name + " double accuracy " + doubleCorrect / n + ", float accuracy " + floatCorrect / n,
+                    Math.abs(doubleCorrect - floatCorrect) / n <= 0.01);
+        }
+    }
+
+    private Matrix convertToMatrix(String fileAddress) throws IOException {
+        File file = new File(classLoader.getResource(fileAddress).getFile());
+        return PerformanceTest.vectorize(FileManager.convertPGMtoMatrix(file.getAbsolutePath()));
+    }
+}
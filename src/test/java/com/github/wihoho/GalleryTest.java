@@ -0,0 +1,84 @@
+package com.github.wihoho;
+
+import com.github.wihoho.training.EuclideanDistance;
+import com.github.wihoho.training.Gallery;
+import com.github.wihoho.training.KNN;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks that a reader scanning the gallery while another thread appends
+ * always sees complete entries, across the array copies made on growth.
+ */
+public class GalleryTest {
+
+    @Test
+    public void testConcurrentReaderAndAppender() throws Exception {
+        final int dimension = 8;
+        final int count = 200000;
+        final Gallery gallery = new Gallery(dimension, 1);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Thread appender = new Thread(() -> {
+            float[] entry = new float[dimension];
+            for (int i = 0; i < count; i++) {
+                Arrays.fill(entry, i + 1);
+                gallery.add(entry, "s" + (i % 7));
+            }
+        });
+
+        Thread reader = new Thread(() -> {
+            try {
+                float[] probe = new float[dimension];
+                int seen = 0;
+                while (seen < count) {
+                    int n = gallery.size();
+                    float[] data = gallery.getData();
+                    double[] norms = gallery.getSquaredNorms();
+                    // the newest entry and a few older ones must be fully written
+                    for (int i = Math.max(0, n - 4); i < n; i++) {
+                        check(gallery, data, norms, dimension, i);
+                    }
+                    if (n > 0) {
+                        check(gallery, data, norms, dimension, n / 2);
+                        Arrays.fill(probe, n);
+                        KNN.assignLabel(gallery, probe, 3, new EuclideanDistance());
+                    }
+                    seen = n;
+                }
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            }
+        });
+
+        reader.start();
+        appender.start();
+        appender.join();
+        reader.join();
+
+        assertNull(String.valueOf(failure.get()), failure.get());
+        assertEquals(count, gallery.size());
+        assertEquals(7, gallery.getLabelCount());
+    }
+
+    private static void check(Gallery gallery, float[] data, double[] norms, int dimension, int i) {
+        float expected = i + 1;
+        for (int j = 0; j < dimension; j++) {
+            if (data[i * dimension + j] != expected) {
+                throw new AssertionError("entry " + i + " component " + j + " is " + data[i * dimension + j]);
+            }
+        }
+        double norm = (double) expected * expected * dimension;
+        if (Math.abs(norms[i] - norm) > 1e-6 * norm) {
+            throw new AssertionError("entry " + i + " norm is " + norms[i]);
+        }
+        if (!gallery.getLabel(i).equals("s" + (i % 7))) {
+            throw new AssertionError("entry " + i + " label is " + gallery.getLabel(i));
+        }
+    }
+}
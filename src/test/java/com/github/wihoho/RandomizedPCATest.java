@@ -0,0 +1,120 @@
+package com.github.wihoho;
+
+import com.github.wihoho.constant.EigenSolverType;
+import com.github.wihoho.constant.FeatureType;
+import com.github.wihoho.jama.Matrix;
+import com.github.wihoho.jama.TruncatedEigenvalueDecomposition;
+import com.github.wihoho.training.EuclideanDistance;
+import com.github.wihoho.training.FileManager;
+import com.github.wihoho.training.PCA;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The randomized eigensolver against the full decomposition of X'X on the
+ * ORL faces: eigenvalues, eigenfaces and recognition results.
+ */
+public class RandomizedPCATest {
+    private static final int COMPONENTS = 30;
+
+    ClassLoader classLoader = getClass().getClassLoader();
+
+    @Test
+    public void testEigenvaluesAndSubspace() throws Exception {
+        ArrayList<Matrix> trainingSet = new ArrayList<>();
+        ArrayList<String> labels = new ArrayList<>();
+        for (int i = 1; i <= 40; i++) {
+            for (int j = 1; j <= 5; j++) {
+                trainingSet.add(convertToMatrix("faces/s" + i + "/" + j + ".pgm"));
+                labels.add("s" + i);
+            }
+        }
+
+        PCA full = new PCA(trainingSet, labels, COMPONENTS, EigenSolverType.FULL);
+        PCA randomized = new PCA(trainingSet, labels, COMPONENTS, EigenSolverType.RANDOMIZED);
+        // centred faces as the columns of X
+        int d = trainingSet.get(0).getRowDimension();
+        Matrix X = new Matrix(d, trainingSet.size());
+        for (int i = 0; i < trainingSet.size(); i++) {
+            X.setMatrix(0, d - 1, i, i, trainingSet.get(i).minus(full.getMeanMatrix()));
+        }
+
+        double[] all = X.transposeTimes(X).eig().getd().clone();
+        Arrays.sort(all);
+        double[] top = TruncatedEigenvalueDecomposition.gram(X, COMPONENTS).getd();
+        // Ritz values never exceed the true eigenvalues; with the default
+        // oversampling only the last few components lose accuracy
+        for (int i = 0; i < COMPONENTS; i++) {
+            double expected = all[all.length - 1 - i];
+            assertTrue("eigenvalue " + i, top[i] <= expected * (1 + 1e-9));
+            assertEquals("eigenvalue " + i, expected, top[i], (i < 20 ? 1e-2 : 0.15) * expected);
+        }
+
+        // the leading eigenfaces agree up to sign, and the whole subspace nearly coincides
+        Matrix overlap = full.getW().transposeTimes(randomized.getW());
+        for (int i = 0; i < 20; i++) {
+            assertTrue("eigenface " + i, Math.abs(overlap.get(i, i)) > 0.99);
+        }
+        double captured = overlap.normF() * overlap.normF() / COMPONENTS;
+        assertTrue("subspace overlap " + captured, captured > 0.95);
+    }
+
+    @Test
+    public void testRecognitionMatchesFull() throws Exception {
+        Trainer full = trainer(EigenSolverType.FULL);
+        Trainer randomized = trainer(EigenSolverType.RANDOMIZED);
+        ArrayList<Matrix> probes = new ArrayList<>();
+        ArrayList<String> trueLabels = new ArrayList<>();
+        for (int i = 1; i <= 40; i++) {
+            for (int j = 1; j <= 10; j++) {
+                Matrix face = convertToMatrix("faces/s" + i + "/" + j + ".pgm");
+                if (j <= 5) {
+                    full.add(face, "s" + i);
+                    randomized.add(face, "s" + i);
+                } else {
+                    probes.add(face);
+                    trueLabels.add("s" + i);
+                }
+            }
+        }
+        full.train();
+        randomized.train();
+
+        int fullCorrect = 0, randomizedCorrect = 0, agree = 0;
+        for (int i = 0; i < probes.size(); i++) {
+            String expected = full.recognize(probes.get(i));
+            String actual = randomized.recognize(probes.get(i));
+            if (expected.equals(trueLabels.get(i)))
+                fullCorrect++;
+            if (actual.equals(trueLabels.get(i)))
+                randomizedCorrect++;
+            if (expected.equals(actual))
+                agree++;
+        }
+        assertTrue("agree " + agree, agree >= 0.95 * probes.size());
+        assertTrue("full " + fullCorrect + ", randomized " + randomizedCorrect,
+                Math.abs(fullCorrect - randomizedCorrect) <= 0.02 * probes.size());
+    }
+
+    private Trainer trainer(EigenSolverType eigenSolver) {
+        return Trainer.builder()
+                .metric(new EuclideanDistance())
+                .featureType(FeatureType.PCA)
+                .eigenSolver(eigenSolver)
+                .numberOfComponents(COMPONENTS)
+                .k(1)
+                .build();
+    }
+
+    private Matrix convertToMatrix(String fileAddress) throws IOException {
+        File file = new File(classLoader.getResource(fileAddress).getFile());
+        return TrainerTest.vectorize(FileManager.convertPGMtoMatrix(file.getAbsolutePath()));
+    }
+}
@@ -0,0 +1,117 @@
+package com.github.wihoho;
+
+import com.github.wihoho.jama.Matrix;
+import com.github.wihoho.training.*;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Streaming PCA against the in-memory PCA on ORL faces shrunk to 28 x 23,
+ * small enough for the d by d scatter matrix, and the accumulated scatter
+ * against a two-pass one.
+ */
+public class StreamingPCATest {
+    ClassLoader classLoader = getClass().getClassLoader();
+
+    @Test
+    public void testStreamingMatchesBatch() throws Exception {
+        ArrayList<Matrix> trainingSet = new ArrayList<>();
+        ArrayList<String> labels = new ArrayList<>();
+        ArrayList<Matrix> testingSet = new ArrayList<>();
+        for (int i = 1; i <= 40; i++) {
+            for (int j = 1; j <= 10; j++) {
+                Matrix face = shrink(convertToMatrix("faces/s" + i + "/" + j + ".pgm"));
+                if (j <= 5) {
+                    trainingSet.add(face);
+                    labels.add("s" + i);
+                } else {
+                    testingSet.add(face);
+                }
+            }
+        }
+
+        PCA batch = new PCA(trainingSet, labels, 20);
+        PCA streaming = new PCA(trainingSet, labels, 20, 32);
+
+        double[] batchMean = batch.getMeanMatrix().getRowPackedArray();
+        double[] streamingMean = streaming.getMeanMatrix().getRowPackedArray();
+        for (int i = 0; i < batchMean.length; i++) {
+            assertEquals(batchMean[i], streamingMean[i], 1e-9);
+        }
+
+        // the leading eigenfaces agree up to sign
+        Matrix overlap = batch.getW().transposeTimes(streaming.getW());
+        for (int i = 0; i < 5; i++) {
+            assertTrue(Math.abs(overlap.get(i, i)) > 0.99);
+        }
+
+        ProjectedTrainingMatrix[] batchGallery = batch.getProjectedTrainingSet().toArray(new ProjectedTrainingMatrix[0]);
+        ProjectedTrainingMatrix[] streamingGallery = streaming.getProjectedTrainingSet().toArray(new ProjectedTrainingMatrix[0]);
+        assertEquals(trainingSet.size(), streamingGallery.length);
+
+        Metric metric = new EuclideanDistance();
+        int agree = 0;
+        for (Matrix face : testingSet) {
+            String expected = KNN.assignLabel(batchGallery, batch.getW().transposeTimes(face.minus(batch.getMeanMatrix())), 1, metric);
+            String actual = KNN.assignLabel(streamingGallery, streaming.getW().transposeTimes(face.minus(streaming.getMeanMatrix())), 1, metric);
+            if (expected.equals(actual))
+                agree++;
+        }
+        assertTrue(agree >= 0.95 * testingSet.size());
+    }
+
+    @Test
+    public void testScatterMatchesTwoPass() {
+        int d = 37, n = 103;
+        Random random = new Random(1);
+        ArrayList<Matrix> faces = new ArrayList<>();
+        CovarianceAccumulator accumulator = new CovarianceAccumulator(10);
+        for (int i = 0; i < n; i++) {
+            Matrix face = new Matrix(d, 1);
+            for (int j = 0; j < d; j++) {
+                face.set(j, 0, 100 + random.nextGaussian() * (1 + j % 5));
+            }
+            faces.add(face);
+            accumulator.add(face);
+        }
+
+        Matrix X = new Matrix(n, d);
+        Matrix mean = new Matrix(d, 1);
+        for (Matrix face : faces) {
+            mean.plusEquals(face.times(1.0 / n));
+        }
+        for (int i = 0; i < n; i++) {
+            X.setMatrix(i, i, 0, d - 1, faces.get(i).minus(mean).transpose());
+        }
+        Matrix expected = X.transpose().times(X);
+
+        // ten chunks merged into the scatter in place, then a partial one
+        Matrix scatter = accumulator.getScatter();
+        assertEquals(n, accumulator.getCount());
+        assertEquals(0, scatter.minus(expected).normF(), 1e-9 * expected.normF());
+        assertEquals(0, scatter.minus(scatter.transpose()).normF(), 1e-12 * expected.normF());
+    }
+
+    // keep every 4th pixel of a vectorized 112 x 92 image
+    private static Matrix shrink(Matrix face) {
+        Matrix result = new Matrix(28 * 23, 1);
+        for (int p = 0; p < 23; p++) {
+            for (int q = 0; q < 28; q++) {
+                result.set(p * 28 + q, 0, face.get(4 * p * 112 + 4 * q, 0));
+            }
+        }
+        return result;
+    }
+
+    private Matrix convertToMatrix(String fileAddress) throws IOException {
+        File file = new File(classLoader.getResource(fileAddress).getFile());
+        return FileManager.convertPGMtoVector(file.getAbsolutePath());
+    }
+}
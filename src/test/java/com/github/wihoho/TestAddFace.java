@@ -12,6 +12,8 @@ import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
 
 /**
  * Created by wihoho on 5/3/17.
@@ -81,6 +83,59 @@ public class TestAddFace {
     }
 
 
+    @Test
+    public void testAddFacePCA() throws Exception {
+        Trainer trainer = Trainer.builder()
+                .metric(new CosineDissimilarity())
+                .featureType(FeatureType.PCA)
+                .numberOfComponents(10)
+                .k(1)
+                .build();
+
+        for (int i = 1; i <= 10; i++) {
+            trainer.add(convertToMatrix("faces/s1/" + i + ".pgm"), "john");
+            trainer.add(convertToMatrix("faces/s2/" + i + ".pgm"), "smith");
+        }
+        trainer.train();
+
+        // enroll Ted without retraining; PCA updates its mean and basis
+        for (int i = 1; i <= 7; i++) {
+            trainer.addFaceAfterTraining(convertToMatrix("faces/s6/" + i + ".pgm"), "ted");
+        }
+
+        assertEquals("ted", trainer.recognize(convertToMatrix("faces/s6/8.pgm")));
+        assertEquals("ted", trainer.recognize(convertToMatrix("faces/s6/9.pgm")));
+        assertEquals("ted", trainer.recognize(convertToMatrix("faces/s6/10.pgm")));
+        assertEquals("john", trainer.recognize(convertToMatrix("faces/s1/1.pgm")));
+    }
+
+    @Test
+    public void testAddFaceLDARejected() throws Exception {
+        Trainer trainer = Trainer.builder()
+                .metric(new CosineDissimilarity())
+                .featureType(FeatureType.LDA)
+                .numberOfComponents(27)
+                .k(1)
+                .build();
+
+        for (int i = 1; i <= 10; i++) {
+            trainer.add(convertToMatrix("faces/s1/" + i + ".pgm"), "john");
+            trainer.add(convertToMatrix("faces/s2/" + i + ".pgm"), "smith");
+            trainer.add(convertToMatrix("faces/s3/" + i + ".pgm"), "ted");
+        }
+        trainer.train();
+        TrainedModel model = trainer.getTrainedModel();
+
+        // LDA has no incremental update, so the face must not be dropped silently
+        try {
+            trainer.addFaceAfterTraining(convertToMatrix("faces/s6/1.pgm"), "bob");
+            fail("LDA enrollment should be rejected");
+        } catch (IllegalStateException expected) {
+        }
+        assertSame(model, trainer.getTrainedModel());
+        assertEquals(30, model.getGallery().size());
+    }
+
     private Matrix convertToMatrix(String fileAddress) throws IOException {
         File file = new File(classLoader.getResource(fileAddress).getFile());
         return vectorize(FileManager.convertPGMtoMatrix(file.getAbsolutePath()));
@@ -2,15 +2,31 @@ package com.github.wihoho;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.junit.Test;
 
 import com.github.wihoho.constant.FeatureType;
 import com.github.wihoho.jama.Matrix;
 import com.github.wihoho.training.CosineDissimilarity;
+import com.github.wihoho.training.EuclideanDistance;
 import com.github.wihoho.training.FileManager;
+import com.github.wihoho.training.Gallery;
+import com.github.wihoho.training.L1Distance;
+import com.github.wihoho.training.Metric;
+import com.github.wihoho.training.ProductQuantizer;
+import com.github.wihoho.training.QuantizedGallery;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 public class TrainerTest {
     ClassLoader classLoader = getClass().getClassLoader();
@@ -52,6 +68,276 @@ public class TrainerTest {
         assertEquals("smith", trainer.recognize(convertToMatrix(smith4)));
     }
 
+    @Test
+    public void testRecognizeBatch() throws Exception {
+        Metric[] metrics = {new CosineDissimilarity(), new EuclideanDistance(), new L1Distance()};
+        for (Metric metric : metrics) {
+            Trainer trainer = Trainer.builder()
+                    .metric(metric)
+                    .featureType(FeatureType.PCA)
+                    .numberOfComponents(20)
+                    .k(3)
+                    .build();
+
+            List<Matrix> probes = new ArrayList<>();
+            for (int i = 1; i <= 10; i++) {
+                for (int j = 1; j <= 10; j++) {
+                    Matrix face = convertToMatrix("faces/s" + i + "/" + j + ".pgm");
+                    if (j <= 5)
+                        trainer.add(face, "s" + i);
+                    else
+                        probes.add(face);
+                }
+            }
+            trainer.train();
+
+            List<String> results = trainer.recognizeBatch(probes);
+            assertEquals(probes.size(), results.size());
+            for (int i = 0; i < probes.size(); i++) {
+                assertEquals(trainer.recognize(probes.get(i)), results.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testRecognizeBatchQuantized() throws Exception {
+        Metric[] metrics = {new CosineDissimilarity(), new EuclideanDistance()};
+        for (Metric metric : metrics) {
+            // re-ranking only k candidates leaves the codes to pick the neighbours
+            Trainer trainer = Trainer.builder()
+                    .metric(metric)
+                    .featureType(FeatureType.PCA)
+                    .numberOfComponents(20)
+                    .k(3)
+                    .pqSubspaces(5)
+                    .pqRerank(3)
+                    .build();
+
+            List<Matrix> probes = new ArrayList<>();
+            for (int i = 1; i <= 40; i++) {
+                for (int j = 1; j <= 10; j++) {
+                    Matrix face = convertToMatrix("faces/s" + i + "/" + j + ".pgm");
+                    if (j <= 8)
+                        trainer.add(face, "s" + i);
+                    else
+                        probes.add(face);
+                }
+            }
+            trainer.train();
+
+            List<String> results = trainer.recognizeBatch(probes);
+            assertEquals(probes.size(), results.size());
+            for (int i = 0; i < probes.size(); i++) {
+                assertEquals(trainer.recognize(probes.get(i)), results.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        Trainer trainer = Trainer.builder()
+                .metric(new EuclideanDistance())
+                .featureType(FeatureType.LPP)
+                .numberOfComponents(15)
+                .k(1)
+                .build();
+
+        List<Matrix> probes = new ArrayList<>();
+        for (int i = 1; i <= 10; i++) {
+            for (int j = 1; j <= 10; j++) {
+                Matrix face = convertToMatrix("faces/s" + i + "/" + j + ".pgm");
+                if (j <= 5)
+                    trainer.add(face, "s" + i);
+                else
+                    probes.add(face);
+            }
+        }
+        trainer.train();
+
+        Path path = Files.createTempFile("model", ".frm");
+        try {
+            trainer.save(path);
+
+            Trainer loaded = Trainer.builder()
+                    .metric(new EuclideanDistance())
+                    .k(1)
+                    .build();
+            loaded.load(path);
+
+            assertEquals(FeatureType.LPP, loaded.featureType);
+            for (Matrix probe : probes) {
+                assertEquals(trainer.recognize(probe), loaded.recognize(probe));
+            }
+
+            // enrolling after a load goes into the saved basis
+            Matrix face = convertToMatrix("faces/s11/1.pgm");
+            loaded.addFaceAfterTraining(face, "s11");
+            assertEquals("s11", loaded.recognize(face));
+
+            // the file just read can be replaced by a new save straight away
+            loaded.save(path);
+            Trainer reloaded = Trainer.builder()
+                    .metric(new EuclideanDistance())
+                    .k(1)
+                    .build();
+            reloaded.load(path);
+            assertEquals(51, reloaded.getTrainedModel().getGallery().size());
+            assertEquals("s11", reloaded.recognize(face));
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void testTrainAsync() throws Exception {
+        Trainer trainer = Trainer.builder()
+                .metric(new EuclideanDistance())
+                .featureType(FeatureType.PCA)
+                .numberOfComponents(10)
+                .k(1)
+                .build();
+
+        for (int i = 1; i <= 5; i++) {
+            for (int j = 1; j <= 5; j++) {
+                trainer.add(convertToMatrix("faces/s" + i + "/" + j + ".pgm"), "s" + i);
+            }
+        }
+        trainer.train();
+        TrainedModel first = trainer.getTrainedModel();
+        assertEquals(1, first.getVersion());
+
+        // a new person is only known once the retrained version is published
+        for (int j = 1; j <= 5; j++) {
+            trainer.add(convertToMatrix("faces/s6/" + j + ".pgm"), "s6");
+        }
+        Matrix probe = convertToMatrix("faces/s6/6.pgm");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            TrainedModel second = trainer.trainAsync(executor).get();
+            assertEquals(2, second.getVersion());
+            assertSame(second, trainer.getTrainedModel());
+            assertEquals("s6", trainer.recognize(probe));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testProductQuantization() throws Exception {
+        Trainer exact = Trainer.builder()
+                .metric(new EuclideanDistance())
+                .featureType(FeatureType.LPP)
+                .numberOfComponents(15)
+                .k(3)
+                .build();
+        // re-ranking every candidate makes the quantized scan exact
+        Trainer quantized = Trainer.builder()
+                .metric(new EuclideanDistance())
+                .featureType(FeatureType.LPP)
+                .numberOfComponents(15)
+                .k(3)
+                .pqSubspaces(5)
+                .pqRerank(50)
+                .build();
+
+        List<Matrix> probes = new ArrayList<>();
+        for (int i = 1; i <= 10; i++) {
+            for (int j = 1; j <= 10; j++) {
+                Matrix face = convertToMatrix("faces/s" + i + "/" + j + ".pgm");
+                if (j <= 5) {
+                    exact.add(face, "s" + i);
+                    quantized.add(face, "s" + i);
+                } else {
+                    probes.add(face);
+                }
+            }
+        }
+        exact.train();
+        quantized.train();
+        assertNull(exact.getTrainedModel().getQuantizedGallery());
+        assertEquals(50, quantized.getTrainedModel().getQuantizedGallery().size());
+
+        for (Matrix probe : probes) {
+            assertEquals(exact.recognize(probe), quantized.recognize(probe));
+        }
+
+        // faces enrolled into the same basis are encoded with the same codebooks
+        Matrix face = convertToMatrix("faces/s11/1.pgm");
+        quantized.addFaceAfterTraining(face, "s11");
+        assertEquals(51, quantized.getTrainedModel().getQuantizedGallery().size());
+        assertEquals("s11", quantized.recognize(face));
+    }
+
+    @Test
+    public void testEnrollmentRetrainsCodebooks() throws Exception {
+        Trainer trainer = Trainer.builder()
+                .metric(new EuclideanDistance())
+                .featureType(FeatureType.PCA)
+                .numberOfComponents(15)
+                .k(1)
+                .pqSubspaces(5)
+                .build();
+        // more faces than centroids, so the codes do not reproduce the gallery exactly
+        for (int i = 1; i <= 40; i++) {
+            for (int j = 1; j <= 8; j++) {
+                trainer.add(convertToMatrix("faces/s" + i + "/" + j + ".pgm"), "s" + i);
+            }
+        }
+        trainer.train();
+        ProductQuantizer codebooks = trainer.getTrainedModel().getQuantizedGallery().getQuantizer();
+        double trained = reconstructionError(trainer.getTrainedModel().getGallery(), codebooks);
+
+        // PCA rotates the basis, so the codebooks are retrained on the new templates
+        trainer.addFaceAfterTraining(convertToMatrix("faces/s1/9.pgm"), "s1");
+        Gallery gallery = trainer.getTrainedModel().getGallery();
+        QuantizedGallery quantized = trainer.getTrainedModel().getQuantizedGallery();
+        assertNotSame(codebooks, quantized.getQuantizer());
+        assertEquals(321, quantized.size());
+        double enrolled = reconstructionError(gallery, quantized.getQuantizer());
+        double stale = reconstructionError(gallery, codebooks);
+        assertTrue("error " + enrolled + " after enrollment, " + trained + " after training",
+                enrolled < 2 * trained);
+        assertTrue("error " + stale + " with the old codebooks, " + enrolled + " retrained", stale > 2 * enrolled);
+
+        // a loaded basis is fixed, so enrollment appends with the same codebooks
+        Path path = Files.createTempFile("model", ".bin");
+        try {
+            trainer.save(path);
+            trainer.load(path);
+        } finally {
+            Files.deleteIfExists(path);
+        }
+        codebooks = trainer.getTrainedModel().getQuantizedGallery().getQuantizer();
+        trainer.addFaceAfterTraining(convertToMatrix("faces/s1/10.pgm"), "s1");
+        quantized = trainer.getTrainedModel().getQuantizedGallery();
+        assertSame(codebooks, quantized.getQuantizer());
+        assertEquals(322, quantized.size());
+    }
+
+    // squared quantization error of the gallery relative to its variance
+    private static double reconstructionError(Gallery gallery, ProductQuantizer quantizer) {
+        int dimension = gallery.getDimension();
+        float[] data = gallery.getData();
+        byte[] codes = new byte[quantizer.getSubspaces()];
+        double[] mean = new double[dimension];
+        for (int i = 0; i < gallery.size(); i++) {
+            for (int j = 0; j < dimension; j++) {
+                mean[j] += data[i * dimension + j] / gallery.size();
+            }
+        }
+        double error = 0, variance = 0;
+        for (int i = 0; i < gallery.size(); i++) {
+            quantizer.encode(data, i * dimension, codes, 0);
+            float[] decoded = quantizer.decode(codes, 0);
+            for (int j = 0; j < dimension; j++) {
+                double x = data[i * dimension + j];
+                error += (x - decoded[j]) * (x - decoded[j]);
+                variance += (x - mean[j]) * (x - mean[j]);
+            }
+        }
+        return error / variance;
+    }
+
     private Matrix convertToMatrix(String fileAddress) throws IOException {
         File file = new File(classLoader.getResource(fileAddress).getFile());
         return vectorize(FileManager.convertPGMtoMatrix(file.getAbsolutePath()));
@@ -0,0 +1,115 @@
+package com.github.wihoho.jama;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The Cholesky based solver for A*v = lambda*B*v on random symmetric
+ * pencils, against the definition and against eig of inv(B)*A.
+ */
+public class GeneralizedEigenvalueDecompositionTest {
+    private static final int N = 12;
+
+    @Test
+    public void testResidualAndBOrthonormality() {
+        Random random = new Random(1);
+        for (int t = 0; t < 10; t++) {
+            Matrix A = symmetric(random, N);
+            Matrix B = spd(random, N);
+            GeneralizedEigenvalueDecomposition ged = new GeneralizedEigenvalueDecomposition(A, B);
+            Matrix V = ged.getV();
+            Matrix D = ged.getD();
+
+            double scale = A.normF() + B.normF();
+            assertEquals(0, A.times(V).minus(B.times(V).times(D)).normF(), 1e-10 * scale * V.normF());
+            assertEquals(0, V.transpose().times(B).times(V).minus(Matrix.identity(N, N)).normF(), 1e-10 * N);
+            double[] d = ged.getd();
+            for (int i = 1; i < N; i++) {
+                assertTrue("eigenvalues not ascending", d[i - 1] <= d[i]);
+            }
+        }
+    }
+
+    @Test
+    public void testMatchesInverseThenEig() {
+        Random random = new Random(2);
+        for (int t = 0; t < 10; t++) {
+            Matrix A = symmetric(random, N);
+            Matrix B = spd(random, N);
+            GeneralizedEigenvalueDecomposition ged = new GeneralizedEigenvalueDecomposition(A, B);
+            EigenvalueDecomposition eig = B.inverse().times(A).eig();
+
+            double[] expected = eig.getRealEigenvalues().clone();
+            for (double imaginary : eig.getImagEigenvalues()) {
+                assertEquals(0, imaginary, 1e-8);
+            }
+            Arrays.sort(expected);
+            double[] d = ged.getd();
+            for (int i = 0; i < N; i++) {
+                assertEquals(expected[i], d[i], 1e-8 * (1 + Math.abs(expected[i])));
+            }
+
+            // random pencils have distinct eigenvalues, so each eigenvector
+            // is the same direction up to scale and sign
+            Matrix V = ged.getV();
+            Matrix U = eig.getV();
+            for (int i = 0; i < N; i++) {
+                int match = 0;
+                for (int j = 1; j < N; j++) {
+                    if (Math.abs(eig.getRealEigenvalues()[j] - d[i]) < Math.abs(eig.getRealEigenvalues()[match] - d[i]))
+                        match = j;
+                }
+                Matrix v = V.getMatrix(0, N - 1, i, i);
+                Matrix u = U.getMatrix(0, N - 1, match, match);
+                double cosine = v.transpose().times(u).get(0, 0) / (v.normF() * u.normF());
+                assertEquals(1, Math.abs(cosine), 1e-8);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIndefiniteBRejected() {
+        Random random = new Random(3);
+        Matrix B = spd(random, N);
+        B.set(N - 1, N - 1, -B.get(N - 1, N - 1));
+        new GeneralizedEigenvalueDecomposition(symmetric(random, N), B);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSingularBRejected() {
+        Random random = new Random(4);
+        // an unused feature leaves a zero row and column in the scatter
+        Matrix B = spd(random, N);
+        for (int i = 0; i < N; i++) {
+            B.set(i, 2, 0);
+            B.set(2, i, 0);
+        }
+        new GeneralizedEigenvalueDecomposition(symmetric(random, N), B);
+    }
+
+    private static Matrix random(Random random, int m, int n) {
+        Matrix X = new Matrix(m, n);
+        for (int i = 0; i < m; i++) {
+            for (int j = 0; j < n; j++) {
+                X.set(i, j, random.nextGaussian());
+            }
+        }
+        return X;
+    }
+
+    private static Matrix symmetric(Random random, int n) {
+        Matrix X = random(random, n, n);
+        return X.plus(X.transpose()).times(0.5);
+    }
+
+    // well conditioned symmetric positive definite
+    private static Matrix spd(Random random, int n) {
+        Matrix X = random(random, n, n);
+        return X.times(X.transpose()).plus(Matrix.identity(n, n).times(n));
+    }
+}
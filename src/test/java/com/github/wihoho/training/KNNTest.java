@@ -0,0 +1,94 @@
+package com.github.wihoho.training;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The partitioned gallery scan against the serial one, with partitions
+ * forced small so that the fork/join split and merge run on a small
+ * gallery.
+ */
+public class KNNTest {
+    private static final int DIMENSION = 12;
+
+    @Test
+    public void testPartitionedScanMatchesSerial() {
+        Random random = new Random(3);
+        Gallery gallery = new Gallery(DIMENSION);
+        float[] row = new float[DIMENSION];
+        for (int i = 0; i < 1003; i++) {
+            for (int j = 0; j < DIMENSION; j++) {
+                row[j] = (float) random.nextGaussian();
+            }
+            gallery.add(row, "s" + random.nextInt(20));
+        }
+
+        FloatMetric[] metrics = {new EuclideanDistance(), new L1Distance(), new CosineDissimilarity()};
+        int[][] splits = {{2, 400}, {4, 50}, {16, 16}, {64, 1}};
+        float[] probe = new float[DIMENSION];
+        for (int q = 0; q < 20; q++) {
+            for (int j = 0; j < DIMENSION; j++) {
+                probe[j] = (float) random.nextGaussian();
+            }
+            for (FloatMetric metric : metrics) {
+                for (int K : new int[]{1, 7}) {
+                    NeighborHeap serial = KNN.findKNN(gallery, probe, K, metric);
+                    String label = KNN.classify(gallery, serial);
+                    serial.sort();
+                    for (int[] split : splits) {
+                        int parallelism = split[0], minPartitionSize = split[1];
+                        assertTrue(Math.min(parallelism, gallery.size() / minPartitionSize) >= 2);
+
+                        NeighborHeap partitioned = KNN.findKNN(gallery, probe, K, metric, parallelism, minPartitionSize);
+                        assertEquals(label, KNN.assignLabel(gallery, probe, K, metric, parallelism, minPartitionSize));
+                        partitioned.sort();
+                        assertEquals(serial.size(), partitioned.size());
+                        for (int i = 0; i < serial.size(); i++) {
+                            assertEquals(serial.id(i), partitioned.id(i));
+                            assertEquals(serial.distance(i), partitioned.distance(i), 0);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testQuantizedBatchMatchesSingle() {
+        Random random = new Random(4);
+        Gallery gallery = new Gallery(DIMENSION);
+        float[] row = new float[DIMENSION];
+        for (int i = 0; i < 2000; i++) {
+            for (int j = 0; j < DIMENSION; j++) {
+                row[j] = (float) random.nextGaussian();
+            }
+            gallery.add(row, "s" + random.nextInt(20));
+        }
+        // small codebooks, so the codes often pick other neighbours than the exact scan
+        ProductQuantizer quantizer = ProductQuantizer.train(gallery.getData(), gallery.size(), DIMENSION, 3, 16, 10, 5);
+        QuantizedGallery quantized = new QuantizedGallery(quantizer, gallery);
+
+        int count = 100;
+        float[] probes = new float[count * DIMENSION];
+        for (int i = 0; i < probes.length; i++) {
+            probes[i] = (float) random.nextGaussian();
+        }
+        for (FloatMetric metric : new FloatMetric[]{new EuclideanDistance(), new CosineDissimilarity()}) {
+            String[] labels = KNN.assignLabels(quantized, gallery, probes, count, 1, metric, 1);
+            String[] exact = KNN.assignLabels(gallery, probes, count, 1, metric);
+            int differ = 0;
+            float[] probe = new float[DIMENSION];
+            for (int j = 0; j < count; j++) {
+                System.arraycopy(probes, j * DIMENSION, probe, 0, DIMENSION);
+                assertEquals(KNN.assignLabel(quantized, gallery, probe, 1, metric, 1), labels[j]);
+                if (!labels[j].equals(exact[j]))
+                    differ++;
+            }
+            assertTrue(differ > 0);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.github.wihoho.training;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the product quantizer on its own, with re-ranking kept at K so
+ * that the codes and lookup tables decide the result.
+ */
+public class ProductQuantizerTest {
+    private static final int DIMENSION = 16;
+    private static final int COUNT = 2000;
+
+    @Test
+    public void testEncodeDecodeError() {
+        float[] data = clusteredData(COUNT, 1);
+        ProductQuantizer quantizer = ProductQuantizer.train(data, COUNT, DIMENSION, 8, 64, 20, 7);
+
+        byte[] codes = new byte[quantizer.getSubspaces()];
+        double error = 0, variance = 0;
+        float[] mean = new float[DIMENSION];
+        for (int i = 0; i < COUNT; i++) {
+            for (int j = 0; j < DIMENSION; j++) {
+                mean[j] += data[i * DIMENSION + j] / COUNT;
+            }
+        }
+        for (int i = 0; i < COUNT; i++) {
+            quantizer.encode(data, i * DIMENSION, codes, 0);
+            float[] decoded = quantizer.decode(codes, 0);
+            for (int j = 0; j < DIMENSION; j++) {
+                double diff = data[i * DIMENSION + j] - decoded[j];
+                double centred = data[i * DIMENSION + j] - mean[j];
+                error += diff * diff;
+                variance += centred * centred;
+            }
+        }
+        assertTrue("relative reconstruction error " + error / variance, error / variance < 0.05);
+    }
+
+    @Test
+    public void testAsymmetricDistances() {
+        float[] data = clusteredData(COUNT, 2);
+        ProductQuantizer quantizer = ProductQuantizer.train(data, COUNT, DIMENSION, 8, 64, 20, 7);
+        float[] probes = clusteredData(20, 3);
+
+        byte[] codes = new byte[quantizer.getSubspaces()];
+        float[] probe = new float[DIMENSION];
+        for (int p = 0; p < 20; p++) {
+            System.arraycopy(probes, p * DIMENSION, probe, 0, DIMENSION);
+            float[] table = quantizer.table(probe, ProductQuantizer.Table.SQUARED_EUCLIDEAN);
+            for (int i = 0; i < COUNT; i += 10) {
+                quantizer.encode(data, i * DIMENSION, codes, 0);
+                double adc = 0;
+                for (int m = 0; m < quantizer.getSubspaces(); m++) {
+                    adc += table[m * quantizer.getCentroids() + (codes[m] & 0xff)];
+                }
+
+                // the table sum is the distance to the decoded template ...
+                float[] decoded = quantizer.decode(codes, 0);
+                double toDecoded = 0, exact = 0, error = 0;
+                for (int j = 0; j < DIMENSION; j++) {
+                    double x = data[i * DIMENSION + j];
+                    toDecoded += (probe[j] - decoded[j]) * (probe[j] - decoded[j]);
+                    exact += (probe[j] - x) * (probe[j] - x);
+                    error += (x - decoded[j]) * (x - decoded[j]);
+                }
+                assertEquals(toDecoded, adc, 1e-4 * (1 + toDecoded));
+                // ... so it is off the exact distance by at most the quantization error
+                assertTrue(Math.abs(Math.sqrt(adc) - Math.sqrt(exact)) <= Math.sqrt(error) + 1e-3);
+            }
+        }
+    }
+
+    @Test
+    public void testQuantizedRecall() {
+        float[] data = clusteredData(COUNT, 4);
+        Gallery gallery = new Gallery(DIMENSION);
+        float[] row = new float[DIMENSION];
+        for (int i = 0; i < COUNT; i++) {
+            System.arraycopy(data, i * DIMENSION, row, 0, DIMENSION);
+            gallery.add(row, "s" + (i % 10));
+        }
+        QuantizedGallery quantized = new QuantizedGallery(ProductQuantizer.train(gallery, 8), gallery);
+
+        int K = 10;
+        FloatMetric[] metrics = {new EuclideanDistance(), new L1Distance(), new CosineDissimilarity()};
+        // angles between nearby templates are small, so cosine ranks suffer most from the codes
+        double[] minRecall = {0.7, 0.7, 0.45};
+        float[] probes = clusteredData(50, 5);
+        float[] probe = new float[DIMENSION];
+        for (int t = 0; t < metrics.length; t++) {
+            FloatMetric metric = metrics[t];
+            int found = 0;
+            for (int p = 0; p < 50; p++) {
+                System.arraycopy(probes, p * DIMENSION, probe, 0, DIMENSION);
+                NeighborHeap exact = KNN.findKNN(gallery, probe, K, metric);
+                // no re-ranking beyond K: the codes alone pick the neighbours
+                NeighborHeap approximate = KNN.findKNN(quantized, gallery, probe, K, metric, K);
+                Set<Integer> ids = new HashSet<>();
+                for (int i = 0; i < exact.size(); i++) {
+                    ids.add(exact.id(i));
+                }
+                for (int i = 0; i < approximate.size(); i++) {
+                    if (ids.contains(approximate.id(i))) {
+                        found++;
+                    }
+                }
+            }
+            double recall = found / (50.0 * K);
+            assertTrue(metric.getClass().getSimpleName() + " recall@" + K + " " + recall, recall >= minRecall[t]);
+        }
+    }
+
+    // points around 20 random centres, count rows of DIMENSION values
+    private static float[] clusteredData(int count, long seed) {
+        Random centres = new Random(0);
+        float[][] centre = new float[20][DIMENSION];
+        for (float[] c : centre) {
+            for (int j = 0; j < DIMENSION; j++) {
+                c[j] = (float) (centres.nextGaussian() * 3);
+            }
+        }
+        Random random = new Random(seed);
+        float[] data = new float[count * DIMENSION];
+        for (int i = 0; i < count; i++) {
+            float[] c = centre[random.nextInt(centre.length)];
+            for (int j = 0; j < DIMENSION; j++) {
+                data[i * DIMENSION + j] = c[j] + (float) random.nextGaussian();
+            }
+        }
+        return data;
+    }
+}